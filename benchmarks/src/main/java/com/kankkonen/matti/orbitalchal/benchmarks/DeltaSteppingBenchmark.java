@@ -0,0 +1,113 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kankkonen.matti.orbitalchal.DeltaStepping;
+import com.kankkonen.matti.orbitalchal.Network;
+import com.kankkonen.matti.orbitalchal.Node;
+import com.kankkonen.matti.orbitalchal.PathSearch;
+import com.kankkonen.matti.orbitalchal.RouteRequest;
+import com.kankkonen.matti.orbitalchal.SearchContext;
+import com.kankkonen.matti.orbitalchal.VisibilityGraph;
+
+/**
+ * DeltaStepping against PathSearch in DIJKSTRA mode on the graph of a
+ * big constellation, between the same ground stations as in
+ * PathFinderBenchmark. The ground stations are nodes of the graph here,
+ * so both searches start and end at a node.
+ *
+ * The delta is given in hops, the width of a bucket is delta times
+ * HOP_COST. At 1 every edge is heavy and a bucket is one hop from A,
+ * a bit over 1 makes every edge light, at 2 a bucket holds two hops.
+ * dijkstra doesn't use the delta, run it with one: -p delta=1
+ *
+ * The tiles go to the common ForkJoinPool, so the result depends on
+ * the cpus of the machine more than anything. Compare the two on the
+ * machine the routes would be searched on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class DeltaSteppingBenchmark {
+
+	private final static int PAIRS = 64;
+	private final static long SEED = 2016;
+
+	@Param({"10000"})
+	public int size;
+
+	@Param({"1200"})
+	public double altitude;
+
+	@Param({"0.5", "1", "1.0001", "2"})
+	public double delta;
+
+	private VisibilityGraph graph;
+	private int[] starts = new int[PAIRS];
+	private int[] ends = new int[PAIRS];
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		Network network = WalkerConstellation.of(size, altitude).createNetwork();
+		List<RouteRequest> pairs = WalkerConstellation.groundStations(PAIRS, SEED);
+		Node[] a = new Node[PAIRS];
+		Node[] b = new Node[PAIRS];
+		for(int i=0; i < PAIRS; i++) {
+			RouteRequest pair = pairs.get(i);
+			a[i] = new Node("A" + i, pair.getLatitudeA(), pair.getLongitudeA(), 0);
+			b[i] = new Node("B" + i, pair.getLatitudeB(), pair.getLongitudeB(), 0);
+			network.addNode(a[i]);
+			network.addNode(b[i]);
+		}
+		network.init();
+		graph = network.getGraph();
+		for(int i=0; i < PAIRS; i++) {
+			starts[i] = graph.indexOf(a[i]);
+			ends[i] = graph.indexOf(b[i]);
+		}
+	}
+
+	@Benchmark
+	public double dijkstra() {
+		int i = next;
+		next = (next + 1) % PAIRS;
+		PathSearch search = new PathSearch(graph, PathSearch.Mode.DIJKSTRA, SearchContext.forThread());
+		search.addSource(starts[i], 0, 0);
+		search.addTarget(ends[i], 0, 0);
+		search.search();
+		return search.getPathLength();
+	}
+
+	@Benchmark
+	public double deltaStepping() {
+		int i = next;
+		next = (next + 1) % PAIRS;
+		DeltaStepping search = new DeltaStepping(graph, delta * PathSearch.HOP_COST);
+		search.addSource(starts[i], 0, 0);
+		search.addTarget(ends[i], 0, 0);
+		search.search();
+		return search.getPathLength();
+	}
+}
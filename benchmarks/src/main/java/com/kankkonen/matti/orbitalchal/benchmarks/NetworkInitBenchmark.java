@@ -0,0 +1,71 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kankkonen.matti.orbitalchal.Network;
+
+/**
+ * Building the visibility graph of a constellation with Network.init
+ * and initParallel. Every invocation gets a fresh network, because
+ * init adds the neighbours to the nodes.
+ *
+ * The visible pairs grow with the square of the size, so the 100k
+ * constellation needs a big heap: -p size=100000 -jvmArgs -Xmx16g
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class NetworkInitBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int size;
+
+	@Param({"550", "1200"})
+	public double altitude;
+
+	private WalkerConstellation constellation;
+	private Network network;
+
+	@Setup(Level.Trial)
+	public void createConstellation() {
+		constellation = WalkerConstellation.of(size, altitude);
+	}
+
+	@Setup(Level.Invocation)
+	public void createNetwork() {
+		network = constellation.createNetwork();
+	}
+
+	@Benchmark
+	public Network init() {
+		network.init();
+		return network;
+	}
+
+	@Benchmark
+	public Network initParallel() throws InterruptedException {
+		network.initParallel();
+		return network;
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kankkonen.matti.orbitalchal.Node;
+import com.kankkonen.matti.orbitalchal.NodeStore;
+import com.kankkonen.matti.orbitalchal.VisibilityKernel;
+
+/**
+ * The visibility check and the "distance" of two nodes, the innermost
+ * operations of Network.init. Each invocation goes through the same
+ * fixed random pairs of satellites of the constellation. The kernel
+ * benchmarks check one satellite against a block of candidates the
+ * way Network.init does, with NodeStore.canSee one by one and with
+ * the VisibilityKernel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeBenchmark {
+
+	private final static int PAIRS = 1024;
+
+	@Param({"1000"})
+	public int size;
+
+	@Param({"550", "1200"})
+	public double altitude;
+
+	private Node[] a = new Node[PAIRS];
+	private Node[] b = new Node[PAIRS];
+	private NodeStore store = new NodeStore();
+	private VisibilityKernel kernel;
+	private int[] candidates = new int[PAIRS];
+	private int[] visible = new int[PAIRS];
+
+	@Setup
+	public void setUp() {
+		List<Node> nodes = WalkerConstellation.of(size, altitude).createNodes(0);
+		Random random = new Random(42);
+		for(int i=0; i < PAIRS; i++) {
+			a[i] = nodes.get(random.nextInt(nodes.size()));
+			b[i] = nodes.get(random.nextInt(nodes.size()));
+		}
+		for(Node node : nodes)
+			store.add(node);
+		kernel = new VisibilityKernel(store);
+		for(int i=0; i < PAIRS; i++)
+			candidates[i] = random.nextInt(nodes.size());
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int canSee() {
+		int visible = 0;
+		for(int i=0; i < PAIRS; i++) {
+			if(a[i].canSee(b[i]))
+				visible++;
+		}
+		return visible;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public double getDistance() {
+		double sum = 0;
+		for(int i=0; i < PAIRS; i++)
+			sum += a[i].getDistance(b[i]);
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int storeCanSee() {
+		int found = 0;
+		for(int i=0; i < PAIRS; i++) {
+			if(store.canSee(0, candidates[i]))
+				visible[found++] = candidates[i];
+		}
+		return found;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PAIRS)
+	public int kernelCanSee() {
+		return kernel.canSee(0, candidates, PAIRS, visible);
+	}
+}
@@ -0,0 +1,85 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.kankkonen.matti.orbitalchal.Network;
+import com.kankkonen.matti.orbitalchal.Node;
+import com.kankkonen.matti.orbitalchal.PathFinder;
+import com.kankkonen.matti.orbitalchal.RouteRequest;
+
+/**
+ * PathFinder.findPath between ground stations. The ground stations
+ * are added to the network before init, like the ROUTE line of a
+ * scenario file does, and the invocations go round the same pairs.
+ *
+ * ENUMERATE walks every route, it's only usable with the smallest
+ * constellations: -p size=100 -p strategy=ENUMERATE
+ *
+ * DeltaSteppingBenchmark has the parallel search.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PathFinderBenchmark {
+
+	private final static int PAIRS = 64;
+	private final static long SEED = 2016;
+
+	@Param({"100", "1000", "10000"})
+	public int size;
+
+	@Param({"550", "1200"})
+	public double altitude;
+
+	@Param({"ASTAR", "DIJKSTRA", "BIDIRECTIONAL"})
+	public PathFinder.Strategy strategy;
+
+	private Network network;
+	private Node[] starts = new Node[PAIRS];
+	private Node[] ends = new Node[PAIRS];
+	private int next = 0;
+
+	@Setup
+	public void setUp() {
+		network = WalkerConstellation.of(size, altitude).createNetwork();
+		List<RouteRequest> pairs = WalkerConstellation.groundStations(PAIRS, SEED);
+		for(int i=0; i < PAIRS; i++) {
+			RouteRequest pair = pairs.get(i);
+			starts[i] = new Node("A" + i, pair.getLatitudeA(), pair.getLongitudeA(), 0);
+			ends[i] = new Node("B" + i, pair.getLatitudeB(), pair.getLongitudeB(), 0);
+			network.addNode(starts[i]);
+			network.addNode(ends[i]);
+		}
+		network.init();
+	}
+
+	@Benchmark
+	public int findPath() {
+		int i = next;
+		next = (next + 1) % PAIRS;
+		PathFinder finder = new PathFinder(network, starts[i], ends[i], strategy);
+		finder.findPath();
+		return finder.getBestPathLength();
+	}
+}
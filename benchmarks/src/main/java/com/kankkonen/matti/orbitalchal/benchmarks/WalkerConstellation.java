@@ -0,0 +1,144 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.kankkonen.matti.orbitalchal.Network;
+import com.kankkonen.matti.orbitalchal.Node;
+import com.kankkonen.matti.orbitalchal.Orbit;
+import com.kankkonen.matti.orbitalchal.RouteRequest;
+
+/**
+ * WalkerConstellation generates a Walker delta constellation, the
+ * layout the big low orbit constellations use. It's written i: t/p/f
+ *
+ *   i  inclination of all the orbits
+ *   t  number of satellites
+ *   p  number of orbit planes, spread evenly around the equator
+ *   f  phasing, how much the satellites of the next plane are ahead
+ *      in units of 360 / t degrees
+ *
+ * The satellites of a plane are spread evenly along the orbit. Nothing
+ * is random, so the same parameters always give the same satellites
+ * at the same positions and the benchmark results can be compared
+ * between runs. The ground stations are random, but from a seeded
+ * Random so they are the same every time too.
+ */
+public class WalkerConstellation {
+
+	public final static double DEFAULT_INCLINATION = 53;
+
+	private int satellites;
+	private int planes;
+	private int phasing;
+	private double inclination;
+	private double altitude;
+
+	/**
+	 * @param satellites t, the number of satellites
+	 * @param planes p, has to divide the number of satellites
+	 * @param phasing f, from 0 to p - 1
+	 * @param inclination i in degrees
+	 * @param altitude of the orbits in km
+	 */
+	public WalkerConstellation(int satellites, int planes, int phasing, double inclination, double altitude) {
+		if(planes <= 0 || satellites % planes != 0)
+			throw new IllegalArgumentException(planes + " planes can't have " + satellites + " satellites");
+		this.satellites = satellites;
+		this.planes = planes;
+		this.phasing = phasing;
+		this.inclination = inclination;
+		this.altitude = altitude;
+	}
+
+	/**
+	 * A constellation of the given size with the number of planes
+	 * close to the square root of the size, 53 degree inclination
+	 * and phasing 1
+	 * @param satellites the number of satellites
+	 * @param altitude of the orbits in km
+	 */
+	public static WalkerConstellation of(int satellites, double altitude) {
+		int planes = (int)Math.sqrt(satellites);
+		while(satellites % planes != 0)
+			planes--;
+		return new WalkerConstellation(satellites, planes, 1, DEFAULT_INCLINATION, altitude);
+	}
+
+	public int getSatellites() {
+		return satellites;
+	}
+
+	public int getPlanes() {
+		return planes;
+	}
+
+	/**
+	 * @param satellite index from 0 to t - 1, plane after plane
+	 * @return the orbit of the satellite
+	 */
+	public Orbit getOrbit(int satellite) {
+		int perPlane = satellites / planes;
+		int plane = satellite / perPlane;
+		int slot = satellite % perPlane;
+		double rightAscension = 360.0 * plane / planes;
+		double argumentOfLatitude = 360.0 * slot / perPlane + 360.0 * phasing * plane / satellites;
+		return new Orbit(inclination, rightAscension, argumentOfLatitude, altitude);
+	}
+
+	/**
+	 * @param time in seconds
+	 * @return the satellites at their positions at the time, with
+	 * ids SAT0 ... SATn like in the scenario files
+	 */
+	public List<Node> createNodes(double time) {
+		List<Node> nodes = new ArrayList<Node>(satellites);
+		double[] position = new double[2];
+		for(int i=0; i < satellites; i++) {
+			getOrbit(i).locate(time, position);
+			nodes.add(new Node("SAT" + i, position[0], position[1], altitude));
+		}
+		return nodes;
+	}
+
+	/**
+	 * @return a network of the satellites at time 0, not initialised
+	 */
+	public Network createNetwork() {
+		Network network = new Network();
+		for(Node node : createNodes(0))
+			network.addNode(node);
+		return network;
+	}
+
+	/**
+	 * Random pairs of ground stations spread evenly over the globe
+	 * @param pairs how many
+	 * @param seed of the Random, the same seed gives the same pairs
+	 * @return the pairs as route requests from A to B
+	 */
+	public static List<RouteRequest> groundStations(int pairs, long seed) {
+		Random random = new Random(seed);
+		List<RouteRequest> requests = new ArrayList<RouteRequest>(pairs);
+		for(int i=0; i < pairs; i++) {
+			requests.add(new RouteRequest(randomLatitude(random), randomLongitude(random),
+					randomLatitude(random), randomLongitude(random)));
+		}
+		return requests;
+	}
+
+	/* uniform over the sphere, not over the latitudes */
+	private static double randomLatitude(Random random) {
+		return Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+	}
+
+	private static double randomLongitude(Random random) {
+		return random.nextDouble() * 360 - 180;
+	}
+}
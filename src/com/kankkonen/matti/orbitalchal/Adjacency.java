@@ -0,0 +1,93 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+/**
+ * Adjacency is what the path engines need to know about a graph:
+ * the nodes are indices, the edges of a node are the indices from
+ * first(node) to last(node) and each edge has a target node and a
+ * "distance" in degrees.
+ *
+ * VisibilityGraph has all the edges worked out beforehand and
+ * LazyGraph works out the edges of a node when they are first asked.
+ */
+public interface Adjacency {
+
+	/**
+	 * @return the number of nodes
+	 */
+	int size();
+
+	/**
+	 * @return the first edge of the node
+	 */
+	int first(int node);
+
+	/**
+	 * @return the edge after the last edge of the node
+	 */
+	int last(int node);
+
+	/**
+	 * @return the node at the other end of the edge
+	 */
+	int target(int edge);
+
+	/**
+	 * @return the "distance" of the edge in degrees
+	 */
+	double weight(int edge);
+
+	/**
+	 * Find the edge from a to b
+	 * @return the edge or -1 if b is not a neighbour of a
+	 */
+	int findEdge(int a, int b);
+
+	/**
+	 * @return no edge is longer than this, in degrees
+	 */
+	double getMaxWeight();
+
+	/**
+	 * @return the biggest coverage of the nodes in degrees
+	 */
+	double getMaxCoverage();
+
+	/**
+	 * The "distance" between the node and a point in degrees
+	 * @param node index
+	 * @param px the point as a unit vector
+	 * @param py
+	 * @param pz
+	 * @return angle in degrees
+	 */
+	double getDistance(int node, double px, double py, double pz);
+
+	/**
+	 * The "distance" between two nodes in degrees
+	 */
+	double getDistance(int a, int b);
+
+	/**
+	 * @return the position of the node as a unit vector
+	 */
+	double getX(int node);
+
+	double getY(int node);
+
+	double getZ(int node);
+
+	/**
+	 * @return the node or null if there are no Node instances
+	 */
+	Node getNode(int index);
+
+	/**
+	 * @return the index of the node or -1
+	 */
+	int indexOf(Node node);
+}
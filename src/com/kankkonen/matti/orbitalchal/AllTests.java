@@ -5,7 +5,15 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ NetworkTest.class, NodeTest.class, PathFinderTest.class })
+@SuiteClasses({ NetworkTest.class, NodeTest.class, PathFinderTest.class,
+	SphereGridTest.class, VisibilityGraphTest.class,
+	ConstellationTest.class, NetworkSnapshotTest.class, RouteCacheTest.class,
+	ScenarioLoaderTest.class, MetricsTest.class, DynamicRouterTest.class,
+	RouteEnumeratorTest.class, RouteServerTest.class,
+	VisibilityKernelTest.class, LazyGraphTest.class,
+	ShortestPathTreeTest.class, ContactPlanTest.class,
+	SearchContextTest.class, DeltaSteppingTest.class,
+	NeighbourMapTest.class })
 public class AllTests {
 
 }
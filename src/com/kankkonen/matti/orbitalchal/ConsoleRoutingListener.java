@@ -0,0 +1,89 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ConsoleRoutingListener prints everything that happens, the same way
+ * the Network and the PathFinder printed it all before there were
+ * listeners. Good for debugging small networks, with big networks the
+ * printing takes much longer than the work itself.
+ */
+public class ConsoleRoutingListener implements RoutingListener {
+
+	private PrintStream out;
+
+	public ConsoleRoutingListener() {
+		this(System.out);
+	}
+
+	/**
+	 * @param out where to print
+	 */
+	public ConsoleRoutingListener(PrintStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void initNode(Node node) {
+		out.println("Node: " + node.getId());
+	}
+
+	@Override
+	public void neighbourAdded(Node node, Node neighbour) {
+		out.println(node.getId() + " added neighbour " + neighbour.getId() +
+				" distance:" + node.getDistance(neighbour));
+	}
+
+	@Override
+	public void pathStep(int path, Node node) {
+		StringBuilder separator = new StringBuilder(" -");
+		for(int i=0; i < path; i++)
+			separator.append('-');
+		out.println("Path " + path + separator + " " + node.getId());
+	}
+
+	@Override
+	public void pathEnded(int path, boolean found) {
+		if(found)
+			out.println("-- Found a valid path:" + path);
+		else
+			out.println("-- Dead end here - path:" + path);
+	}
+
+	@Override
+	public void pathCandidate(int path, List<Node> track, double length) {
+		out.println("Path length:" + (track.size() - 1));
+		listPath(track, path, length);
+	}
+
+	@Override
+	public void bestPath(Node start, Node end, List<Node> track, double length) {
+		out.println("\nThe shortest path from:" + start.getId() +
+				" to:" + end.getId() + " is ");
+		listPath(track, 0, length);
+	}
+
+	private void listPath(List<Node> track, int id, double length) {
+		Iterator<Node> i = track.iterator();
+		int hop = 0;
+		while(i.hasNext()) {
+			Node n = i.next();
+			if(n != null) {
+				out.println("Hop:" + hop + " " +
+						n.getId() + "     lat:" + n.getLatitude() +
+						" long:" + n.getLongitude() + " alt:" + n.getAltitude());
+			} else {
+				out.println("Hop:" + hop + " null");
+			}
+			hop++;
+		}
+		out.println("Path: " + id + " distance:" + length + "\n");
+	}
+}
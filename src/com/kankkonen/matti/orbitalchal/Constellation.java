@@ -0,0 +1,289 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Constellation moves the satellites of a Network along their orbits
+ * and keeps the neighbours of the nodes up to date while time goes on.
+ *
+ * Checking every pair again on every time step would be as slow as
+ * a new init(). Instead we use the fact that two nodes can't come
+ * closer or move further from each other faster than the sum of their
+ * angular speeds. If the "distance" of a pair is d and the limit of
+ * seeing each other is q1 + q2, the pair can't change its visibility
+ * before
+ *
+ *   |d - (q1 + q2)| / (speed1 + speed2)
+ *
+ * seconds have passed. Each pair is scheduled to be checked again at
+ * that time, so the pairs close to the limit get checked often and the
+ * others rarely. The pairs within "skin" degrees of the limit are in
+ * the schedule. The pairs further away can't change their visibility
+ * before skin / (2 * the fastest speed) seconds, so after that the
+ * schedule is built again with the spatial index.
+ *
+ * Nodes without an orbit, like ground stations, stay where they are.
+ * Nodes can be added to and removed from the network while it moves,
+ * a new node has no orbit until it's given one. The schedule is built
+ * again on the next step then, the indices in it are not valid anymore.
+ */
+public class Constellation {
+
+	private Network network;
+	private List<Node> nodes;
+	private NodeStore store;
+	private Orbit[] orbits;
+	/* degrees per second for each node */
+	private double[] speed;
+	private double maxSpeed = 0;
+	private double skin = DEFAULT_SKIN;
+	private double time = 0;
+	private double nextRebuild = 0;
+	private boolean moved = true;
+	private Schedule schedule = new Schedule();
+	private int checks = 0;
+	private int changes = 0;
+
+	private final static double DEFAULT_SKIN = 5;
+
+	/**
+	 * @param network the nodes to move, needs to be initialised
+	 */
+	public Constellation(Network network) {
+		this.network = network;
+		this.nodes = network.getNodes();
+		this.store = network.getStore();
+		this.orbits = new Orbit[nodes.size()];
+		this.speed = new double[nodes.size()];
+		network.addIndexListener(new Network.IndexListener() {
+			public void added(Node node) {
+				if(node.index >= orbits.length) {
+					int capacity = Math.max(node.index + 1, orbits.length * 2);
+					orbits = Arrays.copyOf(orbits, capacity);
+					speed = Arrays.copyOf(speed, capacity);
+				}
+				orbits[node.index] = null;
+				speed[node.index] = 0;
+				moved = true;
+			}
+			
+			public void removed(int index, int last) {
+				orbits[index] = orbits[last];
+				speed[index] = speed[last];
+				orbits[last] = null;
+				speed[last] = 0;
+				moved = true;
+			}
+		});
+	}
+
+	/**
+	 * Put the node on an orbit, the node moves to the position it has
+	 * on the orbit at the current time
+	 * @param node of the network
+	 * @param orbit to follow
+	 */
+	public void setOrbit(Node node, Orbit orbit) {
+		int i = node.index;
+		orbits[i] = orbit;
+		speed[i] = orbit.getMaxAngularSpeed();
+		maxSpeed = Math.max(maxSpeed, speed[i]);
+		locate(i, new double[2]);
+		moved = true;
+	}
+
+	/**
+	 * How close to the visibility limit the pairs need to be to stay
+	 * in the schedule, bigger skin means fewer rebuilds but more pairs
+	 * to check on each step
+	 * @param skin in degrees
+	 */
+	public void setSkin(double skin) {
+		this.skin = skin;
+		moved = true;
+	}
+
+	/**
+	 * @return seconds from time 0
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * @return how many pairs were checked on the last step
+	 */
+	public int getChecks() {
+		return checks;
+	}
+
+	/**
+	 * @return how many links appeared or disappeared on the last step
+	 */
+	public int getChanges() {
+		return changes;
+	}
+
+	/**
+	 * Move the time forward and update the positions and the
+	 * neighbours of the nodes
+	 * @param seconds to move
+	 */
+	public void step(double seconds) {
+		time += seconds;
+		checks = 0;
+		changes = 0;
+		double[] position = new double[2];
+		for(int i=0; i < nodes.size(); i++) {
+			if(orbits[i] != null)
+				locate(i, position);
+		}
+
+		if(moved || time >= nextRebuild) {
+			rebuild();
+			return;
+		}
+		while(schedule.isEmpty() == false && schedule.peekTime() <= time) {
+			long pair = schedule.pop();
+			check((int)(pair >>> 32), (int)pair);
+		}
+	}
+
+	private void locate(int i, double[] position) {
+		orbits[i].locate(time, position);
+		network.moveNode(nodes.get(i), position[0], position[1]);
+	}
+
+	/**
+	 * Check the visibility of the pair, update the neighbours if it
+	 * has changed and schedule the next check. The pairs further than
+	 * skin from the limit are left out, they can't change before the
+	 * next rebuild.
+	 */
+	private void check(int a, int b) {
+		checks++;
+		double limit = store.getCoverage(a) + store.getCoverage(b);
+		double distance = store.getDistance(a, b);
+		boolean visible = limit >= distance;
+		Node nodeA = nodes.get(a);
+		Node nodeB = nodes.get(b);
+		if(visible != nodeA.getNeighbours().containsKey(nodeB.getId())) {
+			changes++;
+			if(visible)
+				network.link(nodeA, nodeB);
+			else
+				network.unlink(nodeA, nodeB);
+		}
+
+		double slack = Math.abs(distance - limit);
+		double rate = speed[a] + speed[b];
+		if(rate > 0 && slack <= skin)
+			schedule.push(time + slack / rate, ((long)a << 32) | b);
+	}
+
+	/**
+	 * Check all the pairs within skin from the visibility limit
+	 * and the links that are there now
+	 */
+	private void rebuild() {
+		moved = false;
+		schedule.clear();
+		nextRebuild = maxSpeed > 0 ? time + skin / (2 * maxSpeed) : Double.POSITIVE_INFINITY;
+
+		// the links of pairs that are far away now
+		for(int a=0; a < nodes.size(); a++) {
+			Node nodeA = nodes.get(a);
+			Node[] neighbours = nodeA.getNeighbours().values().toArray(new Node[0]);
+			for(int n=0; n < neighbours.length; n++) {
+				Node nodeB = neighbours[n];
+				if(store.getCoverage(a) + store.getCoverage(nodeB.index) + skin <
+						store.getDistance(a, nodeB.index)) {
+					network.unlink(nodeA, nodeB);
+					changes++;
+				}
+			}
+		}
+
+		double maxCoverage = network.getMaxCoverage();
+		SphereGrid grid = new SphereGrid(store.latitudes(), store.longitudes(),
+				store.size(), Math.max(1, maxCoverage));
+		for(int a=0; a < nodes.size(); a++) {
+			final int current = a;
+			grid.query(store.getLatitude(a), store.getLongitude(a),
+					store.getCoverage(a) + maxCoverage + skin, new SphereGrid.Visitor() {
+				public void visit(int b) {
+					if(b > current)
+						check(current, b);
+				}
+			});
+		}
+	}
+
+	/**
+	 * The pairs waiting for their next check, ordered by time. A binary
+	 * heap of primitive arrays, the pair is two indices in one long.
+	 */
+	private static class Schedule {
+		private double[] times = new double[64];
+		private long[] pairs = new long[64];
+		private int size = 0;
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		double peekTime() {
+			return times[0];
+		}
+
+		void clear() {
+			size = 0;
+		}
+
+		void push(double time, long pair) {
+			if(size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				pairs = Arrays.copyOf(pairs, size * 2);
+			}
+			int i = size++;
+			while(i > 0) {
+				int parent = (i - 1) >>> 1;
+				if(times[parent] <= time)
+					break;
+				times[i] = times[parent];
+				pairs[i] = pairs[parent];
+				i = parent;
+			}
+			times[i] = time;
+			pairs[i] = pair;
+		}
+
+		long pop() {
+			long top = pairs[0];
+			size--;
+			double time = times[size];
+			long pair = pairs[size];
+			int i = 0;
+			int half = size >>> 1;
+			while(i < half) {
+				int child = 2 * i + 1;
+				if(child + 1 < size && times[child + 1] < times[child])
+					child++;
+				if(time <= times[child])
+					break;
+				times[i] = times[child];
+				pairs[i] = pairs[child];
+				i = child;
+			}
+			times[i] = time;
+			pairs[i] = pair;
+			return top;
+		}
+	}
+}
@@ -0,0 +1,146 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class ConstellationTest {
+
+	/* every node has the neighbours a check of all the pairs gives */
+	private static void assertNeighbours(List<Node> nodes) {
+		for(Node a : nodes) {
+			int visible = 0;
+			for(Node b : nodes) {
+				if(a != b && a.canSee(b)) {
+					visible++;
+					assertEquals(b, a.getNeighbours().get(b.getId()));
+				}
+			}
+			assertEquals(visible, a.getNeighbours().size());
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Orbit#through(double, double, double, double, boolean)}.
+	 */
+	@Test
+	public void testOrbitThrough() {
+		double[] position = new double[2];
+		Orbit orbit = Orbit.through(60.192059, 24.945831, 700, 87, true);
+		orbit.locate(0, position);
+		assertEquals(60.192059, position[0], 1e-9);
+		assertEquals(24.945831, position[1], 1e-9);
+		
+		orbit = Orbit.through(-10, -170, 700, 53, false);
+		orbit.locate(0, position);
+		assertEquals(-10, position[0], 1e-9);
+		assertEquals(-170, position[1], 1e-9);
+		// 700 km up one orbit takes about 98 minutes
+		assertEquals(98.8, orbit.getPeriod() / 60, 0.5);
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Constellation#step(double)}.
+	 */
+	@Test
+	public void testStepMatchesFullCheck() {
+		Random random = new Random(1);
+		Network net = new Network();
+		net.addNode(new Node("Helsinki", 60.192059, 24.945831, 0));
+		net.addNode(new Node("Tokyo", 35.652832, 139.6917, 0));
+		for(int i=0; i < 300; i++)
+			net.addNode(new Node("SAT" + i, 0, 0, 500 + random.nextDouble() * 300));
+		net.init();
+		
+		Constellation constellation = new Constellation(net);
+		List<Node> nodes = net.getNodes();
+		for(int i=2; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			constellation.setOrbit(node, new Orbit(random.nextDouble() * 100, 
+					random.nextDouble() * 360, random.nextDouble() * 360, node.getAltitude()));
+		}
+		
+		int changes = 0;
+		for(int step=0; step < 30; step++) {
+			constellation.step(20);
+			changes += constellation.getChanges();
+			assertNeighbours(nodes);
+		}
+		assertEquals(600, constellation.getTime(), 0);
+		assertTrue(changes > 0);
+		
+		// the graph follows the links
+		PathFinder finder = new PathFinder(net, nodes.get(0), nodes.get(1));
+		assertEquals(finder.findPath(), new PathFinder(nodes.get(0), nodes.get(1),
+				PathFinder.Strategy.DIJKSTRA).findPath());
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Constellation#step(double)}.
+	 * Nodes added to and removed from the network keep their orbits, also
+	 * the ones that get a new index when another one is removed.
+	 */
+	@Test
+	public void testStepAfterAddAndRemove() {
+		Random random = new Random(2);
+		Network net = new Network();
+		net.addNode(new Node("Helsinki", 60.192059, 24.945831, 0));
+		for(int i=0; i < 60; i++)
+			net.addNode(new Node("SAT" + i, 0, 0, 500 + random.nextDouble() * 300));
+		net.init();
+		
+		Constellation constellation = new Constellation(net);
+		List<Node> nodes = net.getNodes();
+		Map<Node, Orbit> orbits = new HashMap<Node, Orbit>();
+		for(int i=1; i < nodes.size(); i++)
+			setOrbit(constellation, nodes.get(i), random, orbits);
+		constellation.step(20);
+		
+		double[] position = new double[2];
+		for(int round=0; round < 20; round++) {
+			if(round % 2 == 0) {
+				Node node = new Node("NEW" + round, 0, 0, 500 + random.nextDouble() * 300);
+				net.addNode(node);
+				if(round % 4 == 0)
+					setOrbit(constellation, node, random, orbits);
+			} else {
+				// not the last one, so that another node takes its index
+				Node node = nodes.get(1 + random.nextInt(nodes.size() - 2));
+				assertTrue(net.removeNode(node));
+				orbits.remove(node);
+			}
+			constellation.step(20);
+			assertNeighbours(nodes);
+			for(Node node : nodes) {
+				Orbit orbit = orbits.get(node);
+				if(orbit == null)
+					continue;
+				orbit.locate(constellation.getTime(), position);
+				assertEquals(position[0], node.getLatitude(), 1e-9);
+				assertEquals(position[1], node.getLongitude(), 1e-9);
+			}
+		}
+		assertEquals(61, nodes.size());
+	}
+	
+	private static void setOrbit(Constellation constellation, Node node, Random random, Map<Node, Orbit> orbits) {
+		Orbit orbit = new Orbit(random.nextDouble() * 100, random.nextDouble() * 360,
+				random.nextDouble() * 360, node.getAltitude());
+		constellation.setOrbit(node, orbit);
+		orbits.put(node, orbit);
+	}
+}
@@ -0,0 +1,367 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ContactPlan is for when there's no path from A to B right now, but
+ * the satellites could carry the data there later: a satellite holds
+ * on to the data until the next one comes into view.
+ *
+ * The plan is a list of contacts, the time windows when two nodes see
+ * each other. They are recorded from the graphs of the network at
+ * successive times, e.g. while a Constellation moves the satellites.
+ * A link that is there on successive samples is one contact from the
+ * first time it was seen to the last.
+ *
+ * The route with the earliest arrival at B is found with a Dijkstra
+ * search ordered by the time the data gets to each node. From a node
+ * reached at time t the data can go to a neighbour with the first
+ * contact that hasn't ended by t, waiting at the node for the contact
+ * to start if needed. Waiting never makes the data arrive earlier, so
+ * the first time a node is settled is the earliest it can be reached.
+ *
+ * The contacts of each node are kept grouped by the neighbour and
+ * ordered by time, so the first usable contact to each neighbour is
+ * found with a binary search. The search only looks at each neighbour
+ * once, no matter how many contacts there are over the horizon, and
+ * nothing like the full time expanded graph is ever built.
+ *
+ * A plan isn't for many threads at once.
+ */
+public class ContactPlan {
+
+	private final static Metrics.Counter CONTACTS = Metrics.getDefault().counter("contact.windows");
+	private final static Metrics.Histogram SETTLED = Metrics.getDefault().histogram("contact.settled");
+
+	private List<Node> nodes;
+	/* the contacts in the order they were opened */
+	private int[] from = new int[64];
+	private int[] to = new int[64];
+	private double[] starts = new double[64];
+	private double[] ends = new double[64];
+	private int count = 0;
+
+	/* the links of the last sample, a pair in a long, and their contacts */
+	private long[] open = new long[0];
+	private int[] openContacts = new int[0];
+	private double lastSample = Double.NEGATIVE_INFINITY;
+
+	/* the contacts of each node both ways, by neighbour and start time */
+	private int[] offsets = null;
+	private int[] neighbours;
+	private double[] windowStarts;
+	private double[] windowEnds;
+	/* where the contacts with each neighbour start, nodeRuns by node */
+	private int[] nodeRuns;
+	private int[] runs;
+
+	private double hopTime = 0;
+
+	/**
+	 * @param nodes of the network, the contacts are between their indices
+	 */
+	public ContactPlan(List<Node> nodes) {
+		this.nodes = nodes;
+	}
+
+	/**
+	 * Record the contacts while the constellation moves
+	 * @param network the constellation moves
+	 * @param constellation of the network
+	 * @param horizon how many seconds to record
+	 * @param step seconds between the samples
+	 * @return the plan from the current time of the constellation on
+	 */
+	public static ContactPlan record(Network network, Constellation constellation,
+			double horizon, double step) {
+		ContactPlan plan = new ContactPlan(network.getNodes());
+		double end = constellation.getTime() + horizon;
+		plan.sample(constellation.getTime(), network.getGraph());
+		while(constellation.getTime() + step <= end + 1e-9) {
+			constellation.step(step);
+			plan.sample(constellation.getTime(), network.getGraph());
+		}
+		return plan;
+	}
+
+	/**
+	 * Add the links of the graph at the time. A link that was there on
+	 * the last sample too makes the contact longer. The samples have to
+	 * come in time order.
+	 * @param time of the sample in seconds
+	 * @param graph of the network at the time
+	 */
+	public void sample(double time, VisibilityGraph graph) {
+		if(time < lastSample)
+			throw new IllegalArgumentException("The samples have to be in time order");
+		lastSample = time;
+		int links = 0;
+		for(int a=0; a < graph.size(); a++) {
+			for(int e = graph.first(a); e < graph.last(a); e++) {
+				if(graph.target(e) > a)
+					links++;
+			}
+		}
+		long[] current = new long[links];
+		int[] currentContacts = new int[links];
+		// both lists are in the order of the pair, so they are merged in one go
+		int i = 0;
+		int n = 0;
+		for(int a=0; a < graph.size(); a++) {
+			for(int e = graph.first(a); e < graph.last(a); e++) {
+				int b = graph.target(e);
+				if(b <= a)
+					continue;
+				long pair = ((long)a << 32) | b;
+				while(i < open.length && open[i] < pair)
+					i++;
+				int contact;
+				if(i < open.length && open[i] == pair) {
+					contact = openContacts[i];
+					ends[contact] = time;
+				} else {
+					contact = add(a, b, time, time);
+				}
+				current[n] = pair;
+				currentContacts[n++] = contact;
+			}
+		}
+		open = current;
+		openContacts = currentContacts;
+	}
+
+	/**
+	 * Add a contact between the nodes, both ways. The contacts of
+	 * the same two nodes must not overlap.
+	 * @param a index of a node
+	 * @param b index of the other node
+	 * @param start time in seconds
+	 * @param end time in seconds
+	 * @return the index of the contact
+	 */
+	public int addContact(int a, int b, double start, double end) {
+		if(end < start)
+			throw new IllegalArgumentException("The contact ends before it starts");
+		return add(a, b, start, end);
+	}
+
+	private int add(int a, int b, double start, double end) {
+		if(count == from.length) {
+			from = Arrays.copyOf(from, count * 2);
+			to = Arrays.copyOf(to, count * 2);
+			starts = Arrays.copyOf(starts, count * 2);
+			ends = Arrays.copyOf(ends, count * 2);
+		}
+		from[count] = a;
+		to[count] = b;
+		starts[count] = start;
+		ends[count] = end;
+		offsets = null;
+		CONTACTS.increment();
+		return count++;
+	}
+
+	/**
+	 * @param hopTime seconds it takes to send the data over a link,
+	 * the contact has to be there when the sending starts
+	 */
+	public void setHopTime(double hopTime) {
+		this.hopTime = hopTime;
+	}
+
+	public double getHopTime() {
+		return hopTime;
+	}
+
+	/**
+	 * @return the number of contacts
+	 */
+	public int getContactCount() {
+		return count;
+	}
+
+	/**
+	 * @return the node of the network
+	 */
+	public Node getNode(int index) {
+		return nodes.get(index);
+	}
+
+	/**
+	 * Group the contacts by node, neighbour and time. Two stable
+	 * counting sorts, first by the neighbour and then by the node.
+	 */
+	private void index() {
+		int size = nodes.size();
+		int half = 2 * count;
+		int[] byNeighbour = new int[half];
+		int[] counts = new int[size + 1];
+		for(int c=0; c < count; c++) {
+			counts[to[c] + 1]++;
+			counts[from[c] + 1]++;
+		}
+		for(int n=0; n < size; n++)
+			counts[n + 1] += counts[n];
+		// half edge 2c goes from -> to and 2c + 1 to -> from
+		for(int h=0; h < half; h++)
+			byNeighbour[counts[far(h)]++] = h;
+
+		offsets = new int[size + 1];
+		for(int h=0; h < half; h++)
+			offsets[near(h) + 1]++;
+		for(int n=0; n < size; n++)
+			offsets[n + 1] += offsets[n];
+		int[] position = Arrays.copyOf(offsets, size);
+		neighbours = new int[half];
+		windowStarts = new double[half];
+		windowEnds = new double[half];
+		int[] sorted = new int[half];
+		for(int i=0; i < half; i++) {
+			int h = byNeighbour[i];
+			sorted[position[near(h)]++] = h;
+		}
+		for(int i=0; i < half; i++) {
+			int h = sorted[i];
+			neighbours[i] = far(h);
+			windowStarts[i] = starts[h >> 1];
+			windowEnds[i] = ends[h >> 1];
+		}
+		// the contacts of a pair in the order they start
+		nodeRuns = new int[size + 1];
+		runs = new int[half + 1];
+		int runCount = 0;
+		for(int n=0; n < size; n++) {
+			nodeRuns[n] = runCount;
+			for(int run = offsets[n]; run < offsets[n + 1]; ) {
+				int last = run + 1;
+				while(last < offsets[n + 1] && neighbours[last] == neighbours[run])
+					last++;
+				sortByStart(run, last);
+				runs[runCount++] = run;
+				run = last;
+			}
+		}
+		nodeRuns[size] = runCount;
+		runs[runCount] = half;
+		runs = Arrays.copyOf(runs, runCount + 1);
+	}
+
+	private int near(int half) {
+		return (half & 1) == 0 ? from[half >> 1] : to[half >> 1];
+	}
+
+	private int far(int half) {
+		return (half & 1) == 0 ? to[half >> 1] : from[half >> 1];
+	}
+
+	/**
+	 * The recorded contacts are in order already, the added ones
+	 * may not be. Insertion sort, which is quick on sorted runs.
+	 */
+	private void sortByStart(int first, int last) {
+		for(int i = first + 1; i < last; i++) {
+			double start = windowStarts[i];
+			double end = windowEnds[i];
+			int j = i;
+			while(j > first && windowStarts[j - 1] > start) {
+				windowStarts[j] = windowStarts[j - 1];
+				windowEnds[j] = windowEnds[j - 1];
+				j--;
+			}
+			windowStarts[j] = start;
+			windowEnds[j] = end;
+		}
+	}
+
+	/**
+	 * The first contact of the run that is still there at the time.
+	 * The contacts of a pair don't overlap, so the ends are in order
+	 * too.
+	 * @return the contact or last if there's none
+	 */
+	private int firstOpen(int first, int last, double time) {
+		int low = first;
+		int high = last;
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(windowEnds[middle] < time)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Find the route that gets the data from A to B the earliest
+	 * @param start index of A
+	 * @param end index of B
+	 * @param time when the data is at A
+	 * @return the route, check ContactRoute.isFound
+	 */
+	public ContactRoute route(int start, int end, double time) {
+		if(offsets == null)
+			index();
+		int size = nodes.size();
+		double[] arrival = new double[size];
+		int[] hops = new int[size];
+		int[] previous = new int[size];
+		double[] departure = new double[size];
+		Arrays.fill(arrival, Double.POSITIVE_INFINITY);
+		Arrays.fill(previous, -1);
+		NodeHeap queue = new NodeHeap(size);
+		arrival[start] = time;
+		queue.push(start, time);
+
+		int settled = 0;
+		while(queue.isEmpty() == false) {
+			int current = queue.pop();
+			settled++;
+			if(current == end)
+				break;
+			double now = arrival[current];
+			for(int r = nodeRuns[current]; r < nodeRuns[current + 1]; r++) {
+				int neighbour = neighbours[runs[r]];
+				int contact = firstOpen(runs[r], runs[r + 1], now);
+				if(contact == runs[r + 1])
+					continue;
+				double leave = Math.max(now, windowStarts[contact]);
+				double reach = leave + hopTime;
+				// fewer hops when the data would get there at the same time
+				if(reach < arrival[neighbour] ||
+						(reach == arrival[neighbour] && hops[current] + 1 < hops[neighbour] && queue.contains(neighbour))) {
+					arrival[neighbour] = reach;
+					hops[neighbour] = hops[current] + 1;
+					previous[neighbour] = current;
+					departure[neighbour] = leave;
+					queue.push(neighbour, reach);
+				}
+			}
+		}
+		SETTLED.record(settled);
+		if(arrival[end] == Double.POSITIVE_INFINITY)
+			return new ContactRoute(nodes, null, null, time, Double.POSITIVE_INFINITY);
+
+		int[] track = new int[hops[end] + 1];
+		double[] leaving = new double[hops[end]];
+		for(int node = end, i = track.length - 1; i >= 0; node = previous[node], i--) {
+			track[i] = node;
+			if(i > 0)
+				leaving[i - 1] = departure[node];
+		}
+		return new ContactRoute(nodes, track, leaving, time, arrival[end]);
+	}
+
+	/**
+	 * @see #route(int, int, double)
+	 */
+	public ContactRoute route(Node start, Node end, double time) {
+		return route(start.index, end.index, time);
+	}
+}
@@ -0,0 +1,132 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class ContactPlanTest {
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.ContactPlan#route(int, int, double)}.
+	 */
+	@Test
+	public void testStoreAndForward() {
+		List<Node> nodes = new ArrayList<Node>();
+		nodes.add(new Node("A", 0, 0, 0));
+		nodes.add(new Node("SAT1", 0, 10, 700));
+		nodes.add(new Node("B", 0, 20, 0));
+		ContactPlan plan = new ContactPlan(nodes);
+		plan.addContact(0, 1, 0, 10);
+		plan.addContact(1, 2, 20, 30);
+		plan.addContact(0, 2, 100, 110);
+
+		ContactRoute route = plan.route(0, 2, 5);
+		assertTrue(route.isFound());
+		assertEquals(2, route.getHops());
+		assertEquals(20, route.getArrival(), 0);
+		assertEquals(15, route.getDelay(), 0);
+		assertEquals(5, route.getDeparture(0), 0);
+		assertEquals(20, route.getDeparture(1), 0);
+		assertEquals("A @5.0,SAT1 @20.0,B", route.toString());
+
+		// missed SAT1, have to wait for B to come into view
+		route = plan.route(0, 2, 15);
+		assertEquals(1, route.getHops());
+		assertEquals(100, route.getArrival(), 0);
+
+		route = plan.route(0, 2, 200);
+		assertFalse(route.isFound());
+		assertEquals("null", route.toString());
+
+		// the contact has to be there when the sending starts
+		plan.setHopTime(1);
+		route = plan.route(0, 2, 5);
+		assertEquals(21, route.getArrival(), 0);
+		route = plan.route(0, 2, 10);
+		assertEquals(21, route.getArrival(), 0);
+		route = plan.route(0, 2, 10.5);
+		assertEquals(101, route.getArrival(), 0);
+	}
+
+	/**
+	 * The earliest arrival should be the first sample the data can
+	 * get to B on, going one sample at a time
+	 */
+	@Test
+	public void testRecordedContacts() {
+		Random random = new Random(22);
+		List<Network> networks = new ArrayList<Network>();
+		List<Constellation> constellations = new ArrayList<Constellation>();
+		for(int copy=0; copy < 2; copy++) {
+			random.setSeed(22);
+			Network net = new Network();
+			net.addNode(new Node("Helsinki", 60.192059, 24.945831, 0));
+			net.addNode(new Node("Sydney", -33.86, 151.21, 0));
+			for(int i=0; i < 40; i++)
+				net.addNode(new Node("SAT" + i, 0, 0, 500 + random.nextDouble() * 300));
+			net.init();
+			Constellation constellation = new Constellation(net);
+			List<Node> nodes = net.getNodes();
+			for(int i=2; i < nodes.size(); i++)
+				constellation.setOrbit(nodes.get(i), new Orbit(random.nextDouble() * 100,
+						random.nextDouble() * 360, random.nextDouble() * 360, nodes.get(i).getAltitude()));
+			networks.add(net);
+			constellations.add(constellation);
+		}
+		ContactPlan plan = ContactPlan.record(networks.get(0), constellations.get(0), 6000, 60);
+		assertTrue(plan.getContactCount() > 0);
+
+		// the same samples one at a time, spreading from Helsinki
+		Network net = networks.get(1);
+		Constellation constellation = constellations.get(1);
+		int size = net.getNodes().size();
+		BitSet reached = new BitSet(size);
+		reached.set(0);
+		double expected = Double.POSITIVE_INFINITY;
+		for(int step=0; step <= 100; step++) {
+			if(step > 0)
+				constellation.step(60);
+			VisibilityGraph graph = net.getGraph();
+			boolean spread = true;
+			while(spread) {
+				spread = false;
+				for(int a = reached.nextSetBit(0); a >= 0; a = reached.nextSetBit(a + 1)) {
+					for(int e = graph.first(a); e < graph.last(a); e++) {
+						if(reached.get(graph.target(e)) == false) {
+							reached.set(graph.target(e));
+							spread = true;
+						}
+					}
+				}
+			}
+			if(reached.get(1)) {
+				expected = constellation.getTime();
+				break;
+			}
+		}
+		assertTrue(expected < Double.POSITIVE_INFINITY);
+		assertTrue(expected > 0);
+
+		ContactRoute route = plan.route(0, 1, 0);
+		assertTrue(route.isFound());
+		assertEquals(expected, route.getArrival(), 1e-6);
+		assertEquals("Helsinki", route.getPath().get(0).getId());
+		assertEquals("Sydney", route.getPath().get(route.getHops()).getId());
+		for(int hop = 1; hop < route.getHops(); hop++)
+			assertTrue(route.getDeparture(hop) >= route.getDeparture(hop - 1));
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ContactRoute is the answer of a ContactPlan: the nodes the data
+ * goes through, when it leaves each of them and when it gets to B.
+ * The data waits at a node until the contact to the next one starts.
+ */
+public class ContactRoute {
+
+	private List<Node> nodes;
+	private int[] track;
+	private double[] departures;
+	private double start;
+	private double arrival;
+
+	/**
+	 * @param nodes of the network
+	 * @param track node indices from A to B or null if there's no route
+	 * @param departures when the data leaves each node but the last
+	 * @param start when the data was at A
+	 * @param arrival when the data gets to B
+	 */
+	ContactRoute(List<Node> nodes, int[] track, double[] departures, double start, double arrival) {
+		this.nodes = nodes;
+		this.track = track;
+		this.departures = departures;
+		this.start = start;
+		this.arrival = arrival;
+	}
+
+	/**
+	 * @return true if the data can get from A to B within the plan
+	 */
+	public boolean isFound() {
+		return track != null;
+	}
+
+	/**
+	 * @return the number of hops from A to B or 0 if no route
+	 */
+	public int getHops() {
+		return track == null ? 0 : track.length - 1;
+	}
+
+	/**
+	 * @return the node indices from A to B or null
+	 */
+	public int[] getTrack() {
+		return track;
+	}
+
+	/**
+	 * @param hop from 0 to getHops() - 1
+	 * @return the time the data leaves the node at the start of the hop
+	 */
+	public double getDeparture(int hop) {
+		return departures[hop];
+	}
+
+	/**
+	 * @return when the data gets to B, infinite if it doesn't
+	 */
+	public double getArrival() {
+		return arrival;
+	}
+
+	/**
+	 * @return how long it takes from A to B in seconds
+	 */
+	public double getDelay() {
+		return arrival - start;
+	}
+
+	/**
+	 * @return the nodes from A to B or null
+	 */
+	public List<Node> getPath() {
+		if(track == null)
+			return null;
+		List<Node> path = new ArrayList<Node>(track.length);
+		for(int i=0; i < track.length; i++)
+			path.add(nodes.get(track[i]));
+		return path;
+	}
+
+	/**
+	 * @return the nodes with the departure times, e.g.
+	 * "A @0.0,SAT1 @120.0,B"
+	 */
+	@Override
+	public String toString() {
+		if(track == null)
+			return "null";
+		StringBuilder builder = new StringBuilder();
+		for(int i=0; i < track.length; i++) {
+			if(i > 0)
+				builder.append(',');
+			builder.append(nodes.get(track[i]).getId());
+			if(i < departures.length)
+				builder.append(" @").append(departures[i]);
+		}
+		return builder.toString();
+	}
+}
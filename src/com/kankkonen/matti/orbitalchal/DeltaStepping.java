@@ -0,0 +1,731 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * DeltaStepping finds the same best path as PathSearch in DIJKSTRA
+ * mode, but the edges are relaxed by many threads at once. On a mega
+ * constellation where every satellite sees thousands of others the
+ * work is in walking the edges, and one priority queue can only hand
+ * out one node at a time.
+ *
+ * Instead of a queue the nodes are kept in buckets by their cost, each
+ * bucket delta wide. All the nodes of the lowest bucket are taken at
+ * once and their edges are relaxed in parallel. An edge that costs no
+ * more than delta ("light") can lead back into the same bucket, so those
+ * are relaxed again until the bucket stays empty. The other ("heavy")
+ * edges always lead to a later bucket and are relaxed once, when the
+ * bucket is done and the costs of its nodes are final.
+ *
+ * Every hop costs HOP_COST, so with the default delta of HOP_COST all
+ * the edges are heavy and a bucket is all the nodes with the same
+ * number of hops from A: a breadth first search by hops, with a wide
+ * front for the threads and each node relaxed only once. A smaller delta means less wasted work on
+ * nodes that end up further than they first looked, but smaller
+ * buckets and less to do in parallel.
+ *
+ * The cost of a node is lowered with compare and set, a positive double
+ * compares the same as its bits in a long. The costs come out the same
+ * as in PathSearch, they are added up the same way, and the path is
+ * read backwards from B through the neighbours whose cost plus the edge
+ * is the cost of the node. Ties are broken like in PathSearch: of the
+ * ends and of those neighbours the one with the smallest index.
+ *
+ * The tiles of a front are ForkJoinTasks. The thread that waits for
+ * them relaxes tiles itself instead of just blocking, so a search can
+ * be run from inside a task of the same pool, e.g. a batch of routes
+ * in the common pool, without every worker ending up waiting for
+ * tiles nobody is left to run.
+ *
+ * The costs, the marks and the lists of nodes are kept in a Context
+ * that is used again by the next search, like the SearchContext of
+ * PathSearch.
+ *
+ * The graph has to be a VisibilityGraph, a LazyGraph can't be used by
+ * many threads. A search is for one query and one thread at a time,
+ * like PathSearch.
+ *
+ * On one cpu, on a Walker constellation of 10000 satellites at 1200 km,
+ * a search with the default delta took a bit longer than DIJKSTRA (144
+ * against 129 ms) and wider buckets only made it slower, 275 ms at two
+ * hops. Whether many cpus make up for that has to be measured with
+ * DeltaSteppingBenchmark, so PathFinder doesn't offer it as a strategy.
+ */
+public class DeltaStepping {
+
+	private final static Metrics.Counter RELAXED = Metrics.getDefault().counter("delta.relaxed");
+	private final static Metrics.Histogram BUCKETS = Metrics.getDefault().histogram("delta.buckets");
+	private final static Metrics.Histogram NANOS = Metrics.getDefault().histogram("delta.nanos");
+
+	/* A front smaller than this is relaxed in the calling thread */
+	private final static int MIN_TILE_NODES = 64;
+	/* The front is split into this many tiles per cpu so that the
+	 * uneven tiles even out, like in Network.initParallel */
+	private final static int TILES_PER_CPU = 8;
+	/* More buckets than this in the cycle means delta is way too small */
+	private final static int MAX_BUCKETS = 1 << 20;
+
+	private final static long INFINITY = Double.doubleToRawLongBits(Double.POSITIVE_INFINITY);
+
+	private VisibilityGraph graph;
+	private double delta;
+	private SearchContext.Ends sources = new SearchContext.Ends();
+	private SearchContext.Ends targets = new SearchContext.Ends();
+	private Context context;
+
+	private int[] track = null;
+	private double pathLength = 0;
+	private int hops = 0;
+	private int buckets = 0;
+	private long relaxed = 0;
+
+	/**
+	 * @param graph to search
+	 */
+	public DeltaStepping(VisibilityGraph graph) {
+		this(graph, PathSearch.HOP_COST);
+	}
+
+	/**
+	 * @param graph to search
+	 * @param delta the width of a bucket, in the same units as the
+	 * cost in PathSearch
+	 */
+	public DeltaStepping(VisibilityGraph graph, double delta) {
+		this(graph, delta, Context.forThread());
+	}
+
+	/**
+	 * @param graph to search
+	 * @param delta the width of a bucket
+	 * @param context to keep the costs of the nodes in
+	 */
+	public DeltaStepping(VisibilityGraph graph, double delta, Context context) {
+		if(delta <= 0)
+			throw new IllegalArgumentException("The bucket width has to be positive");
+		this.graph = graph;
+		this.delta = delta;
+		this.context = context;
+	}
+
+	/**
+	 * @param graph to search
+	 * @param start index of the path's first node in the graph
+	 * @param end index of the path's last node in the graph
+	 */
+	public DeltaStepping(VisibilityGraph graph, int start, int end) {
+		this(graph);
+		if(start >= 0 && end >= 0) {
+			addSource(start, 0, 0);
+			addTarget(end, 0, 0);
+		}
+	}
+
+	/**
+	 * Start the search from the node
+	 * @param node index in the graph
+	 * @param hops it takes from A to the node
+	 * @param distance from A to the node in degrees
+	 */
+	public void addSource(int node, int hops, double distance) {
+		sources.add(node, hops, distance);
+	}
+
+	/**
+	 * The search may end at the node
+	 * @param node index in the graph
+	 * @param hops it takes from the node to B
+	 * @param distance from the node to B in degrees
+	 */
+	public void addTarget(int node, int hops, double distance) {
+		targets.add(node, hops, distance);
+	}
+
+	public double getDelta() {
+		return delta;
+	}
+
+	/**
+	 * Run the search in the common ForkJoinPool
+	 * @return true if a path from start to end was found
+	 */
+	public boolean search() {
+		return search(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Run the search, in the calling thread if it is a worker of the
+	 * pool already
+	 * @param pool to relax the tiles of the big fronts in
+	 * @return true if a path from start to end was found
+	 */
+	public boolean search(ForkJoinPool pool) {
+		long started = System.nanoTime();
+		boolean found;
+		if(ForkJoinTask.getPool() == pool) {
+			found = run();
+		} else {
+			found = pool.invoke(new RecursiveTask<Boolean>() {
+				@Override
+				protected Boolean compute() {
+					return run();
+				}
+			});
+		}
+		NANOS.record(System.nanoTime() - started);
+		BUCKETS.record(buckets);
+		RELAXED.add(relaxed);
+		return found;
+	}
+
+	private boolean run() {
+		if(sources.count == 0 || targets.count == 0)
+			return false;
+		context.begin(graph.size());
+		try {
+			return emptyBuckets();
+		} finally {
+			context.end();
+		}
+	}
+
+	/**
+	 * Empty the buckets in order until the rest can't lead anywhere
+	 * better, then read the path
+	 */
+	private boolean emptyBuckets() {
+		double lowest = Double.POSITIVE_INFINITY;
+		double highest = 0;
+		for(int s=0; s < sources.count; s++) {
+			double sourceCost = PathSearch.cost(sources.hops[s], sources.distances[s]);
+			lower(sources.nodes[s], sourceCost);
+			lowest = Math.min(lowest, sourceCost);
+			highest = Math.max(highest, sourceCost);
+		}
+		// the costs waiting in the buckets are never further apart than
+		// the sources plus the longest edge, so the buckets can go round
+		double reach = highest - lowest + PathSearch.HOP_COST + graph.getMaxWeight();
+		double cycleSize = Math.ceil(reach / delta) + 2;
+		if(cycleSize > MAX_BUCKETS)
+			throw new IllegalArgumentException("The bucket width is too small for the graph");
+		Buckets cycle = context.buckets;
+		cycle.reset((int)cycleSize);
+		for(int s=0; s < sources.count; s++)
+			cycle.add(bucket(cost(sources.nodes[s])), sources.nodes[s]);
+
+		// the nodes of the bucket that have been relaxed, and the front
+		// of nodes still to relax, marked with the bucket they are in
+		int[] relaxedIn = context.relaxedIn;
+		int[] frontIn = context.frontIn;
+		Nodes done = context.done;
+		Nodes front = context.front;
+		Nodes next = context.next;
+		double bestCost = best();
+		long current = bucket(lowest);
+
+		while(cycle.pending > 0) {
+			while(cycle.isEmpty(current))
+				current++;
+			// the rest cost at least this, they can't be any better
+			if(current * delta >= bestCost)
+				break;
+			// stamps only need to differ from bucket to bucket, also from
+			// the buckets of the searches before in the same context
+			int stamp = context.nextStamp();
+			buckets++;
+			done.clear();
+			front.clear();
+			Nodes taken = cycle.take(current);
+			for(int i=0; i < taken.count; i++) {
+				int node = taken.nodes[i];
+				// the node may be done already or in the front twice
+				if(context.isSettled(node) == false && frontIn[node] != stamp && bucket(cost(node)) <= current) {
+					frontIn[node] = stamp;
+					front.add(node);
+				}
+			}
+			while(front.count > 0) {
+				for(int i=0; i < front.count; i++) {
+					int node = front.nodes[i];
+					frontIn[node] = -1;
+					if(relaxedIn[node] != stamp) {
+						relaxedIn[node] = stamp;
+						done.add(node);
+					}
+				}
+				Nodes lowered = relax(front, true, bestCost);
+				next.clear();
+				for(int i=0; i < lowered.count; i++) {
+					int node = lowered.nodes[i];
+					long target = bucket(cost(node));
+					if(target > current)
+						cycle.add(target, node);
+					else if(frontIn[node] != stamp) {
+						frontIn[node] = stamp;
+						next.add(node);
+					}
+				}
+				Nodes swap = front;
+				front = next;
+				next = swap;
+			}
+			Nodes lowered = relax(done, false, bestCost);
+			for(int i=0; i < done.count; i++)
+				context.settle(done.nodes[i]);
+			// a heavy edge leads further than the bucket, unless rounding says otherwise
+			for(int i=0; i < lowered.count; i++)
+				cycle.add(Math.max(current + 1, bucket(cost(lowered.nodes[i]))), lowered.nodes[i]);
+			bestCost = best();
+			current++;
+		}
+
+		int end = -1;
+		double endCost = Double.POSITIVE_INFINITY;
+		for(int t=0; t < targets.count; t++) {
+			double total = cost(targets.nodes[t]) + PathSearch.cost(targets.hops[t], targets.distances[t]);
+			int node = targets.nodes[t];
+			if(total < endCost || (total == endCost && node < end)) {
+				endCost = total;
+				end = node;
+			}
+		}
+		if(end < 0)
+			return false;
+		createTrack(end);
+		return true;
+	}
+
+	/**
+	 * @return the cost of the best path to B found so far
+	 */
+	private double best() {
+		double best = Double.POSITIVE_INFINITY;
+		for(int t=0; t < targets.count; t++)
+			best = Math.min(best, cost(targets.nodes[t]) +
+					PathSearch.cost(targets.hops[t], targets.distances[t]));
+		return best;
+	}
+
+	private long bucket(double cost) {
+		return (long)(cost / delta);
+	}
+
+	private double cost(int node) {
+		return Double.longBitsToDouble(context.bits(node));
+	}
+
+	/**
+	 * Lower the cost of the node if the new one is smaller
+	 * @return true if it was lowered
+	 */
+	private boolean lower(int node, double cost) {
+		context.claim(node);
+		AtomicLongArray costs = context.costs;
+		long bits = Double.doubleToRawLongBits(cost);
+		long old = costs.get(node);
+		while(bits < old) {
+			if(costs.compareAndSet(node, old, bits))
+				return true;
+			old = costs.get(node);
+		}
+		return false;
+	}
+
+	/**
+	 * Relax the light or heavy edges of the nodes, in tiles in parallel
+	 * if there are enough of them. Nothing is lowered over the limit, that
+	 * can't lead anywhere better than the best path so far. An end may
+	 * still be lowered to it, for a tie with the best path.
+	 * Runs in a worker of the pool, which relaxes tiles of its own while
+	 * it waits for the rest.
+	 * @return the nodes whose cost went down, a node may be there more
+	 * than once, until the next relax
+	 */
+	private Nodes relax(Nodes front, boolean light, double limit) {
+		Nodes lowered = context.lowered;
+		lowered.clear();
+		if(front.count < 2 * MIN_TILE_NODES) {
+			Tile tile = new Tile(front.nodes, 0, front.count, light, limit, lowered);
+			tile.compute();
+			relaxed += tile.relaxed;
+			return lowered;
+		}
+		int tiles = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * TILES_PER_CPU,
+				front.count / MIN_TILE_NODES));
+		int rows = (front.count + tiles - 1) / tiles;
+		List<Tile> tileList = new ArrayList<Tile>();
+		for(int first = 0; first < front.count; first += rows) {
+			tileList.add(new Tile(front.nodes, first, Math.min(front.count, first + rows), light, limit,
+					context.tileNodes(tileList.size())));
+		}
+		ForkJoinTask.invokeAll(tileList);
+
+		for(Tile tile : tileList) {
+			Nodes nodes = tile.join();
+			for(int i=0; i < nodes.count; i++)
+				lowered.add(nodes.nodes[i]);
+			relaxed += tile.relaxed;
+		}
+		return lowered;
+	}
+
+	/**
+	 * Walk back from the end through the neighbours the cost came from
+	 * and add up the hops and the "distance" like PathSearch does
+	 */
+	private void createTrack(int end) {
+		Nodes reversed = new Nodes();
+		int node = end;
+		while(true) {
+			reversed.add(node);
+			int source = sources.best(node);
+			if(source >= 0 && cost(node) == PathSearch.cost(sources.hops[source], sources.distances[source]))
+				break;
+			int previous = -1;
+			double nodeCost = cost(node);
+			for(int e = graph.first(node); e < graph.last(node); e++) {
+				int neighbour = graph.target(e);
+				double weight = graph.weight(graph.findEdge(neighbour, node));
+				if(cost(neighbour) + PathSearch.HOP_COST + weight == nodeCost && (previous < 0 || neighbour < previous))
+					previous = neighbour;
+			}
+			if(previous < 0)
+				throw new IllegalStateException("No neighbour of node " + node + " leads to its cost");
+			node = previous;
+		}
+		track = new int[reversed.count];
+		for(int i=0; i < track.length; i++)
+			track[i] = reversed.nodes[track.length - 1 - i];
+
+		int first = sources.best(track[0]);
+		int last = targets.best(end);
+		hops = sources.hops[first] + track.length - 1 + targets.hops[last];
+		pathLength = sources.distances[first];
+		for(int i=1; i < track.length; i++)
+			pathLength += graph.weight(graph.findEdge(track[i-1], track[i]));
+		pathLength += targets.distances[last];
+	}
+
+	/**
+	 * @return the node indices on the path or null
+	 */
+	public int[] getTrack() {
+		return track;
+	}
+
+	/**
+	 * @return the nodes on the path from start to end or null
+	 */
+	public List<Node> getPath() {
+		if(track == null)
+			return null;
+		List<Node> nodes = new ArrayList<Node>(track.length);
+		for(int i=0; i < track.length; i++)
+			nodes.add(graph.getNode(track[i]));
+		return nodes;
+	}
+
+	/**
+	 * @return the sum of "distances" between the nodes on the path
+	 */
+	public double getPathLength() {
+		return pathLength;
+	}
+
+	/**
+	 * @return the number of hops from A to B
+	 */
+	public int getHops() {
+		return hops;
+	}
+
+	/**
+	 * @return how many buckets were emptied during the search
+	 */
+	public int getBuckets() {
+		return buckets;
+	}
+
+	/**
+	 * @return how many edges were relaxed during the search
+	 */
+	public long getRelaxed() {
+		return relaxed;
+	}
+
+	/**
+	 * The working memory of DeltaStepping, the costs and marks of the
+	 * nodes. Making and filling those for every query is work for each
+	 * node of the graph, even when the search stops after a few hops,
+	 * so a context is kept for each thread and used again like the
+	 * SearchContext of PathSearch.
+	 *
+	 * A cost is only valid if its stamp is the generation of the search.
+	 * The tiles lower the costs from many threads, so the thread that
+	 * finds an old stamp first claims the node with the negative
+	 * generation, sets the cost to infinity and then the stamp. The
+	 * others wait the moment it takes. The bucket marks never repeat
+	 * from one search to the next, so they don't need clearing either.
+	 *
+	 * The arrays grow to the biggest graph the context has been used for.
+	 */
+	public static class Context {
+
+		private final static ThreadLocal<Context> CONTEXTS = new ThreadLocal<Context>() {
+			@Override
+			protected Context initialValue() {
+				return new Context();
+			}
+		};
+
+		private int capacity = 0;
+		private int generation = 0;
+		private int stamp = 0;
+		private boolean busy = false;
+		private AtomicLongArray costs = new AtomicLongArray(0);
+		private AtomicIntegerArray costStamps = new AtomicIntegerArray(0);
+		private int[] settled = new int[0];
+		private int[] relaxedIn = new int[0];
+		private int[] frontIn = new int[0];
+		private Nodes done = new Nodes();
+		private Nodes front = new Nodes();
+		private Nodes next = new Nodes();
+		private Nodes lowered = new Nodes();
+		private Nodes[] tiles = new Nodes[0];
+		private Buckets buckets = new Buckets();
+
+		/**
+		 * @return the context of the current thread, or a new one if a
+		 * search of the thread is using it, e.g. one a worker is waiting
+		 * for while it runs other tasks
+		 */
+		public static Context forThread() {
+			Context context = CONTEXTS.get();
+			return context.busy ? new Context() : context;
+		}
+
+		/**
+		 * Start a new search, the costs and marks of the last one are forgotten
+		 * @param size the number of nodes in the graph
+		 */
+		void begin(int size) {
+			if(size > capacity) {
+				capacity = Math.max(size, capacity + (capacity >> 1));
+				costs = new AtomicLongArray(capacity);
+				costStamps = new AtomicIntegerArray(capacity);
+				settled = new int[capacity];
+				relaxedIn = new int[capacity];
+				frontIn = new int[capacity];
+			}
+			if(++generation == Integer.MAX_VALUE) {
+				for(int i=0; i < capacity; i++)
+					costStamps.set(i, 0);
+				Arrays.fill(settled, 0);
+				generation = 1;
+			}
+			busy = true;
+		}
+
+		/**
+		 * The search is done with the context
+		 */
+		void end() {
+			busy = false;
+		}
+
+		/**
+		 * @return the number of nodes the arrays have room for
+		 */
+		public int getCapacity() {
+			return capacity;
+		}
+
+		/**
+		 * @return a mark for a bucket that no earlier bucket has had
+		 */
+		int nextStamp() {
+			if(++stamp == Integer.MAX_VALUE) {
+				Arrays.fill(relaxedIn, 0);
+				Arrays.fill(frontIn, 0);
+				stamp = 1;
+			}
+			return stamp;
+		}
+
+		/**
+		 * @return the bits of the node's cost, infinity if it has none
+		 */
+		long bits(int node) {
+			int s = costStamps.get(node);
+			while(s == -generation) {
+				Thread.onSpinWait();
+				s = costStamps.get(node);
+			}
+			return s == generation ? costs.get(node) : INFINITY;
+		}
+
+		/**
+		 * Make the node's cost valid for this search, infinity if it
+		 * has none yet
+		 */
+		void claim(int node) {
+			int s = costStamps.get(node);
+			while(s != generation) {
+				if(s != -generation && costStamps.compareAndSet(node, s, -generation)) {
+					costs.set(node, INFINITY);
+					costStamps.set(node, generation);
+					return;
+				}
+				Thread.onSpinWait();
+				s = costStamps.get(node);
+			}
+		}
+
+		/**
+		 * @return an empty list for the nodes the tile lowers
+		 */
+		Nodes tileNodes(int tile) {
+			if(tile >= tiles.length)
+				tiles = Arrays.copyOf(tiles, Math.max(tile + 1, tiles.length * 2));
+			if(tiles[tile] == null)
+				tiles[tile] = new Nodes();
+			tiles[tile].clear();
+			return tiles[tile];
+		}
+
+		boolean isSettled(int node) {
+			return settled[node] == generation;
+		}
+
+		void settle(int node) {
+			settled[node] = generation;
+		}
+	}
+
+	/**
+	 * A growing list of node indices
+	 */
+	private static class Nodes {
+		private int[] nodes = new int[64];
+		private int count = 0;
+
+		void add(int node) {
+			if(count == nodes.length)
+				nodes = Arrays.copyOf(nodes, count * 2);
+			nodes[count++] = node;
+		}
+
+		void clear() {
+			count = 0;
+		}
+	}
+
+	/**
+	 * The buckets waiting to be emptied. Only a cycle of them is kept,
+	 * bucket b is in the slot b modulo the cycle. A longer cycle than
+	 * needed works just as well, so the slots are kept for the next
+	 * search unless it needs more or a lot less.
+	 */
+	private static class Buckets {
+		private Nodes[] slots = new Nodes[0];
+		private Nodes taken = new Nodes();
+		private int pending = 0;
+
+		/**
+		 * Empty all the buckets
+		 * @param cycle the number of slots needed at least
+		 */
+		void reset(int cycle) {
+			if(cycle > slots.length || cycle * 4 < slots.length)
+				slots = new Nodes[cycle];
+			for(Nodes nodes : slots) {
+				if(nodes != null)
+					nodes.clear();
+			}
+			pending = 0;
+		}
+
+		void add(long bucket, int node) {
+			int slot = (int)(bucket % slots.length);
+			if(slots[slot] == null)
+				slots[slot] = new Nodes();
+			slots[slot].add(node);
+			pending++;
+		}
+
+		boolean isEmpty(long bucket) {
+			Nodes nodes = slots[(int)(bucket % slots.length)];
+			return nodes == null || nodes.count == 0;
+		}
+
+		/**
+		 * Empty the bucket
+		 * @return the nodes that were in it, until the next take
+		 */
+		Nodes take(long bucket) {
+			int slot = (int)(bucket % slots.length);
+			Nodes nodes = slots[slot];
+			slots[slot] = taken;
+			taken = nodes;
+			pending -= nodes.count;
+			slots[slot].clear();
+			return nodes;
+		}
+	}
+
+	/**
+	 * A tile of the front for relaxing in parallel. Collects the nodes
+	 * whose cost it lowered.
+	 */
+	private class Tile extends RecursiveTask<Nodes> {
+		private int[] front;
+		private int first;
+		private int last;
+		private boolean light;
+		private double limit;
+		private Nodes lowered;
+		private long relaxed = 0;
+
+		Tile(int[] front, int first, int last, boolean light, double limit, Nodes lowered) {
+			this.front = front;
+			this.first = first;
+			this.last = last;
+			this.light = light;
+			this.limit = limit;
+			this.lowered = lowered;
+		}
+
+		@Override
+		protected Nodes compute() {
+			for(int i = first; i < last; i++) {
+				int node = front[i];
+				double nodeCost = cost(node);
+				// every hop costs something, like in PathSearch
+				if(nodeCost + PathSearch.HOP_COST >= limit)
+					continue;
+				for(int e = graph.first(node); e < graph.last(node); e++) {
+					double weight = graph.weight(e);
+					if((PathSearch.HOP_COST + weight <= delta) != light)
+						continue;
+					relaxed++;
+					double newCost = nodeCost + PathSearch.HOP_COST + weight;
+					if(newCost <= limit && lower(graph.target(e), newCost))
+						lowered.add(graph.target(e));
+				}
+			}
+			return lowered;
+		}
+	}
+}
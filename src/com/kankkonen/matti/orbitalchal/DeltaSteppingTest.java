@@ -0,0 +1,230 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class DeltaSteppingTest {
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.DeltaStepping#search(java.util.concurrent.ForkJoinPool)}.
+	 * The paths should be the same as PathSearch finds, with any bucket
+	 * width and with the fronts split over many threads.
+	 */
+	@Test
+	public void testSameAsDijkstra() throws InterruptedException {
+		Random random = new Random(25);
+		VisibilityGraph graph = TestConstellations.initialised(random, 2000, 400, 1200).getGraph();
+		double[] deltas = { PathSearch.HOP_COST, PathSearch.HOP_COST / 3,
+				2.5 * PathSearch.HOP_COST, 10 * PathSearch.HOP_COST };
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for(int i=0; i < 40; i++) {
+				int a = random.nextInt(graph.size());
+				int b = random.nextInt(graph.size());
+				PathSearch dijkstra = new PathSearch(graph, a, b, PathSearch.Mode.DIJKSTRA);
+				DeltaStepping parallel = new DeltaStepping(graph, deltas[i % deltas.length]);
+				parallel.addSource(a, 0, 0);
+				parallel.addTarget(b, 0, 0);
+				assertEquals(dijkstra.search(), parallel.search(pool));
+				assertArrayEquals(dijkstra.getTrack(), parallel.getTrack());
+				assertEquals(dijkstra.getHops(), parallel.getHops());
+				assertEquals(dijkstra.getPathLength(), parallel.getPathLength(), 0);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Several ends with hops and "distance" of their own, like the
+	 * ground stations
+	 */
+	@Test
+	public void testManyEnds() throws InterruptedException {
+		Random random = new Random(26);
+		VisibilityGraph graph = TestConstellations.initialised(random, 1000, 400, 1200).getGraph();
+		for(int i=0; i < 30; i++) {
+			PathSearch dijkstra = new PathSearch(graph, PathSearch.Mode.DIJKSTRA);
+			DeltaStepping parallel = new DeltaStepping(graph);
+			for(int s=0; s < 3; s++) {
+				int node = random.nextInt(graph.size());
+				double distance = random.nextDouble() * 10;
+				int hops = random.nextInt(3);
+				dijkstra.addSource(node, hops, distance);
+				parallel.addSource(node, hops, distance);
+				node = random.nextInt(graph.size());
+				distance = random.nextDouble() * 10;
+				dijkstra.addTarget(node, 1, distance);
+				parallel.addTarget(node, 1, distance);
+			}
+			assertEquals(dijkstra.search(), parallel.search());
+			assertArrayEquals(dijkstra.getTrack(), parallel.getTrack());
+			assertEquals(dijkstra.getHops(), parallel.getHops());
+			assertEquals(dijkstra.getPathLength(), parallel.getPathLength(), 0);
+		}
+	}
+
+	/**
+	 * A context used again and again, also for graphs of different
+	 * sizes and from the threads of the pool, should give the same
+	 * paths as Dijkstra every time
+	 */
+	@Test
+	public void testReuse() throws InterruptedException {
+		Random random = new Random(27);
+		VisibilityGraph small = TestConstellations.initialised(random, 300, 400, 1200).getGraph();
+		VisibilityGraph big = TestConstellations.initialised(random, 1500, 400, 1200).getGraph();
+		DeltaStepping.Context context = new DeltaStepping.Context();
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for(int i=0; i < 60; i++) {
+				VisibilityGraph graph = i % 3 == 0 ? small : big;
+				int a = random.nextInt(graph.size());
+				int b = random.nextInt(graph.size());
+				PathSearch dijkstra = new PathSearch(graph, a, b, PathSearch.Mode.DIJKSTRA);
+				DeltaStepping parallel = new DeltaStepping(graph, PathSearch.HOP_COST, context);
+				parallel.addSource(a, 0, 0);
+				parallel.addTarget(b, 0, 0);
+				assertEquals(dijkstra.search(), parallel.search(pool));
+				assertArrayEquals(dijkstra.getTrack(), parallel.getTrack());
+				assertEquals(dijkstra.getPathLength(), parallel.getPathLength(), 0);
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1500, context.getCapacity());
+	}
+
+	/**
+	 * Two paths that cost exactly the same, mirrored over the equator.
+	 * PathSearch and DeltaStepping both take the one with the smaller
+	 * indices going back from B, also when the ends tie.
+	 */
+	@Test
+	public void testEqualCosts() {
+		Network net = new Network();
+		net.addNode(new Node("A", 0, 0, 500));
+		net.addNode(new Node("B", 0, 99, 500));
+		net.addNode(new Node("N1", 5, 33, 500));
+		net.addNode(new Node("S1", -5, 33, 500));
+		net.addNode(new Node("S2", -5, 66, 500));
+		net.addNode(new Node("N2", 5, 66, 500));
+		net.init();
+		VisibilityGraph graph = net.getGraph();
+		assertEquals(graph.getDistance(0, 2), graph.getDistance(0, 3), 0);
+		assertEquals(graph.getDistance(1, 4), graph.getDistance(1, 5), 0);
+		int[] expected = { 0, 3, 4, 1 };
+
+		PathSearch dijkstra = new PathSearch(graph, 0, 1, PathSearch.Mode.DIJKSTRA);
+		assertTrue(dijkstra.search());
+		assertArrayEquals(expected, dijkstra.getTrack());
+		PathSearch astar = new PathSearch(graph, 0, 1, PathSearch.Mode.ASTAR);
+		assertTrue(astar.search());
+		assertArrayEquals(expected, astar.getTrack());
+		double[] deltas = { PathSearch.HOP_COST, PathSearch.HOP_COST / 3, 10 * PathSearch.HOP_COST };
+		for(double delta : deltas) {
+			DeltaStepping parallel = new DeltaStepping(graph, delta);
+			parallel.addSource(0, 0, 0);
+			parallel.addTarget(1, 0, 0);
+			assertTrue(parallel.search());
+			assertArrayEquals(expected, parallel.getTrack());
+			assertEquals(dijkstra.getPathLength(), parallel.getPathLength(), 0);
+		}
+
+		// N1 and S1 are as good an end as the other
+		dijkstra = new PathSearch(graph, PathSearch.Mode.DIJKSTRA);
+		DeltaStepping parallel = new DeltaStepping(graph);
+		dijkstra.addSource(0, 0, 0);
+		parallel.addSource(0, 0, 0);
+		dijkstra.addTarget(3, 0, 0);
+		parallel.addTarget(3, 0, 0);
+		dijkstra.addTarget(2, 0, 0);
+		parallel.addTarget(2, 0, 0);
+		assertTrue(dijkstra.search());
+		assertTrue(parallel.search());
+		assertArrayEquals(new int[] { 0, 2 }, dijkstra.getTrack());
+		assertArrayEquals(new int[] { 0, 2 }, parallel.getTrack());
+	}
+
+	/**
+	 * Searches run from the tasks of the pool they relax their tiles in,
+	 * more of them than the pool has threads. Waiting for the tiles
+	 * mustn't leave the tiles without a thread to run them.
+	 */
+	@Test
+	public void testInsidePool() throws InterruptedException, ExecutionException, TimeoutException {
+		Random random = new Random(28);
+		final VisibilityGraph graph = TestConstellations.initialised(random, 2000, 400, 1200).getGraph();
+		final ForkJoinPool pool = new ForkJoinPool(2);
+		try {
+			List<Future<int[]>> futures = new ArrayList<Future<int[]>>();
+			List<PathSearch> dijkstras = new ArrayList<PathSearch>();
+			for(int i=0; i < 8; i++) {
+				final int a = random.nextInt(graph.size());
+				final int b = random.nextInt(graph.size());
+				dijkstras.add(new PathSearch(graph, a, b, PathSearch.Mode.DIJKSTRA));
+				futures.add(pool.submit(new Callable<int[]>() {
+					@Override
+					public int[] call() {
+						DeltaStepping parallel = new DeltaStepping(graph, a, b);
+						parallel.search(pool);
+						return parallel.getTrack();
+					}
+				}));
+			}
+			for(int i=0; i < futures.size(); i++) {
+				dijkstras.get(i).search();
+				assertArrayEquals(dijkstras.get(i).getTrack(), futures.get(i).get(60, TimeUnit.SECONDS));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.DeltaStepping#search()}.
+	 */
+	@Test
+	public void testNoPath() throws InterruptedException {
+		Network net = new Network();
+		net.addNode(new Node("SAT1", 0, 0, 500));
+		net.addNode(new Node("SAT2", 0, 10, 500));
+		net.addNode(new Node("SAT3", 0, 100, 500));
+		net.init();
+		VisibilityGraph graph = net.getGraph();
+		DeltaStepping search = new DeltaStepping(graph, 0, 2);
+		assertFalse(search.search());
+		assertNull(search.getTrack());
+
+		search = new DeltaStepping(graph, 0, 1);
+		assertTrue(search.search());
+		assertEquals(1, search.getHops());
+		assertEquals(2, search.getPath().size());
+
+		try {
+			new DeltaStepping(graph, 0);
+			fail();
+		} catch(IllegalArgumentException e) {
+		}
+	}
+}
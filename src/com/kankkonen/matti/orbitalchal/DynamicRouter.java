@@ -0,0 +1,312 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Arrays;
+
+/**
+ * DynamicRouter keeps the best paths from one source node to every
+ * other node of a VisibilityGraph, and repairs them when satellites
+ * fail or links drop or change, instead of searching again from
+ * scratch.
+ *
+ * The best paths form a tree: every node remembers the node before it
+ * on its best path and the cost of the path, the same cost PathSearch
+ * uses (HOP_COST per hop plus the "distance"). When an edge gets worse
+ * or disappears, only the nodes whose best path went through it can
+ * get worse, and those are the subtree under the edge. Their costs are
+ * forgotten, each of them takes the best offer from its neighbours
+ * outside the subtree and a Dijkstra run inside the subtree sorts out
+ * the rest. When an edge gets better the improvement is pushed out
+ * from its end with Dijkstra, going only as far as it improves things.
+ *
+ * So the work of a repair depends on how many nodes the change
+ * really affects, not on the size of the constellation. Asking the
+ * path to a node is just walking the tree back to the source.
+ *
+ * The graph itself is immutable, so the router has its own copy of
+ * the edge weights. A removed edge has an infinite weight and a
+ * removed node has all its edges removed.
+ */
+public class DynamicRouter {
+
+	private final static Metrics.Histogram REPAIR_NODES = Metrics.getDefault().histogram("dynamic.repair.nodes");
+	private final static Metrics.Histogram REPAIR_NANOS = Metrics.getDefault().histogram("dynamic.repair.nanos");
+
+	private VisibilityGraph graph;
+	private int source;
+	private double[] weights;
+	private boolean[] dead;
+	private double[] cost;
+	private int[] previous;
+	private NodeHeap queue;
+	/* the nodes of the subtree being repaired */
+	private boolean[] affected;
+	private int[] subtree;
+	private int touched = 0;
+
+	/**
+	 * Find the best paths from the source to all the nodes
+	 * @param graph to route in
+	 * @param source index of the node in the graph
+	 */
+	public DynamicRouter(VisibilityGraph graph, int source) {
+		this.graph = graph;
+		this.source = source;
+		int size = graph.size();
+		weights = new double[graph.getEdgeCount()];
+		for(int e=0; e < weights.length; e++)
+			weights[e] = graph.weight(e);
+		dead = new boolean[size];
+		cost = new double[size];
+		previous = new int[size];
+		queue = new NodeHeap(size);
+		affected = new boolean[size];
+		subtree = new int[size];
+		rebuild();
+	}
+
+	/**
+	 * Forget the tree and find all the best paths again from scratch
+	 */
+	public void rebuild() {
+		Arrays.fill(cost, Double.POSITIVE_INFINITY);
+		Arrays.fill(previous, -1);
+		touched = 0;
+		if(dead[source] == false) {
+			cost[source] = 0;
+			queue.push(source, 0);
+		}
+		propagate();
+	}
+
+	/**
+	 * The satellite is gone, the paths through it are repaired
+	 * @param node index in the graph
+	 */
+	public void removeNode(int node) {
+		if(dead[node])
+			return;
+		long started = System.nanoTime();
+		dead[node] = true;
+		for(int e = graph.first(node); e < graph.last(node); e++) {
+			weights[e] = Double.POSITIVE_INFINITY;
+			weights[graph.findEdge(graph.target(e), node)] = Double.POSITIVE_INFINITY;
+		}
+		touched = 0;
+		worsened(new int[] { node }, 1);
+		repaired(started);
+	}
+
+	/**
+	 * The satellite is back, with its links as they are in the graph
+	 * @param node index in the graph
+	 */
+	public void restoreNode(int node) {
+		if(dead[node] == false)
+			return;
+		long started = System.nanoTime();
+		dead[node] = false;
+		touched = 0;
+		for(int e = graph.first(node); e < graph.last(node); e++) {
+			int neighbour = graph.target(e);
+			if(dead[neighbour] == false) {
+				weights[e] = graph.weight(e);
+				weights[graph.findEdge(neighbour, node)] = graph.weight(e);
+				offer(neighbour, node, weights[e]);
+			}
+		}
+		if(node == source) {
+			cost[source] = 0;
+			previous[source] = -1;
+			queue.push(source, 0);
+		}
+		propagate();
+		repaired(started);
+	}
+
+	/**
+	 * The link between the nodes is gone, in both directions
+	 */
+	public void removeEdge(int a, int b) {
+		setWeight(a, b, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Change the "distance" of the link between the nodes, in both
+	 * directions, and repair the paths
+	 * @param a index of a node
+	 * @param b index of a neighbour of a in the graph
+	 * @param weight the new "distance" in degrees or infinity if
+	 * the link is gone
+	 */
+	public void setWeight(int a, int b, double weight) {
+		int ab = graph.findEdge(a, b);
+		int ba = graph.findEdge(b, a);
+		if(ab < 0 || ba < 0)
+			throw new IllegalArgumentException(a + " and " + b + " are not neighbours");
+		if(dead[a] || dead[b])
+			return;
+		double old = weights[ab];
+		if(weight == old)
+			return;
+		long started = System.nanoTime();
+		weights[ab] = weight;
+		weights[ba] = weight;
+		touched = 0;
+		if(weight > old) {
+			// only the nodes whose best path uses the edge can get worse
+			int[] roots = new int[2];
+			int count = 0;
+			if(previous[b] == a)
+				roots[count++] = b;
+			if(previous[a] == b)
+				roots[count++] = a;
+			worsened(roots, count);
+		} else {
+			offer(a, b, weight);
+			offer(b, a, weight);
+			propagate();
+		}
+		repaired(started);
+	}
+
+	/**
+	 * The edges to the roots got worse, repair their subtrees
+	 */
+	private void worsened(int[] roots, int count) {
+		// collect the subtrees, the children of a node are among its neighbours
+		int size = 0;
+		for(int r=0; r < count; r++) {
+			affected[roots[r]] = true;
+			subtree[size++] = roots[r];
+		}
+		for(int i=0; i < size; i++) {
+			int node = subtree[i];
+			for(int e = graph.first(node); e < graph.last(node); e++) {
+				int child = graph.target(e);
+				if(previous[child] == node && affected[child] == false) {
+					affected[child] = true;
+					subtree[size++] = child;
+				}
+			}
+		}
+		for(int i=0; i < size; i++) {
+			cost[subtree[i]] = Double.POSITIVE_INFINITY;
+			previous[subtree[i]] = -1;
+		}
+
+		// each node takes the best offer from outside the subtree
+		for(int i=0; i < size; i++) {
+			int node = subtree[i];
+			if(dead[node])
+				continue;
+			if(node == source) {
+				cost[node] = 0;
+				queue.push(node, 0);
+				continue;
+			}
+			for(int e = graph.first(node); e < graph.last(node); e++)
+				offer(graph.target(e), node, weights[e]);
+		}
+		for(int i=0; i < size; i++)
+			affected[subtree[i]] = false;
+		touched += size;
+		propagate();
+	}
+
+	/**
+	 * Could the path to node go through from, if so queue it
+	 */
+	private void offer(int from, int node, double weight) {
+		if(dead[from] || dead[node] || cost[from] == Double.POSITIVE_INFINITY)
+			return;
+		double newCost = cost[from] + PathSearch.HOP_COST + weight;
+		if(newCost < cost[node]) {
+			cost[node] = newCost;
+			previous[node] = from;
+			queue.push(node, newCost);
+		}
+	}
+
+	/**
+	 * Dijkstra from the queued nodes, as far as things get better
+	 */
+	private void propagate() {
+		while(queue.isEmpty() == false) {
+			int node = queue.pop();
+			touched++;
+			for(int e = graph.first(node); e < graph.last(node); e++)
+				offer(node, graph.target(e), weights[e]);
+		}
+	}
+
+	private void repaired(long started) {
+		REPAIR_NANOS.record(System.nanoTime() - started);
+		REPAIR_NODES.record(touched);
+	}
+
+	/**
+	 * @return index of the source node
+	 */
+	public int getSource() {
+		return source;
+	}
+
+	/**
+	 * @return true if there's a path from the source to the node
+	 */
+	public boolean isReachable(int node) {
+		return cost[node] != Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * @return the cost of the best path to the node, see PathSearch.cost
+	 */
+	public double getCost(int node) {
+		return cost[node];
+	}
+
+	/**
+	 * @return the node before this one on the best path or -1
+	 */
+	public int getPrevious(int node) {
+		return previous[node];
+	}
+
+	/**
+	 * @return the node indices from the source to the node or null
+	 * if the node can't be reached
+	 */
+	public int[] getTrack(int node) {
+		if(isReachable(node) == false)
+			return null;
+		int count = 1;
+		for(int n = node; previous[n] >= 0; n = previous[n])
+			count++;
+		int[] track = new int[count];
+		for(int n = node, i = count - 1; i >= 0; n = previous[n], i--)
+			track[i] = n;
+		return track;
+	}
+
+	/**
+	 * @return the sum of "distances" on the best path to the node
+	 */
+	public double getPathLength(int node) {
+		double length = 0;
+		for(int n = node; previous[n] >= 0; n = previous[n])
+			length += weights[graph.findEdge(previous[n], n)];
+		return length;
+	}
+
+	/**
+	 * @return how many nodes the last change touched
+	 */
+	public int getLastRepairSize() {
+		return touched;
+	}
+}
@@ -0,0 +1,118 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class DynamicRouterTest {
+
+	/* the repaired tree should be the same as one found from scratch */
+	private static void assertSameCosts(DynamicRouter router, DynamicRouter scratch, int size) {
+		for(int n=0; n < size; n++) {
+			assertEquals(scratch.isReachable(n), router.isReachable(n));
+			if(router.isReachable(n)) {
+				assertEquals(scratch.getCost(n), router.getCost(n), 1e-6);
+				int[] track = router.getTrack(n);
+				assertEquals(0, track[0]);
+				assertEquals(n, track[track.length - 1]);
+				assertEquals(router.getCost(n), PathSearch.cost(track.length - 1, router.getPathLength(n)), 1e-6);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.DynamicRouter#DynamicRouter(VisibilityGraph, int)}.
+	 */
+	@Test
+	public void testTree() {
+		VisibilityGraph graph = TestConstellations.initialised(new Random(14), 300, 400, 800).getGraph();
+		DynamicRouter router = new DynamicRouter(graph, 0);
+		for(int n=1; n < graph.size(); n += 17) {
+			PathSearch search = new PathSearch(graph, 0, n, PathSearch.Mode.DIJKSTRA);
+			assertEquals(search.search(), router.isReachable(n));
+			if(router.isReachable(n)) {
+				assertEquals(search.getHops(), router.getTrack(n).length - 1);
+				assertEquals(search.getPathLength(), router.getPathLength(n), 1e-9);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.DynamicRouter#removeNode(int)}.
+	 */
+	@Test
+	public void testRemoveNode() {
+		Random random = new Random(15);
+		VisibilityGraph graph = TestConstellations.initialised(random, 300, 400, 800).getGraph();
+		DynamicRouter router = new DynamicRouter(graph, 0);
+		DynamicRouter scratch = new DynamicRouter(graph, 0);
+		for(int i=0; i < 30; i++) {
+			int node = 1 + random.nextInt(graph.size() - 1);
+			router.removeNode(node);
+			scratch.removeNode(node);
+			scratch.rebuild();
+			assertFalse(router.isReachable(node));
+			assertTrue(router.getLastRepairSize() <= graph.size());
+			assertSameCosts(router, scratch, graph.size());
+		}
+		for(int i=1; i < graph.size(); i += 3) {
+			router.restoreNode(i);
+			scratch.restoreNode(i);
+		}
+		scratch.rebuild();
+		assertSameCosts(router, scratch, graph.size());
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.DynamicRouter#setWeight(int, int, double)}.
+	 */
+	@Test
+	public void testSetWeight() {
+		Random random = new Random(16);
+		VisibilityGraph graph = TestConstellations.initialised(random, 300, 400, 800).getGraph();
+		DynamicRouter router = new DynamicRouter(graph, 0);
+		DynamicRouter scratch = new DynamicRouter(graph, 0);
+		int small = 0;
+		for(int i=0; i < 200; i++) {
+			int a = random.nextInt(graph.size());
+			if(graph.first(a) == graph.last(a))
+				continue;
+			int b = graph.target(graph.first(a) + random.nextInt(graph.last(a) - graph.first(a)));
+			if(i % 4 == 0) {
+				router.removeEdge(a, b);
+				scratch.removeEdge(a, b);
+			} else {
+				double weight = random.nextDouble() * 2 * graph.getMaxWeight();
+				router.setWeight(a, b, weight);
+				scratch.setWeight(a, b, weight);
+			}
+			if(router.getLastRepairSize() < graph.size() / 4)
+				small++;
+			scratch.rebuild();
+			assertSameCosts(router, scratch, graph.size());
+		}
+		// most changes touch only a small part of the tree
+		assertTrue(small > 100);
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.DynamicRouter#setWeight(int, int, double)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testNotNeighbours() {
+		VisibilityGraph graph = TestConstellations.initialised(new Random(17), 50, 400, 800).getGraph();
+		DynamicRouter router = new DynamicRouter(graph, 0);
+		router.setWeight(0, 0, 1);
+	}
+}
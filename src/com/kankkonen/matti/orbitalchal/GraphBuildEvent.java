@@ -0,0 +1,48 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * GraphBuildEvent is recorded to Java Flight Recorder every time
+ * Network.init or initParallel builds the visibility graph. The
+ * duration of the event is the whole build.
+ */
+@Name("com.kankkonen.matti.orbitalchal.GraphBuild")
+@Label("Graph Build")
+@Category("Orbital Challenge")
+@Description("Visibility graph built by Network.init")
+class GraphBuildEvent extends jdk.jfr.Event {
+
+	@Label("Nodes")
+	int nodes;
+
+	@Label("Pairs Tested")
+	long pairs;
+
+	@Label("Edges")
+	long edges;
+
+	@Label("Parallel")
+	boolean parallel;
+
+	@Label("Index Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long indexNanos;
+
+	@Label("Visibility Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long visibilityNanos;
+
+	@Label("Graph Time")
+	@Timespan(Timespan.NANOSECONDS)
+	long graphNanos;
+}
@@ -0,0 +1,184 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * LazyGraph is the visibility graph of a network that is worked out
+ * only as far as it's needed. The neighbours of a node are found with
+ * the spatial index and the VisibilityKernel the first time the path
+ * engine asks for the edges of the node, and kept for the next time.
+ *
+ * A single query from A to B only touches the part of the network
+ * the search expands, so it doesn't have to wait for init to check
+ * every node, and the edges of the nodes nobody asks about never take
+ * any memory. The edges come out the same as in the VisibilityGraph
+ * built by init, in the same order, so the searches find the same
+ * paths.
+ *
+ * The edges of each node are added to the end of the edge arrays as
+ * they are found, so the edge indices of a node don't change once
+ * they are handed out.
+ *
+ * Finding the edges changes the graph, so a LazyGraph can't be used
+ * by many threads at once.
+ */
+public class LazyGraph implements Adjacency {
+
+	private List<Node> nodes;
+	private NodeStore store;
+	private SphereGrid grid;
+	private double maxCoverage;
+	/* the edges of each node, -1 until they have been found */
+	private int[] firstEdge;
+	private int[] lastEdge;
+	private int[] targets = new int[256];
+	private double[] weights = new double[256];
+	private int edges = 0;
+	private int expanded = 0;
+
+	private VisibilityKernel kernel;
+	private VisibilityKernel.Block block = new VisibilityKernel.Block();
+	private int[] visible = new int[64];
+
+	/**
+	 * @param nodes of the network
+	 * @param store of the network
+	 * @param grid spatial index of the store
+	 * @param maxCoverage the biggest coverage of the nodes
+	 */
+	LazyGraph(List<Node> nodes, NodeStore store, SphereGrid grid, double maxCoverage) {
+		this.nodes = nodes;
+		this.store = store;
+		this.grid = grid;
+		this.maxCoverage = maxCoverage;
+		kernel = new VisibilityKernel(store);
+		firstEdge = new int[store.size()];
+		lastEdge = new int[store.size()];
+		Arrays.fill(firstEdge, -1);
+		Arrays.fill(lastEdge, -1);
+	}
+
+	/**
+	 * Find the neighbours of the node, the same way init does
+	 */
+	private void expand(int node) {
+		block.clear(0, node);
+		grid.query(store.getLatitude(node), store.getLongitude(node),
+				store.getCoverage(node) + maxCoverage, block);
+		if(visible.length < block.count)
+			visible = new int[block.candidates.length];
+		int found = kernel.canSee(node, block.candidates, block.count, visible);
+		Arrays.sort(visible, 0, found);
+
+		if(edges + found > targets.length) {
+			int capacity = Math.max(targets.length * 2, edges + found);
+			targets = Arrays.copyOf(targets, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+		}
+		firstEdge[node] = edges;
+		for(int i=0; i < found; i++) {
+			targets[edges] = visible[i];
+			weights[edges++] = store.getDistance(node, visible[i]);
+		}
+		lastEdge[node] = edges;
+		expanded++;
+	}
+
+	/**
+	 * @return true if the neighbours of the node have been found
+	 */
+	public boolean isExpanded(int node) {
+		return firstEdge[node] >= 0;
+	}
+
+	/**
+	 * @return how many nodes have had their neighbours found
+	 */
+	public int getExpandedCount() {
+		return expanded;
+	}
+
+	/**
+	 * @return the number of edges found so far
+	 */
+	public int getEdgeCount() {
+		return edges;
+	}
+
+	public int size() {
+		return firstEdge.length;
+	}
+
+	public int first(int node) {
+		if(firstEdge[node] < 0)
+			expand(node);
+		return firstEdge[node];
+	}
+
+	public int last(int node) {
+		if(lastEdge[node] < 0)
+			expand(node);
+		return lastEdge[node];
+	}
+
+	public int target(int edge) {
+		return targets[edge];
+	}
+
+	public double weight(int edge) {
+		return weights[edge];
+	}
+
+	public int findEdge(int a, int b) {
+		int e = Arrays.binarySearch(targets, first(a), last(a), b);
+		return e >= 0 ? e : -1;
+	}
+
+	/**
+	 * Two nodes can't be further apart than their coverages reach
+	 * @return twice the biggest coverage
+	 */
+	public double getMaxWeight() {
+		return 2 * maxCoverage;
+	}
+
+	public double getMaxCoverage() {
+		return maxCoverage;
+	}
+
+	public double getDistance(int node, double px, double py, double pz) {
+		return Node.angle(store.vectorX()[node] * px + store.vectorY()[node] * py + store.vectorZ()[node] * pz);
+	}
+
+	public double getDistance(int a, int b) {
+		return store.getDistance(a, b);
+	}
+
+	public double getX(int node) {
+		return store.vectorX()[node];
+	}
+
+	public double getY(int node) {
+		return store.vectorY()[node];
+	}
+
+	public double getZ(int node) {
+		return store.vectorZ()[node];
+	}
+
+	public Node getNode(int index) {
+		return nodes.get(index);
+	}
+
+	public int indexOf(Node node) {
+		if(node.index >= 0 && node.index < size() && nodes.get(node.index) == node)
+			return node.index;
+		return -1;
+	}
+}
@@ -0,0 +1,74 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class LazyGraphTest {
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.LazyGraph#first(int)}.
+	 */
+	@Test
+	public void testSameEdgesAsInit() {
+		Network net = TestConstellations.random(19, 1000, 300, 700);
+		LazyGraph lazy = net.getLazyGraph();
+		assertEquals(0, lazy.getExpandedCount());
+		// found before init, compared after
+		for(int node = 0; node < lazy.size(); node += 7)
+			lazy.first(node);
+		net.init();
+		VisibilityGraph graph = net.getGraph();
+		assertEquals(graph.size(), lazy.size());
+		for(int node = 0; node < lazy.size(); node += 7) {
+			assertTrue(lazy.isExpanded(node));
+			assertEquals(graph.last(node) - graph.first(node), lazy.last(node) - lazy.first(node));
+			for(int e = graph.first(node), f = lazy.first(node); e < graph.last(node); e++, f++) {
+				assertEquals(graph.target(e), lazy.target(f));
+				assertEquals(graph.weight(e), lazy.weight(f), 0);
+			}
+		}
+		assertFalse(lazy.isExpanded(1));
+		// init changed the network, the next lazy graph starts over
+		assertNotSame(lazy, net.getLazyGraph());
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Network#setLazy(boolean)}.
+	 */
+	@Test
+	public void testLazyPathFinder() {
+		Network eager = TestConstellations.random(20, 3000, 300, 700);
+		Network lazy = TestConstellations.random(20, 3000, 300, 700);
+		eager.init();
+		lazy.setLazy(true);
+		assertTrue(lazy.isLazy());
+		List<Node> eagerNodes = eager.getNodes();
+		List<Node> lazyNodes = lazy.getNodes();
+		Random random = new Random(21);
+		for(int i=0; i < 20; i++) {
+			int a = random.nextInt(eagerNodes.size());
+			int b = random.nextInt(eagerNodes.size());
+			PathFinder expected = new PathFinder(eager, eagerNodes.get(a), eagerNodes.get(b));
+			PathFinder found = new PathFinder(lazy, lazyNodes.get(a), lazyNodes.get(b));
+			assertEquals(expected.findPath(), found.findPath());
+			assertEquals(expected.getBestPathString(), found.getBestPathString());
+			assertEquals(expected.getBestPathDistance(), found.getBestPathDistance(), 1e-9);
+		}
+		// only the part of the network the searches got to
+		assertTrue(lazy.getLazyGraph().getExpandedCount() < lazyNodes.size() / 2);
+		assertTrue(lazyNodes.get(0).getNeighbours().isEmpty());
+	}
+}
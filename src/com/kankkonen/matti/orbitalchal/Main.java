@@ -7,50 +7,22 @@
 package com.kankkonen.matti.orbitalchal;
 
 import java.io.File;
-import java.util.Scanner;
 
 public class Main {
 
 	void createNetFromFile(String fileName) {
 		
 		try {
-			Network net = new Network();
-			PathFinder finder = null;
-			Node start = null;
-			Node end = null;
-			
-			Scanner scanner = new Scanner(new File(fileName));
-			scanner.skip("#.*\\d*\\s*");
-			scanner.useDelimiter("\\s|,");
-			while(scanner.hasNext()) {
-				String key = scanner.next();
-				
-				if(key.startsWith("SAT")) {
-					System.out.println("Data line " + key );
-					double latitude = scanner.nextDouble();
-					double longitude = scanner.nextDouble();
-					double altitude = scanner.nextDouble();
-					System.out.println("lat " + latitude + " long " + longitude + " alt " + altitude);
-					net.addNode(new Node(key, latitude, longitude, altitude));
-				}
-				else if(key.startsWith("ROUTE")) {
-					System.out.println("Ground station line " + key);
-					double lat_a = scanner.nextDouble();
-					double long_a = scanner.nextDouble();
-					double lat_b = scanner.nextDouble();
-					double long_b = scanner.nextDouble();
-					
-					start = new Node("A", lat_a, long_a, 0);
-					end = new Node("B", lat_b, long_b, 0);
-					net.addNode(start);
-					net.addNode(end);
-					System.out.println(lat_a +","+ long_a +";"+ lat_b +","+ long_b);
-				}
+			Scenario scenario = ScenarioLoader.load(new File(fileName));
+			Network net = scenario.getNetwork();
+			System.out.println("Loaded " + net.getNodes().size() + " nodes");
+			if(scenario.hasRoute() == false) {
+				System.out.println("No ROUTE in " + fileName);
+				return;
 			}
-			scanner.close();
 			// All nodes added to network so init and create the PathFinder
 			net.init();
-			finder = new PathFinder(start, end);
+			PathFinder finder = new PathFinder(net, scenario.getStart(), scenario.getEnd());
 			if( finder.findPath() == true )
 				System.out.println("The shortest path is:" + finder.getBestPathString());
 			else
@@ -61,8 +33,40 @@ public class Main {
 		}
 	}
 	
+	/**
+	 * Load the satellites once and answer route queries until killed
+	 * @param port on localhost
+	 * @param fileName a scenario file or a snapshot file ending with .snapshot
+	 * @param fileLoading true if the clients can switch to other files
+	 */
+	void serve(int port, String fileName, boolean fileLoading) {
+		try {
+			NetworkSnapshot snapshot;
+			if(fileName.endsWith(".snapshot"))
+				snapshot = NetworkSnapshot.open(new File(fileName));
+			else
+				snapshot = RouteServer.constellation(ScenarioLoader.load(new File(fileName)));
+			RouteServer server = new RouteServer(snapshot, port);
+			server.setFileLoading(fileLoading);
+			server.start();
+			System.out.println("Serving " + snapshot.size() + " satellites on port " + server.getPort());
+		} catch (Exception e) {
+			System.out.println(e.getMessage());
+		}
+	}
+	
+	/**
+	 * @param args the scenario file, or --serve port file [--allow-files]
+	 */
 	public static void main(String[] args) {
-		new Main().createNetFromFile("c:\\Users\\Matti\\workspace\\OrbitChallenge\\src\\com\\kankkonen\\matti\\orbitalchal\\satellite_data.csv");
+		if(args.length == 3 && args[0].equals("--serve"))
+			new Main().serve(Integer.parseInt(args[1]), args[2], false);
+		else if(args.length == 4 && args[0].equals("--serve") && args[3].equals("--allow-files"))
+			new Main().serve(Integer.parseInt(args[1]), args[2], true);
+		else if(args.length == 1)
+			new Main().createNetFromFile(args[0]);
+		else
+			new Main().createNetFromFile("c:\\Users\\Matti\\workspace\\OrbitChallenge\\src\\com\\kankkonen\\matti\\orbitalchal\\satellite_data.csv");
 	}
 
 }
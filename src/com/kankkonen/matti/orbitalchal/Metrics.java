@@ -0,0 +1,235 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics is a small registry of counters and histograms, for seeing
+ * what the network and the searches are doing and how long it takes.
+ *
+ * The Network, PathSearch, PathFinder, RouteEnumerator, NetworkSnapshot,
+ * DynamicRouter, RouteServer, ShortestPathTree, ContactPlan and
+ * DeltaStepping record into the default registry:
+ *
+ *   init.count           how many times the graph has been built
+ *   init.pairs           node pairs tested for visibility
+ *   init.edges           edges of the built graphs
+ *   init.index.nanos     time to build the spatial index
+ *   init.visibility.nanos  time to test the pairs
+ *   init.graph.nanos     time to build the VisibilityGraph
+ *   search.expanded      nodes expanded by a search
+ *   search.queue.peak    the biggest the queue got in a search
+ *   search.nanos         time of a search
+ *   enumerate.paths      Path branches created by ENUMERATE
+ *   enumerate.routes     routes found by a RouteEnumerator
+ *   route.nanos          latency of a NetworkSnapshot route query
+ *   dynamic.repair.nodes nodes touched by a DynamicRouter repair
+ *   dynamic.repair.nanos time of a DynamicRouter repair
+ *   server.batch.size    queries routed together by the RouteServer
+ *   server.request.nanos latency of a RouteServer route request
+ *   server.rejected      requests refused with 503
+ *   tree.settled         nodes settled by the ShortestPathTrees
+ *   contact.windows      contacts added to the ContactPlans
+ *   contact.settled      nodes settled by a ContactPlan route search
+ *   delta.relaxed        edges relaxed by the DeltaStepping searches
+ *   delta.buckets        buckets emptied by a DeltaStepping search
+ *   delta.nanos          time of a DeltaStepping search
+ *
+ * The loops count into local variables and the totals are recorded
+ * once at the end, so the metrics cost nothing per edge or per node.
+ * The same numbers go to Java Flight Recorder as GraphBuildEvent and
+ * SearchEvent, when a recording is on.
+ */
+public class Metrics {
+
+	private final static Metrics DEFAULT = new Metrics();
+
+	private Map<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+	private Map<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+
+	/**
+	 * @return the registry everything records into
+	 */
+	public static Metrics getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * @return the counter with the name, created if needed
+	 */
+	public Counter counter(String name) {
+		Counter counter = counters.get(name);
+		if(counter == null) {
+			counters.putIfAbsent(name, new Counter());
+			counter = counters.get(name);
+		}
+		return counter;
+	}
+
+	/**
+	 * @return the histogram with the name, created if needed
+	 */
+	public Histogram histogram(String name) {
+		Histogram histogram = histograms.get(name);
+		if(histogram == null) {
+			histograms.putIfAbsent(name, new Histogram());
+			histogram = histograms.get(name);
+		}
+		return histogram;
+	}
+
+	/**
+	 * @return the counters sorted by name
+	 */
+	public Map<String, Counter> getCounters() {
+		return new TreeMap<String, Counter>(counters);
+	}
+
+	/**
+	 * @return the histograms sorted by name
+	 */
+	public Map<String, Histogram> getHistograms() {
+		return new TreeMap<String, Histogram>(histograms);
+	}
+
+	/**
+	 * Set everything back to zero, the counters and histograms
+	 * handed out stay in use
+	 */
+	public void reset() {
+		for(Counter counter : counters.values())
+			counter.reset();
+		for(Histogram histogram : histograms.values())
+			histogram.reset();
+	}
+
+	/**
+	 * @return all the metrics, one per line
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for(Map.Entry<String, Counter> entry : getCounters().entrySet())
+			builder.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+		for(Map.Entry<String, Histogram> entry : getHistograms().entrySet())
+			builder.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+		return builder.toString();
+	}
+
+	/**
+	 * A count that only goes up, cheap to update from many threads
+	 */
+	public static class Counter {
+		private LongAdder value = new LongAdder();
+
+		public void increment() {
+			value.increment();
+		}
+
+		public void add(long amount) {
+			value.add(amount);
+		}
+
+		public long get() {
+			return value.sum();
+		}
+
+		void reset() {
+			value.reset();
+		}
+
+		@Override
+		public String toString() {
+			return Long.toString(get());
+		}
+	}
+
+	/**
+	 * Distribution of values that are zero or more, e.g. nanoseconds.
+	 * The values are counted in buckets by powers of two, so the
+	 * percentiles are within a factor of two, which is enough to
+	 * spot a regression.
+	 */
+	public static class Histogram {
+		private final static int BUCKETS = 64;
+
+		/* bucket b has the values from 2^(b-1) to 2^b - 1, 0 is in bucket 0 */
+		private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private LongAdder count = new LongAdder();
+		private LongAdder sum = new LongAdder();
+		private AtomicLong max = new AtomicLong();
+
+		/**
+		 * @param value to record, negative values are recorded as 0
+		 */
+		public void record(long value) {
+			if(value < 0)
+				value = 0;
+			buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+			count.increment();
+			sum.add(value);
+			long current = max.get();
+			while(value > current && max.compareAndSet(current, value) == false)
+				current = max.get();
+		}
+
+		public long getCount() {
+			return count.sum();
+		}
+
+		public long getSum() {
+			return sum.sum();
+		}
+
+		public long getMax() {
+			return max.get();
+		}
+
+		public double getMean() {
+			long n = getCount();
+			return n == 0 ? 0 : (double)getSum() / n;
+		}
+
+		/**
+		 * @param fraction e.g. 0.99 for the 99th percentile
+		 * @return the upper limit of the bucket the percentile is in,
+		 * but not more than the biggest value recorded
+		 */
+		public long getPercentile(double fraction) {
+			long n = getCount();
+			if(n == 0)
+				return 0;
+			long rank = (long)Math.ceil(fraction * n);
+			long seen = 0;
+			for(int b=0; b < BUCKETS; b++) {
+				seen += buckets.get(b);
+				if(seen >= rank && seen > 0)
+					return b == 0 ? 0 : Math.min(getMax(), b == BUCKETS - 1 ? Long.MAX_VALUE : (1L << b) - 1);
+			}
+			return getMax();
+		}
+
+		void reset() {
+			for(int b=0; b < BUCKETS; b++)
+				buckets.set(b, 0);
+			count.reset();
+			sum.reset();
+			max.set(0);
+		}
+
+		@Override
+		public String toString() {
+			return "count=" + getCount() + " mean=" + (long)getMean() + " p50=" + getPercentile(0.5) +
+					" p99=" + getPercentile(0.99) + " max=" + getMax();
+		}
+	}
+}
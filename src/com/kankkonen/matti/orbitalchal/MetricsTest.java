@@ -0,0 +1,125 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class MetricsTest {
+
+	private static Network createNetwork() {
+		Network net = new Network();
+		net.addNode(new Node("Helsinki",60.192059,24.945831,0.0));
+		net.addNode(new Node("London",51.5085300,-0.1257400,0));
+		net.addNode(new Node("Sat 2", 54.3002,25.998,700));
+		net.addNode(new Node("Sat 3", 15,24, 700));
+		net.addNode(new Node("Sat 6", 35, -10, 700));
+		return net;
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Metrics.Histogram#record(long)}.
+	 */
+	@Test
+	public void testHistogram() {
+		Metrics metrics = new Metrics();
+		Metrics.Histogram histogram = metrics.histogram("test");
+		assertSame(histogram, metrics.histogram("test"));
+		for(int i=1; i <= 100; i++)
+			histogram.record(i);
+		assertEquals(100, histogram.getCount());
+		assertEquals(5050, histogram.getSum());
+		assertEquals(100, histogram.getMax());
+		assertEquals(50.5, histogram.getMean(), 1e-9);
+		// the percentiles are within a factor of two
+		long median = histogram.getPercentile(0.5);
+		assertTrue(median >= 50 && median < 100);
+		assertEquals(100, histogram.getPercentile(1));
+
+		metrics.counter("count").add(3);
+		metrics.counter("count").increment();
+		assertEquals(4, metrics.counter("count").get());
+		metrics.reset();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, metrics.counter("count").get());
+	}
+
+	/**
+	 * Building the graph and searching should record into the
+	 * default registry
+	 */
+	@Test
+	public void testDefaultMetrics() {
+		Metrics metrics = Metrics.getDefault();
+		long builds = metrics.counter("init.count").get();
+		long edges = metrics.counter("init.edges").get();
+		long searches = metrics.histogram("search.nanos").getCount();
+
+		Network net = createNetwork();
+		net.init();
+		assertEquals(builds + 1, metrics.counter("init.count").get());
+		assertEquals(edges + net.getGraph().getEdgeCount(), metrics.counter("init.edges").get());
+		assertTrue(metrics.counter("init.pairs").get() > 0);
+
+		List<Node> nodes = net.getNodes();
+		PathFinder finder = new PathFinder(net, nodes.get(0), nodes.get(1));
+		assertTrue(finder.findPath());
+		assertEquals(searches + 1, metrics.histogram("search.nanos").getCount());
+		assertTrue(metrics.histogram("search.queue.peak").getMax() > 0);
+		assertTrue(metrics.toString().contains("search.expanded count="));
+	}
+
+	/**
+	 * The events should show up in a flight recording
+	 */
+	@Test
+	public void testFlightRecorderEvents() throws IOException {
+		File file = File.createTempFile("metrics", ".jfr");
+		Recording recording = new Recording();
+		try {
+			recording.enable(GraphBuildEvent.class);
+			recording.enable(SearchEvent.class);
+			recording.start();
+			Network net = createNetwork();
+			net.init();
+			new PathFinder(net, net.getNodes().get(0), net.getNodes().get(1)).findPath();
+			recording.stop();
+			recording.dump(file.toPath());
+
+			int builds = 0;
+			int searches = 0;
+			for(RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+				String name = event.getEventType().getName();
+				if(name.equals("com.kankkonen.matti.orbitalchal.GraphBuild")) {
+					builds++;
+					assertEquals(5, event.getInt("nodes"));
+				} else if(name.equals("com.kankkonen.matti.orbitalchal.Search")) {
+					searches++;
+					assertTrue(event.getBoolean("found"));
+					assertEquals("ASTAR", event.getString("mode"));
+				}
+			}
+			assertEquals(1, builds);
+			assertEquals(1, searches);
+		} finally {
+			recording.close();
+			file.delete();
+		}
+	}
+}
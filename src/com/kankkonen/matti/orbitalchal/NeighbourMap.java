@@ -0,0 +1,227 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * NeighbourMap is the map of a node's neighbours by their id. A satellite
+ * of a big constellation can see hundreds of others, and with a HashMap
+ * each of them costs an entry object of its own on top of the table slot,
+ * which made the neighbours most of the heap the network needs.
+ *
+ * Here the nodes are kept right in the table, one reference each, with
+ * linear probing on the hash of the id. Removing a node shifts the ones
+ * after it back so that no deleted markers are needed. The table is made
+ * when the first neighbour is added, a node without neighbours has none.
+ *
+ * Iterating the values doesn't make an entry for each node, the entry
+ * set does.
+ */
+class NeighbourMap extends AbstractMap<String, Node> {
+
+	private Node[] table = null;
+	private int size = 0;
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	private static int hash(Object id) {
+		int h = id.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the slot of the node with the id or -1
+	 */
+	private int find(Object id) {
+		if(table == null || id == null)
+			return -1;
+		int mask = table.length - 1;
+		for(int i = hash(id) & mask; table[i] != null; i = (i + 1) & mask) {
+			if(table[i].getId().equals(id))
+				return i;
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean containsKey(Object id) {
+		return find(id) >= 0;
+	}
+
+	@Override
+	public Node get(Object id) {
+		int i = find(id);
+		return i < 0 ? null : table[i];
+	}
+
+	/**
+	 * Add the node, a node with the same id is replaced
+	 * @param id of the node, the node's own id is used
+	 * @param node to add
+	 * @return the replaced node or null
+	 */
+	@Override
+	public Node put(String id, Node node) {
+		if(table == null)
+			table = new Node[4];
+		else if((size + 1) * 3 > table.length * 2)
+			resize(table.length * 2);
+		int mask = table.length - 1;
+		int i = hash(node.getId()) & mask;
+		while(table[i] != null) {
+			if(table[i].getId().equals(node.getId())) {
+				Node old = table[i];
+				table[i] = node;
+				return old;
+			}
+			i = (i + 1) & mask;
+		}
+		table[i] = node;
+		size++;
+		return null;
+	}
+
+	private void resize(int capacity) {
+		Node[] old = table;
+		table = new Node[capacity];
+		int mask = capacity - 1;
+		for(Node node : old) {
+			if(node == null)
+				continue;
+			int i = hash(node.getId()) & mask;
+			while(table[i] != null)
+				i = (i + 1) & mask;
+			table[i] = node;
+		}
+	}
+
+	@Override
+	public Node remove(Object id) {
+		int i = find(id);
+		if(i < 0)
+			return null;
+		Node removed = table[i];
+		int mask = table.length - 1;
+		/* move back the nodes that probed past the freed slot */
+		int j = i;
+		while(true) {
+			j = (j + 1) & mask;
+			if(table[j] == null)
+				break;
+			int home = hash(table[j].getId()) & mask;
+			/* j can move to i if its home is not between i and j */
+			if(((j - home) & mask) >= ((j - i) & mask)) {
+				table[i] = table[j];
+				i = j;
+			}
+		}
+		table[i] = null;
+		size--;
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		table = null;
+		size = 0;
+	}
+
+	@Override
+	public Collection<Node> values() {
+		return new AbstractCollection<Node>() {
+			@Override
+			public Iterator<Node> iterator() {
+				return new Slots<Node>() {
+					@Override
+					Node at(Node node) {
+						return node;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	@Override
+	public Set<Map.Entry<String, Node>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Node>>() {
+			@Override
+			public Iterator<Map.Entry<String, Node>> iterator() {
+				return new Slots<Map.Entry<String, Node>>() {
+					@Override
+					Map.Entry<String, Node> at(Node node) {
+						return new SimpleImmutableEntry<String, Node>(node.getId(), node);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * Goes through the used slots of the table. Removing through the
+	 * iterator is not supported, it could move a node the iterator
+	 * hasn't seen yet back to a slot it has.
+	 */
+	private abstract class Slots<T> implements Iterator<T> {
+		private int next = -1;
+
+		Slots() {
+			advance();
+		}
+
+		private void advance() {
+			next++;
+			while(table != null && next < table.length && table[next] == null)
+				next++;
+		}
+
+		abstract T at(Node node);
+
+		@Override
+		public boolean hasNext() {
+			return table != null && next < table.length;
+		}
+
+		@Override
+		public T next() {
+			if(hasNext() == false)
+				throw new NoSuchElementException();
+			T value = at(table[next]);
+			advance();
+			return value;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}
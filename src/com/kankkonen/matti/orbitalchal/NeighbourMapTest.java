@@ -0,0 +1,76 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class NeighbourMapTest {
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.NeighbourMap#remove(java.lang.Object)}.
+	 * Adding and removing at random should leave the same nodes as a
+	 * HashMap has, also when the removed ones had others probing past them.
+	 */
+	@Test
+	public void testAgreesWithHashMap() {
+		Random random = new Random(26);
+		Node[] nodes = new Node[200];
+		for(int i=0; i < nodes.length; i++)
+			nodes[i] = new Node("SAT" + i, 0, i, 550);
+		NeighbourMap map = new NeighbourMap();
+		Map<String, Node> expected = new HashMap<String, Node>();
+
+		for(int round=0; round < 20000; round++) {
+			Node node = nodes[random.nextInt(nodes.length)];
+			if(random.nextInt(3) == 0)
+				assertEquals(expected.remove(node.getId()), map.remove(node.getId()));
+			else
+				assertEquals(expected.put(node.getId(), node), map.put(node.getId(), node));
+			assertEquals(expected.size(), map.size());
+			if(round % 100 == 0) {
+				for(Node other : nodes) {
+					assertEquals(expected.get(other.getId()), map.get(other.getId()));
+					assertEquals(expected.containsKey(other.getId()), map.containsKey(other.getId()));
+				}
+				Set<Node> values = new HashSet<Node>(map.values());
+				assertEquals(new HashSet<Node>(expected.values()), values);
+				assertEquals(expected, map);
+			}
+		}
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get("SAT0"));
+		assertFalse(map.values().iterator().hasNext());
+	}
+
+	/**
+	 * A node with the same id replaces the old one
+	 */
+	@Test
+	public void testSameId() {
+		NeighbourMap map = new NeighbourMap();
+		Node a = new Node("A", 0, 0, 550);
+		Node b = new Node("A", 10, 10, 550);
+		assertNull(map.put(a.getId(), a));
+		assertEquals(a, map.put(b.getId(), b));
+		assertEquals(1, map.size());
+		assertEquals(b, map.get("A"));
+		assertNull(map.remove("B"));
+		assertNull(map.get(null));
+	}
+}
@@ -5,43 +5,555 @@
  */
 package com.kankkonen.matti.orbitalchal;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
 
 /**
  * Network class holds the Node instances and initialises
  * the visibility information for each Node.
+ * 
+ * The data of the nodes is kept in a NodeStore, where each node is
+ * an index to primitive arrays, and the Node instances read it from
+ * there. The visibility checks are done with the store.
+ * 
+ * In the lazy mode init is not needed. The path engines get a
+ * LazyGraph that finds the neighbours of a node only when a search
+ * gets to it, which is much faster for a few queries on a big
+ * network. The Node instances don't get their neighbours then.
+ * 
+ * Once the network has been initialised single nodes can be added
+ * and removed without init. Only the neighbours of that node and
+ * their links back to it are updated, with the spatial index, and
+ * the topology epoch goes up so the users know to rebuild.
  */
 public class Network {
 	private List <Node>nodes = new ArrayList<Node>();
+	private NodeStore store = new NodeStore();
+	private double maxCoverage = 0;
+	private SphereGrid grid = null;
+	/* Built on demand, also from the threads of a RouteCache */
+	private volatile VisibilityGraph graph = null;
+	private boolean lazy = false;
+	/* After init the neighbours are kept up to date node by node */
+	private boolean initialised = false;
+	private LazyGraph lazyGraph = null;
+	private volatile NetworkSnapshot snapshot = null;
+	/* Goes up on every change of the nodes or their neighbours */
+	private volatile long epoch = 0;
+	private RoutingListener listener = RoutingListener.NONE;
+	private List<IndexListener> indexListeners = new ArrayList<IndexListener>();
 	
+	/* Cells smaller than this would just make the index bigger */
+	private final static double MIN_CELL_SIZE = 1;
+	/* Parallel init splits the nodes into this many tiles per cpu
+	 * so that the uneven tiles even out */
+	private final static int TILES_PER_CPU = 8;
+	private final static int MIN_TILE_ROWS = 64;
+	
+	private final static Metrics.Counter BUILDS = Metrics.getDefault().counter("init.count");
+	private final static Metrics.Counter PAIRS = Metrics.getDefault().counter("init.pairs");
+	private final static Metrics.Counter EDGES = Metrics.getDefault().counter("init.edges");
+	private final static Metrics.Histogram INDEX_NANOS = Metrics.getDefault().histogram("init.index.nanos");
+	private final static Metrics.Histogram VISIBILITY_NANOS = Metrics.getDefault().histogram("init.visibility.nanos");
+	private final static Metrics.Histogram GRAPH_NANOS = Metrics.getDefault().histogram("init.graph.nanos");
+	
+	/**
+	 * Told when the indices of the nodes change, for the ones that keep
+	 * something of their own for each node index, e.g. a Constellation
+	 */
+	interface IndexListener {
+		/**
+		 * The node was added, its index is the last one
+		 */
+		void added(Node node);
+		
+		/**
+		 * The node at the index was removed and the last node moved
+		 * to its place, or the last node was removed if they are the same
+		 */
+		void removed(int index, int last);
+	}
+	
+	void addIndexListener(IndexListener indexListener) {
+		indexListeners.add(indexListener);
+	}
+	
+	/**
+	 * Get told what init does, e.g. with a ConsoleRoutingListener
+	 * @param listener to tell or null for nobody
+	 */
+	public void setListener(RoutingListener listener) {
+		this.listener = listener == null ? RoutingListener.NONE : listener;
+	}
+	
+	/**
+	 * Add a node to the network. Before init that's all, init finds
+	 * the neighbours of all the nodes at once. After init the 
+	 * neighbours of the new node are found right away and it's added 
+	 * to theirs, without checking the other nodes again.
+	 * @param node to add
+	 */
 	public void addNode(Node node) {
 		nodes.add(node);
+		node.attach(store, store.add(node));
+		if(node.getCoverage() > maxCoverage)
+			maxCoverage = node.getCoverage();
+		for(IndexListener indexListener : indexListeners)
+			indexListener.added(node);
+		if(grid != null)
+			grid.add(node.index, node.getLatitude(), node.getLongitude());
+		if(initialised) {
+			if(grid == null)
+				createIndex();
+			listener.initNode(node);
+			new Neighbours(true).find(node);
+		}
+		changed();
+	}
+	
+	/**
+	 * Remove a node from the network, it's taken off the neighbours of
+	 * the nodes that could see it. The last node of the network takes
+	 * the place of the removed one, so its index changes.
+	 * 
+	 * The biggest coverage is not made smaller, a bigger one only
+	 * makes the spatial index check a few more candidates.
+	 * @param node to remove
+	 * @return false if the node isn't in this network
+	 */
+	public boolean removeNode(Node node) {
+		int index = node.index;
+		if(index < 0 || index >= nodes.size() || nodes.get(index) != node)
+			return false;
+		for(Node neighbour : node.getNeighbours().values())
+			neighbour.removeNeighbor(node);
+		node.clearNeighbors();
+		
+		if(grid != null)
+			grid.remove(index, store.getLatitude(index), store.getLongitude(index));
+		node.detach();
+		int last = store.remove(index);
+		Node moved = nodes.remove(last);
+		if(last != index) {
+			if(grid != null) {
+				grid.remove(last, store.getLatitude(index), store.getLongitude(index));
+				grid.add(index, store.getLatitude(index), store.getLongitude(index));
+			}
+			nodes.set(index, moved);
+			moved.index = index;
+		}
+		for(IndexListener indexListener : indexListeners)
+			indexListener.removed(index, last);
+		changed();
+		return true;
 	}
 	
 	/**
 	 * This needs to be called after adding all nodes
 	 * Goes through the nodes and checks the visibility
-	 * between each node and updates each node data correspondingly
+	 * between each node and updates each node data correspondingly.
+	 * The neighbours found before are forgotten, so init can be called
+	 * again e.g. after moving the nodes.
+	 * 
+	 * Only the nodes the spatial index finds within the node's coverage
+	 * plus the biggest coverage in the network are checked, the others
+	 * are too far away to be seen anyway.
 	 */
 	public void init() {
+		GraphBuildEvent event = new GraphBuildEvent();
+		event.begin();
+		long started = System.nanoTime();
+		createIndex();
+		long indexed = System.nanoTime();
+		clearNeighbours();
 		Iterator<Node> iterator1 = nodes.iterator();
+		Neighbours neighbours = new Neighbours(false);
 		
 		while(iterator1.hasNext()) {
 			Node current = iterator1.next();
-			System.out.println("Node: " + current.getId());
-			Iterator<Node> iterator2 = nodes.iterator();
-			while(iterator2.hasNext()) {
-				Node candidate = iterator2.next();
-				if(candidate != current && current.canSee(candidate) == true ) {
-					current.addNeighbor(candidate);
-				}
+			listener.initNode(current);
+			neighbours.find(current);
+		}
+		long checked = System.nanoTime();
+		changed();
+		graph = VisibilityGraph.create(nodes, store);
+		built(event, neighbours.tested, false, started, indexed, checked);
+	}
+	
+	/**
+	 * The same as init() but the visibility checks are run in parallel
+	 * in the common ForkJoinPool
+	 */
+	public void initParallel() throws InterruptedException {
+		initParallel(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * The same as init() but the visibility checks are run in parallel.
+	 * 
+	 * The nodes are split into tiles of rows and each tile checks its
+	 * nodes only against the nodes after them, so every pair is checked
+	 * once. The tiles collect the visible pairs into their own arrays 
+	 * and the neighbours are added from those afterwards in this thread,
+	 * in both directions, because the neighbour maps of the nodes are not
+	 * thread safe. The result is the same as with init().
+	 * @param executor to run the tiles in
+	 */
+	public void initParallel(Executor executor) throws InterruptedException {
+		GraphBuildEvent event = new GraphBuildEvent();
+		event.begin();
+		long started = System.nanoTime();
+		createIndex();
+		long indexed = System.nanoTime();
+		int size = store.size();
+		int tiles = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * TILES_PER_CPU,
+				(size + MIN_TILE_ROWS - 1) / MIN_TILE_ROWS));
+		int rows = (size + tiles - 1) / Math.max(1, tiles);
+		
+		clearNeighbours();
+		List<FutureTask<int[]>> tasks = new ArrayList<FutureTask<int[]>>();
+		List<Tile> tileList = new ArrayList<Tile>();
+		for(int first = 0; first < size; first += rows) {
+			Tile tile = new Tile(first, Math.min(size, first + rows));
+			FutureTask<int[]> task = new FutureTask<int[]>(tile);
+			tileList.add(tile);
+			tasks.add(task);
+			executor.execute(task);
+		}
+		
+		for(FutureTask<int[]> task : tasks) {
+			int[] pairs;
+			try {
+				pairs = task.get();
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause();
+				throw new IllegalStateException(e.getCause());
+			}
+			for(int p = 0; p < pairs.length; p += 2) {
+				Node a = nodes.get(pairs[p]);
+				Node b = nodes.get(pairs[p + 1]);
+				linkQuietly(a, b);
+				listener.neighbourAdded(a, b);
+				listener.neighbourAdded(b, a);
 			}
 		}
+		long checked = System.nanoTime();
+		changed();
+		graph = VisibilityGraph.create(nodes, store);
+		long tested = 0;
+		for(Tile tile : tileList)
+			tested += tile.tested;
+		built(event, tested, true, started, indexed, checked);
+	}
+	
+	private void clearNeighbours() {
+		for(Node node : nodes)
+			node.clearNeighbors();
+	}
+	
+	/**
+	 * Record the metrics of a graph build that has just finished
+	 */
+	private void built(GraphBuildEvent event, long tested, boolean parallel,
+			long started, long indexed, long checked) {
+		long finished = System.nanoTime();
+		initialised = true;
+		BUILDS.increment();
+		PAIRS.add(tested);
+		EDGES.add(graph.getEdgeCount());
+		INDEX_NANOS.record(indexed - started);
+		VISIBILITY_NANOS.record(checked - indexed);
+		GRAPH_NANOS.record(finished - checked);
+		event.end();
+		if(event.shouldCommit()) {
+			event.nodes = nodes.size();
+			event.pairs = tested;
+			event.edges = graph.getEdgeCount();
+			event.parallel = parallel;
+			event.indexNanos = indexed - started;
+			event.visibilityNanos = checked - indexed;
+			event.graphNanos = finished - checked;
+			event.commit();
+		}
+	}
+	
+	private void createIndex() {
+		grid = new SphereGrid(store.latitudes(), store.longitudes(), store.size(),
+				Math.max(MIN_CELL_SIZE, maxCoverage));
+	}
+	
+	/**
+	 * Move a node of this network to a new position. The neighbours
+	 * are not checked, that's up to the caller e.g. Constellation.
+	 * @param node to move
+	 * @param latitude the new latitude
+	 * @param longitude the new longitude
+	 */
+	public void moveNode(Node node, double latitude, double longitude) {
+		node.setPosition(latitude, longitude);
+		grid = null;
+		changed();
+	}
+	
+	/**
+	 * Make two nodes of this network neighbours of each other
+	 */
+	public void link(Node a, Node b) {
+		linkQuietly(a, b);
+		listener.neighbourAdded(a, b);
+		listener.neighbourAdded(b, a);
+		changed();
+	}
+	
+	/**
+	 * Only add the nodes to each other's neighbours. A build of the
+	 * whole graph links every pair and calls changed() once at the end.
+	 */
+	private void linkQuietly(Node a, Node b) {
+		a.addNeighbor(b);
+		b.addNeighbor(a);
+	}
+	
+	/**
+	 * The two nodes of this network can't see each other anymore
+	 */
+	public void unlink(Node a, Node b) {
+		a.removeNeighbor(b);
+		b.removeNeighbor(a);
+		changed();
+	}
+	
+	/**
+	 * Find the nodes of the network that can see the given node e.g.
+	 * a ground station that is not part of the network.
+	 * The network needs to be initialised first.
+	 * @param node to look from
+	 * @return the visible nodes, not including the node itself
+	 */
+	public List<Node> getVisibleNodes(Node node) {
+		final Node point = node;
+		final List<Node> visible = new ArrayList<Node>();
+		if(grid == null)
+			createIndex();
+		grid.query(point.getLatitude(), point.getLongitude(),
+				point.getCoverage() + maxCoverage, new SphereGrid.Visitor() {
+			public void visit(int index) {
+				Node candidate = nodes.get(index);
+				if(candidate != point && point.canSee(candidate))
+					visible.add(candidate);
+			}
+		});
+		return visible;
 	}
 	
 	public List<Node> getNodes() {
 		return nodes;
 	}
+	
+	/**
+	 * @return the node data in primitive arrays, the index of a node 
+	 * is its position in the node list
+	 */
+	public NodeStore getStore() {
+		return store;
+	}
+	
+	/**
+	 * The neighbours of the nodes as an immutable graph for the 
+	 * path search. It's built by init(), if nodes have been added
+	 * after that the graph is built again from the neighbours the
+	 * nodes have now.
+	 * 
+	 * Many threads can ask for the graph at the same time, it's 
+	 * built only once.
+	 * @return the graph of this network
+	 */
+	public VisibilityGraph getGraph() {
+		VisibilityGraph current = graph;
+		if(current == null) {
+			synchronized(this) {
+				current = graph;
+				if(current == null) {
+					current = VisibilityGraph.create(nodes, store);
+					graph = current;
+				}
+			}
+		}
+		return current;
+	}
+	
+	/**
+	 * In the lazy mode the path engines use a LazyGraph and init
+	 * doesn't need to be called
+	 * @param lazy true for the lazy mode
+	 */
+	public void setLazy(boolean lazy) {
+		this.lazy = lazy;
+	}
+	
+	public boolean isLazy() {
+		return lazy;
+	}
+	
+	/**
+	 * The neighbours found so far are kept until the network changes
+	 * @return the lazily built graph of this network
+	 */
+	public LazyGraph getLazyGraph() {
+		if(lazyGraph == null) {
+			if(grid == null)
+				createIndex();
+			lazyGraph = new LazyGraph(nodes, store, grid, maxCoverage);
+		}
+		return lazyGraph;
+	}
+	
+	/**
+	 * @return the graph for the path engines, the LazyGraph in the
+	 * lazy mode and the VisibilityGraph otherwise
+	 */
+	public Adjacency getAdjacency() {
+		return lazy ? getLazyGraph() : getGraph();
+	}
+	
+	/**
+	 * Freeze the network for route queries from many threads. The
+	 * same snapshot is given until the network changes.
+	 * 
+	 * Many threads can ask for the snapshot at the same time e.g. 
+	 * through a RouteCache, after a change only the first one builds 
+	 * the new snapshot and the others wait for it.
+	 * @return a snapshot of the network as it is now
+	 */
+	public NetworkSnapshot snapshot() {
+		NetworkSnapshot current = snapshot;
+		if(current == null || current.getEpoch() != epoch) {
+			synchronized(this) {
+				current = snapshot;
+				if(current == null || current.getEpoch() != epoch) {
+					current = new NetworkSnapshot(this);
+					snapshot = current;
+				}
+			}
+		}
+		return current;
+	}
+	
+	/**
+	 * Write a snapshot of the network to a file, so that a route
+	 * worker can open it with NetworkSnapshot.open without reading
+	 * the nodes and running init again
+	 * @param file to write
+	 */
+	public void writeSnapshot(File file) throws IOException {
+		snapshot().write(file);
+	}
+	
+	/**
+	 * The topology epoch goes up whenever nodes are added or moved,
+	 * the network is initialised or neighbours change. Anything 
+	 * computed from the network with an older epoch may be out of date.
+	 * @return the current epoch
+	 */
+	public long getTopologyEpoch() {
+		return epoch;
+	}
+	
+	private void changed() {
+		graph = null;
+		lazyGraph = null;
+		epoch++;
+	}
+	
+	/**
+	 * @return the biggest coverage of the nodes in degrees
+	 */
+	public double getMaxCoverage() {
+		return maxCoverage;
+	}
+	
+	/**
+	 * Adds the visible candidates found by the spatial index
+	 * as neighbours of the current node
+	 */
+	private class Neighbours {
+		private VisibilityKernel kernel = new VisibilityKernel(store);
+		private VisibilityKernel.Block block = new VisibilityKernel.Block();
+		private int[] visible = new int[64];
+		private long tested = 0;
+		/* the current node is added to the neighbours too */
+		private boolean both;
+		
+		Neighbours(boolean both) {
+			this.both = both;
+		}
+		
+		void find(Node current) {
+			block.clear(0, current.index);
+			grid.query(current.getLatitude(), current.getLongitude(),
+					current.getCoverage() + maxCoverage, block);
+			tested += block.count;
+			if(visible.length < block.count)
+				visible = new int[block.candidates.length];
+			int found = kernel.canSee(current.index, block.candidates, block.count, visible);
+			for(int i=0; i < found; i++) {
+				Node neighbour = nodes.get(visible[i]);
+				current.addNeighbor(neighbour);
+				listener.neighbourAdded(current, neighbour);
+				if(both) {
+					neighbour.addNeighbor(current);
+					listener.neighbourAdded(neighbour, current);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * A tile of rows for the parallel init. Collects the visible
+	 * pairs of its nodes with the nodes after them.
+	 */
+	private class Tile implements Callable<int[]> {
+		private int first;
+		private int last;
+		private int[] pairs = new int[64];
+		private int count = 0;
+		private long tested = 0;
+		
+		Tile(int first, int last) {
+			this.first = first;
+			this.last = last;
+		}
+		
+		public int[] call() {
+			VisibilityKernel kernel = new VisibilityKernel(store);
+			VisibilityKernel.Block block = new VisibilityKernel.Block();
+			int[] visible = new int[64];
+			for(int current = first; current < last; current++) {
+				block.clear(current + 1, -1);
+				grid.query(store.getLatitude(current), store.getLongitude(current),
+						store.getCoverage(current) + maxCoverage, block);
+				tested += block.count;
+				if(visible.length < block.count)
+					visible = new int[block.candidates.length];
+				int found = kernel.canSee(current, block.candidates, block.count, visible);
+				if(count + 2 * found > pairs.length)
+					pairs = Arrays.copyOf(pairs, Math.max(pairs.length * 2, count + 2 * found));
+				for(int i=0; i < found; i++) {
+					pairs[count++] = current;
+					pairs[count++] = visible[i];
+				}
+			}
+			return Arrays.copyOf(pairs, count);
+		}
+	}
 }
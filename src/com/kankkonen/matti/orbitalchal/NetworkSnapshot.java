@@ -0,0 +1,418 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+
+/**
+ * NetworkSnapshot is a frozen copy of a Network for answering route
+ * queries. Nothing in it changes after it has been created, so any
+ * number of threads can query it at the same time without locking.
+ * Changes to the Network after that don't show in the snapshot.
+ *
+ * The queries are from ground point A to ground point B. The ground
+ * points don't need to be nodes of the network, the satellites they
+ * can see are found with a spatial index and the path search starts
+ * from those and ends at those.
+ *
+ * Each query has its own search state, so a batch of queries can be
+ * split into chunks and run in parallel on all the cores.
+ *
+ * When one end stays the same, e.g. a user terminal picking the best
+ * of the gateways, routesFrom and routesTo give a RouteTree that
+ * keeps the search from that end and reads the routes to the other
+ * ends from it.
+ */
+public class NetworkSnapshot {
+
+	/* How many queries one parallel task handles */
+	private final static int CHUNK_SIZE = 64;
+
+	private final static Metrics.Histogram ROUTE_NANOS = Metrics.getDefault().histogram("route.nanos");
+
+	private final VisibilityGraph graph;
+	private final String[] ids;
+	private final double[] latitudes;
+	private final double[] longitudes;
+	private final double[] coverage;
+	private final SphereGrid grid;
+	private final long epoch;
+
+	/**
+	 * Take a snapshot of the network
+	 * @param network to freeze, needs to be initialised
+	 */
+	public NetworkSnapshot(Network network) {
+		NodeStore store = network.getStore();
+		int size = store.size();
+		epoch = network.getTopologyEpoch();
+		graph = network.getGraph();
+		ids = new String[size];
+		coverage = new double[size];
+		latitudes = new double[size];
+		longitudes = new double[size];
+		for(int i=0; i < size; i++) {
+			ids[i] = store.getId(i);
+			coverage[i] = store.getCoverage(i);
+			latitudes[i] = store.getLatitude(i);
+			longitudes[i] = store.getLongitude(i);
+		}
+		grid = new SphereGrid(latitudes, longitudes, size, Math.max(1, graph.getMaxCoverage()));
+	}
+
+	/**
+	 * A snapshot read from a file
+	 */
+	NetworkSnapshot(VisibilityGraph graph, String[] ids, double[] latitudes, double[] longitudes,
+			double[] coverage) {
+		this.graph = graph;
+		this.ids = ids;
+		this.latitudes = latitudes;
+		this.longitudes = longitudes;
+		this.coverage = coverage;
+		this.epoch = -1;
+		grid = new SphereGrid(latitudes, longitudes, ids.length, Math.max(1, graph.getMaxCoverage()));
+	}
+
+	/**
+	 * Open a snapshot written with write, this is much faster than
+	 * reading the nodes and initialising a Network
+	 * @param file to read
+	 * @return the snapshot
+	 * @throws IOException if the file can't be read or isn't a snapshot
+	 */
+	public static NetworkSnapshot open(File file) throws IOException {
+		return SnapshotFile.read(file);
+	}
+
+	/**
+	 * Write the snapshot to a file for opening it later
+	 * @param file to write, an existing file is replaced
+	 */
+	public void write(File file) throws IOException {
+		SnapshotFile.write(this, file);
+	}
+
+	/**
+	 * @return the topology epoch of the network when the 
+	 * snapshot was taken or -1 if it was read from a file
+	 */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/**
+	 * @return the graph of the snapshot
+	 */
+	public VisibilityGraph getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	public String getId(int index) {
+		return ids[index];
+	}
+
+	public double getLatitude(int index) {
+		return latitudes[index];
+	}
+
+	public double getLongitude(int index) {
+		return longitudes[index];
+	}
+
+	public double getCoverage(int index) {
+		return coverage[index];
+	}
+
+	/**
+	 * The arrays are handed out for writing the snapshot to a
+	 * file, they must not be changed
+	 */
+	String[] ids() {
+		return ids;
+	}
+
+	double[] latitudes() {
+		return latitudes;
+	}
+
+	double[] longitudes() {
+		return longitudes;
+	}
+
+	double[] coverages() {
+		return coverage;
+	}
+
+	/**
+	 * Find the best route between two ground points
+	 * @param latitudeA of the start
+	 * @param longitudeA of the start
+	 * @param latitudeB of the end
+	 * @param longitudeB of the end
+	 * @return the route, check Route.isFound
+	 */
+	public Route route(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+		long started = System.nanoTime();
+		Route route = find(latitudeA, longitudeA, latitudeB, longitudeB);
+		ROUTE_NANOS.record(System.nanoTime() - started);
+		return route;
+	}
+
+	private Route find(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+		double[] a = new double[3];
+		double[] b = new double[3];
+		Node.toVector(latitudeA, longitudeA, a);
+		Node.toVector(latitudeB, longitudeB, b);
+
+		// two ground points see each other only if they are in the same place
+		double direct = Node.angle(a[0] * b[0] + a[1] * b[1] + a[2] * b[2]);
+		if(direct <= 0)
+			return new Route(ids, new int[0], 1, direct);
+
+		final PathSearch search = new PathSearch(graph, PathSearch.Mode.ASTAR, SearchContext.forThread());
+		visible(latitudeA, longitudeA, a, new Ground() {
+			public void found(int node, double distance) {
+				search.addSource(node, 1, distance);
+			}
+		});
+		visible(latitudeB, longitudeB, b, new Ground() {
+			public void found(int node, double distance) {
+				search.addTarget(node, 1, distance);
+			}
+		});
+		search.setGoal(b[0], b[1], b[2]);
+		if(search.search() == false)
+			return new Route(ids, null, 0, 0);
+		return new Route(ids, search.getTrack(), search.getHops(), search.getPathLength());
+	}
+
+	/**
+	 * @see #route(double, double, double, double)
+	 */
+	public Route route(RouteRequest request) {
+		return route(request.getLatitudeA(), request.getLongitudeA(),
+				request.getLatitudeB(), request.getLongitudeB());
+	}
+
+	/**
+	 * Route a batch of queries in parallel in the common ForkJoinPool
+	 * @param requests the queries
+	 * @return the routes in the same order as the requests
+	 */
+	public List<Route> route(List<RouteRequest> requests) throws InterruptedException {
+		return route(requests, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Route a batch of queries in parallel
+	 * @param requests the queries
+	 * @param executor to run the chunks of queries in
+	 * @return the routes in the same order as the requests
+	 */
+	public List<Route> route(final List<RouteRequest> requests, Executor executor) throws InterruptedException {
+		final Route[] routes = new Route[requests.size()];
+		List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+		for(int first = 0; first < routes.length; first += CHUNK_SIZE) {
+			final int from = first;
+			final int to = Math.min(routes.length, first + CHUNK_SIZE);
+			FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+				public Void call() {
+					for(int i = from; i < to; i++)
+						routes[i] = route(requests.get(i));
+					return null;
+				}
+			});
+			tasks.add(task);
+			executor.execute(task);
+		}
+
+		for(FutureTask<Void> task : tasks) {
+			try {
+				task.get();
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof RuntimeException)
+					throw (RuntimeException)e.getCause();
+				throw new IllegalStateException(e.getCause());
+			}
+		}
+		return Arrays.asList(routes);
+	}
+
+	/**
+	 * The routes from one ground point to many, from a
+	 * ShortestPathTree grown from the point
+	 * @param latitude of A
+	 * @param longitude of A
+	 * @return the tree, for one thread at a time
+	 */
+	public RouteTree routesFrom(double latitude, double longitude) {
+		return new RouteTree(latitude, longitude, false);
+	}
+
+	/**
+	 * The routes from many ground points to one. The tree is grown
+	 * from B and the routes are turned around.
+	 * @param latitude of B
+	 * @param longitude of B
+	 * @return the tree, for one thread at a time
+	 */
+	public RouteTree routesTo(double latitude, double longitude) {
+		return new RouteTree(latitude, longitude, true);
+	}
+
+	/**
+	 * The routes between one ground point and any others. Each query
+	 * only grows the tree as far as it needs to, the satellites
+	 * already settled are not searched again.
+	 */
+	public class RouteTree {
+		private double[] point = new double[3];
+		private boolean reversed;
+		private ShortestPathTree tree;
+		/* the satellites the other ends see */
+		private int[] nodes = new int[16];
+		private int[] hops = new int[16];
+		private double[] distances = new double[16];
+		private int[] owners = new int[16];
+		private int count = 0;
+
+		RouteTree(double latitude, double longitude, boolean reversed) {
+			this.reversed = reversed;
+			Node.toVector(latitude, longitude, point);
+			tree = new ShortestPathTree(graph);
+			visible(latitude, longitude, point, new Ground() {
+				public void found(int node, double distance) {
+					tree.addSource(node, 1, distance);
+				}
+			});
+		}
+
+		/**
+		 * @return the tree the routes are read from
+		 */
+		public ShortestPathTree getTree() {
+			return tree;
+		}
+
+		/**
+		 * The route between the root of the tree and the ground point
+		 * @param latitude of the other end
+		 * @param longitude of the other end
+		 * @return the route, check Route.isFound
+		 */
+		public Route route(double latitude, double longitude) {
+			long started = System.nanoTime();
+			double direct = end(latitude, longitude);
+			Route route;
+			if(direct <= 0)
+				route = new Route(ids, new int[0], 1, direct);
+			else
+				route = route(tree.reach(nodes, hops, distances, count));
+			count = 0;
+			ROUTE_NANOS.record(System.nanoTime() - started);
+			return route;
+		}
+
+		/**
+		 * Pick the ground point with the best route, with one search
+		 * @param latitudes of the other ends
+		 * @param longitudes of the other ends
+		 * @return the index of the nearest point or -1 if none can
+		 * be reached
+		 */
+		public int nearest(double[] latitudes, double[] longitudes) {
+			for(int i=0; i < latitudes.length; i++) {
+				int first = count;
+				if(end(latitudes[i], longitudes[i]) <= 0) {
+					count = 0;
+					return i;
+				}
+				Arrays.fill(owners, first, count, i);
+			}
+			int best = tree.reach(nodes, hops, distances, count);
+			int nearest = best < 0 ? -1 : owners[best];
+			count = 0;
+			return nearest;
+		}
+
+		/**
+		 * Collect the satellites the other end sees
+		 * @return the angle to the root, 0 if they are in the same place
+		 */
+		private double end(double latitude, double longitude) {
+			double[] end = new double[3];
+			Node.toVector(latitude, longitude, end);
+			visible(latitude, longitude, end, new Ground() {
+				public void found(int node, double distance) {
+					if(count == nodes.length) {
+						nodes = Arrays.copyOf(nodes, count * 2);
+						hops = Arrays.copyOf(hops, count * 2);
+						distances = Arrays.copyOf(distances, count * 2);
+						owners = Arrays.copyOf(owners, count * 2);
+					}
+					nodes[count] = node;
+					hops[count] = 1;
+					distances[count++] = distance;
+				}
+			});
+			return Node.angle(point[0] * end[0] + point[1] * end[1] + point[2] * end[2]);
+		}
+
+		private Route route(int best) {
+			if(best < 0)
+				return new Route(ids, null, 0, 0);
+			int node = nodes[best];
+			int[] track = tree.getTrack(node);
+			if(reversed) {
+				for(int i=0, j = track.length - 1; i < j; i++, j--) {
+					int swap = track[i];
+					track[i] = track[j];
+					track[j] = swap;
+				}
+			}
+			return new Route(ids, track, tree.getHops(node) + hops[best],
+					tree.getPathLength(node) + distances[best]);
+		}
+	}
+
+	/**
+	 * Gets the nodes a ground point can see
+	 */
+	private interface Ground {
+		void found(int node, double distance);
+	}
+
+	/**
+	 * Find the nodes the ground point can see, the ground point has
+	 * no coverage of its own so the node's coverage has to reach it
+	 */
+	private void visible(double latitude, double longitude, final double[] point, final Ground ground) {
+		grid.query(latitude, longitude, graph.getMaxCoverage(), new SphereGrid.Visitor() {
+			public void visit(int node) {
+				double distance = graph.getDistance(node, point[0], point[1], point[2]);
+				if(coverage[node] >= distance)
+					ground.found(node, distance);
+			}
+		});
+	}
+}
@@ -0,0 +1,313 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class NetworkSnapshotTest {
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.NetworkSnapshot#route(double, double, double, double)}.
+	 */
+	@Test
+	public void testRoute() {
+		Network net = new Network();
+		net.addNode(new Node("Sat 2", 54.3002,25.998,700));
+		net.addNode(new Node("Sat 3", 15,24, 700));
+		net.addNode(new Node("Sat 4", 0,0, 700));
+		net.addNode(new Node("Sat 5", -10, 15, 700));
+		net.addNode(new Node("Sat 6", 35, -10, 700));
+		net.init();
+		NetworkSnapshot snapshot = net.snapshot();
+		
+		Route route = snapshot.route(60.192059, 24.945831, 51.5085300, -0.1257400);
+		assertTrue(route.isFound());
+		assertEquals(2, route.getHops());
+		assertEquals("Sat 2", route.toString());
+		
+		route = snapshot.route(60.192059, 24.945831, 35.652832, 139.6917);
+		assertFalse(route.isFound());
+		assertEquals("null", route.toString());
+	}
+	
+	/**
+	 * The snapshot should give the same routes as PathFinder 
+	 * when the ground stations are in the network
+	 */
+	@Test
+	public void testRouteMatchesPathFinder() {
+		Random random = new Random(17);
+		for(int round=0; round < 20; round++) {
+			Network net = TestConstellations.random(random, 150, 400, 800);
+			net.init();
+			NetworkSnapshot snapshot = net.snapshot();
+			
+			Node a = new Node("A", random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, 0);
+			Node b = new Node("B", random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180, 0);
+			Route route = snapshot.route(a.getLatitude(), a.getLongitude(), b.getLatitude(), b.getLongitude());
+			
+			net.addNode(a);
+			net.addNode(b);
+			net.init();
+			PathFinder finder = new PathFinder(net, a, b, PathFinder.Strategy.DIJKSTRA);
+			assertEquals(finder.findPath(), route.isFound());
+			assertEquals(finder.getBestPathLength(), route.getHops());
+			assertEquals(finder.getBestPathDistance(), route.getDistance(), 1e-9);
+		}
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.NetworkSnapshot#route(java.util.List, java.util.concurrent.Executor)}.
+	 */
+	@Test
+	public void testBatchRoute() throws InterruptedException {
+		Random random = new Random(23);
+		Network net = TestConstellations.random(random, 500, 400, 800);
+		net.init();
+		NetworkSnapshot snapshot = net.snapshot();
+		List<RouteRequest> requests = new ArrayList<RouteRequest>();
+		for(int i=0; i < 300; i++)
+			requests.add(new RouteRequest(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180,
+					random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		List<Route> routes;
+		try {
+			routes = snapshot.route(requests, executor);
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(requests.size(), routes.size());
+		for(int i=0; i < requests.size(); i++) {
+			Route expected = snapshot.route(requests.get(i));
+			assertEquals(expected.toString(), routes.get(i).toString());
+			assertEquals(expected.getDistance(), routes.get(i).getDistance(), 0);
+		}
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Network#snapshot()}.
+	 * Threads asking for the snapshot at the same time after a change
+	 * should all get the same one, built from the same graph.
+	 */
+	@Test
+	public void testSnapshotFromManyThreads() throws InterruptedException, ExecutionException {
+		Random random = new Random(30);
+		final Network net = TestConstellations.random(random, 1000, 400, 800);
+		net.init();
+		final int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			for(int round=0; round < 5; round++) {
+				List<Node> nodes = net.getNodes();
+				net.unlink(nodes.get(round), nodes.get(round).getNeighbours().values().iterator().next());
+				final CyclicBarrier start = new CyclicBarrier(threads);
+				List<Future<NetworkSnapshot>> results = new ArrayList<Future<NetworkSnapshot>>();
+				for(int i=0; i < threads; i++) {
+					results.add(executor.submit(new Callable<NetworkSnapshot>() {
+						@Override
+						public NetworkSnapshot call() throws Exception {
+							start.await();
+							return net.snapshot();
+						}
+					}));
+				}
+				NetworkSnapshot first = results.get(0).get();
+				assertEquals(net.getTopologyEpoch(), first.getEpoch());
+				assertSame(net.getGraph(), first.getGraph());
+				for(Future<NetworkSnapshot> result : results)
+					assertSame(first, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.NetworkSnapshot#routesFrom(double, double)}.
+	 */
+	@Test
+	public void testRoutesFrom() {
+		Random random = new Random(29);
+		Network net = TestConstellations.random(random, 500, 400, 800);
+		net.init();
+		NetworkSnapshot snapshot = net.snapshot();
+		double latitude = random.nextDouble() * 180 - 90;
+		double longitude = random.nextDouble() * 360 - 180;
+		double[] latitudes = new double[200];
+		double[] longitudes = new double[200];
+		for(int i=0; i < latitudes.length; i++) {
+			latitudes[i] = random.nextDouble() * 180 - 90;
+			longitudes[i] = random.nextDouble() * 360 - 180;
+		}
+
+		NetworkSnapshot.RouteTree from = snapshot.routesFrom(latitude, longitude);
+		NetworkSnapshot.RouteTree to = snapshot.routesTo(latitude, longitude);
+		int nearest = -1;
+		double nearestCost = Double.POSITIVE_INFINITY;
+		for(int i=0; i < latitudes.length; i++) {
+			Route expected = snapshot.route(latitude, longitude, latitudes[i], longitudes[i]);
+			Route route = from.route(latitudes[i], longitudes[i]);
+			assertEquals(expected.isFound(), route.isFound());
+			assertEquals(expected.getHops(), route.getHops());
+			assertEquals(expected.getDistance(), route.getDistance(), 1e-9);
+			if(route.isFound() && PathSearch.cost(route.getHops(), route.getDistance()) < nearestCost) {
+				nearestCost = PathSearch.cost(route.getHops(), route.getDistance());
+				nearest = i;
+			}
+
+			expected = snapshot.route(latitudes[i], longitudes[i], latitude, longitude);
+			route = to.route(latitudes[i], longitudes[i]);
+			assertEquals(expected.isFound(), route.isFound());
+			assertEquals(expected.getHops(), route.getHops());
+			assertEquals(expected.getDistance(), route.getDistance(), 1e-9);
+		}
+		assertTrue(nearest >= 0);
+
+		NetworkSnapshot.RouteTree tree = snapshot.routesFrom(latitude, longitude);
+		int picked = tree.nearest(latitudes, longitudes);
+		Route route = snapshot.route(latitude, longitude, latitudes[picked], longitudes[picked]);
+		assertEquals(nearestCost, PathSearch.cost(route.getHops(), route.getDistance()), 1e-9);
+		// only as far as the nearest one needed
+		assertTrue(tree.getTree().getSettledCount() < from.getTree().getSettledCount());
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.NetworkSnapshot#open(java.io.File)}.
+	 */
+	@Test
+	public void testWriteAndOpen() throws IOException {
+		Random random = new Random(29);
+		Network net = TestConstellations.random(random, 400, 400, 800);
+		net.addNode(new Node("Sat \u00e4", 10, 10, 500));
+		net.init();
+		NetworkSnapshot snapshot = net.snapshot();
+		File file = File.createTempFile("network", ".snapshot");
+		try {
+			net.writeSnapshot(file);
+			NetworkSnapshot opened = NetworkSnapshot.open(file);
+			assertEquals(snapshot.size(), opened.size());
+			assertEquals("Sat \u00e4", opened.getId(opened.size() - 1));
+			VisibilityGraph graph = snapshot.getGraph();
+			VisibilityGraph openedGraph = opened.getGraph();
+			assertEquals(graph.getEdgeCount(), openedGraph.getEdgeCount());
+			assertEquals(graph.getMaxWeight(), openedGraph.getMaxWeight(), 0);
+			for(int u=0; u < graph.size(); u++) {
+				assertEquals(snapshot.getLatitude(u), opened.getLatitude(u), 0);
+				assertEquals(graph.first(u), openedGraph.first(u));
+				for(int e = graph.first(u); e < graph.last(u); e++) {
+					assertEquals(graph.target(e), openedGraph.target(e));
+					assertEquals(graph.weight(e), openedGraph.weight(e), 0);
+				}
+			}
+			
+			for(int i=0; i < 100; i++) {
+				RouteRequest request = new RouteRequest(random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180,
+						random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+				Route expected = snapshot.route(request);
+				Route route = opened.route(request);
+				assertEquals(expected.toString(), route.toString());
+				assertEquals(expected.getDistance(), route.getDistance(), 0);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Other files should not be read as snapshots
+	 */
+	@Test
+	public void testOpenBadFile() throws IOException {
+		File file = File.createTempFile("network", ".snapshot");
+		try {
+			FileOutputStream output = new FileOutputStream(file);
+			output.write("SAT0,1,2,3\nSAT1,4,5,6\nSAT2,7,8,9\nSAT3,1,2,3\n".getBytes("US-ASCII"));
+			output.close();
+			try {
+				NetworkSnapshot.open(file);
+				fail("Opened a CSV file");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().startsWith("Not a network snapshot"));
+			}
+			
+			Network net = new Network();
+			net.addNode(new Node("Sat 1", 0, 0, 700));
+			net.addNode(new Node("Sat 2", 5, 5, 700));
+			net.init();
+			net.writeSnapshot(file);
+			RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+			truncate.setLength(truncate.length() - 1);
+			truncate.close();
+			try {
+				NetworkSnapshot.open(file);
+				fail("Opened a truncated file");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().contains("truncated"));
+			}
+			
+			// three nodes that all see each other, so the rows are 
+			// targets 1 2, 0 2 and 0 1
+			net.addNode(new Node("Sat 3", 10, 0, 700));
+			net.writeSnapshot(file);
+			assertEquals(6, NetworkSnapshot.open(file).getGraph().getEdgeCount());
+			long targets = SnapshotFile.HEADER_SIZE + (6 * 3 + 6) * 8 + (3 + 1) * 4;
+			assertCorrupt(file, targets, 3);
+			assertCorrupt(file, targets, -1);
+			// the first row would be 2 2
+			assertCorrupt(file, targets, 2);
+			// the first row would be 1 0
+			assertCorrupt(file, targets + 4, 0);
+		} finally {
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Write a broken target to a copy of the snapshot and check that
+	 * it's not opened
+	 */
+	private static void assertCorrupt(File file, long position, int target) throws IOException {
+		File copy = File.createTempFile("network", ".snapshot");
+		try {
+			Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			RandomAccessFile output = new RandomAccessFile(copy, "rw");
+			output.seek(position);
+			output.writeInt(Integer.reverseBytes(target));
+			output.close();
+			try {
+				NetworkSnapshot.open(copy);
+				fail("Opened a snapshot with target " + target + " at " + position);
+			} catch (IOException e) {
+				assertTrue(e.getMessage().contains("corrupt"));
+			}
+		} finally {
+			copy.delete();
+		}
+	}
+}
@@ -10,6 +10,9 @@ import static org.junit.Assert.*;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.junit.Test;
 
@@ -51,4 +54,177 @@ public class NetworkTest {
 		}
 	}
 
+	
+	/**
+	 * The spatial index should give the same neighbours as
+	 * comparing every node with every other node
+	 */
+	@Test
+	public void testInitMatchesAllPairs() {
+		Random random = new Random(42);
+		Network net = TestConstellations.random(random, 300, 300, 700);
+		net.addNode(new Node("A", 60.192059, 24.945831, 0));
+		net.init();
+		
+		List<Node> nodeList = net.getNodes();
+		for(Node a : nodeList) {
+			int visible = 0;
+			for(Node b : nodeList) {
+				if(a != b && a.canSee(b)) {
+					visible++;
+					assertEquals(b, a.getNeighbours().get(b.getId()));
+				}
+			}
+			assertEquals(visible, a.getNeighbours().size());
+		}
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Network#getVisibleNodes(com.kankkonen.matti.orbitalchal.Node)}.
+	 */
+	@Test
+	public void testGetVisibleNodes() {
+		Network net = new Network();
+		Node sat1 = new Node("SAT1", 54.3002, 25.998, 700);
+		Node sat2 = new Node("SAT2", -10, 15, 700);
+		net.addNode(sat1);
+		net.addNode(sat2);
+		net.init();
+		List<Node> visible = net.getVisibleNodes(new Node("Helsinki", 60.192059, 24.945831, 0));
+		assertEquals(1, visible.size());
+		assertEquals(sat1, visible.get(0));
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Network#getStore()}.
+	 */
+	@Test
+	public void testStoreAgreesWithNodes() {
+		Random random = new Random(7);
+		Network net = TestConstellations.random(random, 100, 0, 700);
+		NodeStore store = net.getStore();
+		List<Node> nodeList = net.getNodes();
+		assertEquals(nodeList.size(), store.size());
+		for(int a=0; a < store.size(); a++) {
+			assertEquals(nodeList.get(a).getId(), store.getId(a));
+			assertEquals(nodeList.get(a).getCoverage(), store.getCoverage(a), 0);
+			for(int b=0; b < store.size(); b++) {
+				assertEquals(nodeList.get(a).getDistance(nodeList.get(b)), 
+						store.getDistance(a, b), 0);
+				assertEquals(nodeList.get(a).canSee(nodeList.get(b)), store.canSee(a, b));
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Network#initParallel(java.util.concurrent.Executor)}.
+	 */
+	@Test
+	public void testInitParallel() throws InterruptedException {
+		Random random = new Random(11);
+		Network sequential = new Network();
+		Network parallel = new Network();
+		for(int i=0; i < 1000; i++) {
+			double latitude = random.nextDouble() * 180 - 90;
+			double longitude = random.nextDouble() * 360 - 180;
+			double altitude = random.nextDouble() * 700;
+			sequential.addNode(new Node("SAT" + i, latitude, longitude, altitude));
+			parallel.addNode(new Node("SAT" + i, latitude, longitude, altitude));
+		}
+		sequential.init();
+		long epoch = parallel.getTopologyEpoch();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			parallel.initParallel(executor);
+		} finally {
+			executor.shutdown();
+		}
+		// one change for the whole build, not one for every edge
+		assertEquals(epoch + 1, parallel.getTopologyEpoch());
+		
+		for(int i=0; i < 1000; i++) {
+			Map<String, Node> expected = sequential.getNodes().get(i).getNeighbours();
+			Map<String, Node> actual = parallel.getNodes().get(i).getNeighbours();
+			assertEquals(expected.keySet(), actual.keySet());
+		}
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Network#removeNode(com.kankkonen.matti.orbitalchal.Node)}.
+	 * The nodes added and removed after init should leave the same 
+	 * neighbours as comparing every node with every other node.
+	 */
+	@Test
+	public void testAddAndRemoveAfterInit() {
+		Random random = new Random(23);
+		Network net = TestConstellations.random(random, 300, 300, 700);
+		net.init();
+		
+		long epoch = net.getTopologyEpoch();
+		for(int i=0; i < 100; i++) {
+			if(random.nextBoolean()) {
+				double altitude = i % 10 == 0 ? 0 : 300 + random.nextDouble() * 1000;
+				net.addNode(new Node("NEW" + i, random.nextDouble() * 180 - 90,
+						random.nextDouble() * 360 - 180, altitude));
+			} else {
+				Node node = net.getNodes().get(random.nextInt(net.getNodes().size()));
+				String id = node.getId();
+				double latitude = node.getLatitude();
+				double coverage = node.getCoverage();
+				assertTrue(net.removeNode(node));
+				assertEquals(-1, node.index);
+				// the node keeps its data when the network forgets it
+				assertEquals(id, node.getId());
+				assertEquals(latitude, node.getLatitude(), 0);
+				assertEquals(coverage, node.getCoverage(), 0);
+				assertTrue(node.getNeighbours().isEmpty());
+				assertFalse(net.removeNode(node));
+			}
+			assertTrue(net.getTopologyEpoch() > epoch);
+			epoch = net.getTopologyEpoch();
+		}
+		
+		List<Node> nodeList = net.getNodes();
+		NodeStore store = net.getStore();
+		assertEquals(nodeList.size(), store.size());
+		for(int i=0; i < nodeList.size(); i++) {
+			Node a = nodeList.get(i);
+			assertEquals(i, a.index);
+			assertEquals(a.getId(), store.getId(i));
+			int visible = 0;
+			for(Node b : nodeList) {
+				if(a != b && a.canSee(b)) {
+					visible++;
+					assertEquals(b, a.getNeighbours().get(b.getId()));
+				}
+			}
+			assertEquals(visible, a.getNeighbours().size());
+			assertEquals(visible, net.getGraph().last(i) - net.getGraph().first(i));
+		}
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Network#init()}.
+	 * Moved nodes shouldn't keep their old neighbours.
+	 */
+	@Test
+	public void testInitTwice() {
+		Network net = new Network();
+		Node a = new Node("A", 0, 0, 500);
+		Node b = new Node("B", 0, 10, 500);
+		net.addNode(a);
+		net.addNode(b);
+		net.init();
+		assertEquals(b, a.getNeighbours().get("B"));
+		net.moveNode(b, 0, 90);
+		net.init();
+		assertTrue(a.getNeighbours().isEmpty());
+		assertTrue(b.getNeighbours().isEmpty());
+		
+		Node c = new Node("C", 0, 85, 500);
+		net.addNode(c);
+		assertEquals(c, b.getNeighbours().get("C"));
+		assertEquals(b, c.getNeighbours().get("B"));
+		assertTrue(a.getNeighbours().isEmpty());
+	}
 }
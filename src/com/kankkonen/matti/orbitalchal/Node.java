@@ -5,7 +5,6 @@
  */
 package com.kankkonen.matti.orbitalchal;
 
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -56,6 +55,15 @@ import java.util.Map;
  *   angle = arcos( ((x1*x2) + (y1*y2) + (z1*z2)) / (r1 * r2) )
  *   
  * Where r is the length of the vector, in our case that's the radius of earth.
+ * The vectors are calculated only once when the position is set and scaled 
+ * to the length of 1, so that the angle is simply arcos of the dot product.
+ * 
+ * The node only knows its index, the data is in the NodeStore of the 
+ * network and this class is a view of it. The neighbours are in a
+ * NeighbourMap, which doesn't need an extra object for each of them.
+ * A node that is not in a network keeps just the values it was made
+ * with, the coverage and the vector are only calculated if they are
+ * asked for, so making a node to add to a network is cheap.
  *   
  * With all this information we can simply check that "coverage" of two 
  * satellites 1 and 2 exceeds the "distance" between the satellites
@@ -67,16 +75,15 @@ public class Node {
 	
 	public final static double earth_radius = 6371;
 	
-	private String id;
-	private double latitude;
-	private double longitude;
-	private double altitude;
-	/* The angle alpha for trigonometric calculations
-	 * this is in practise also our coverage 
-	 * the tangent with earth surface */
-	private double alpha;
+	/* The data of the node is in the NodeStore of the Network the
+	 * node is in, null when it's not in one */
+	private NodeStore store = null;
+	/* The position in the NodeStore of the Network or -1 */
+	int index = -1;
+	/* The values of a node that is not in a network */
+	private Own own;
 	/* If I can see another node it's my neighbour */
-	private Map<String,Node> neighbours;
+	private NeighbourMap neighbours = new NeighbourMap();
 	
 	/**
 	 * The Node representing a node in the network. It can be
@@ -87,33 +94,85 @@ public class Node {
 	 * @param altitude of this node or zero if ground station
 	 */
 	public Node(String id, double latitude, double longitude, double altitude) {
-		this.id = id;
-		this.latitude = latitude;
-		this.longitude = longitude;
-		this.altitude = altitude;
-		/*
-		 * cos alpha = b/c
-		 */
-		this.alpha = Math.toDegrees(Math.acos(earth_radius / 
-				(earth_radius + altitude)));
-	
-		this.neighbours = new HashMap<String,Node>();
+		this.own = new Own(id, latitude, longitude, altitude);
+	}
+	
+	/**
+	 * The node is now in the store of a network. Called by Network.addNode
+	 * after the data has been added to the store.
+	 * @param store of the network
+	 * @param index of the node in the store
+	 */
+	void attach(NodeStore store, int index) {
+		this.store = store;
+		this.index = index;
+		this.own = null;
+	}
+	
+	/**
+	 * The node is taken out of its network, its values are copied out
+	 * of the store. Called by Network.removeNode before the network's
+	 * store forgets the node.
+	 */
+	void detach() {
+		this.own = new Own(getId(), getLatitude(), getLongitude(), getAltitude());
+		this.store = null;
+		this.index = -1;
+	}
+	
+	/**
+	 * Move the node e.g. a satellite along its orbit. The Network 
+	 * needs to know about it too, so this is called by Network.moveNode
+	 * @param latitude the new latitude
+	 * @param longitude the new longitude
+	 */
+	void setPosition(double latitude, double longitude) {
+		if(store != null)
+			store.setPosition(index, latitude, longitude);
+		else
+			own.setPosition(latitude, longitude);
+	}
+	
+	/**
+	 * The same 3D unit vector as the nodes have, for points
+	 * that are not nodes
+	 * @param latitude of the point
+	 * @param longitude of the point
+	 * @param vector where to put x, y and z
+	 */
+	static void toVector(double latitude, double longitude, double[] vector) {
+		double cosLatitude = Math.cos(Math.toRadians(latitude));
+		vector[0] = cosLatitude * Math.cos(Math.toRadians(longitude));
+		vector[1] = cosLatitude * Math.sin(Math.toRadians(longitude));
+		vector[2] = Math.sin(Math.toRadians(latitude));
 	}
 
 	public String getId() {
-		return this.id;
+		return store != null ? store.getId(index) : own.id;
 	}
 	
 	public double getLatitude() {
-		return latitude;
+		return store != null ? store.getLatitude(index) : own.latitude;
 	}
 
 	public double getLongitude() {
-		return longitude;
+		return store != null ? store.getLongitude(index) : own.longitude;
 	}
 
 	public double getAltitude() {
-		return altitude;
+		return store != null ? store.getAltitude(index) : own.altitude;
+	}
+	
+	double getX() {
+		return store != null ? store.getX(index) : own.store().getX(0);
+	}
+	
+	double getY() {
+		return store != null ? store.getY(index) : own.store().getY(0);
+	}
+	
+	double getZ() {
+		return store != null ? store.getZ(index) : own.store().getZ(0);
 	}
 
 	/**
@@ -124,7 +183,7 @@ public class Node {
 	 * @return The angle in degrees
 	 */
 	public double getCoverage() {
-		return this.alpha;
+		return store != null ? store.getCoverage(index) : own.store().getCoverage(0);
 	}
 	
 	/**
@@ -133,20 +192,26 @@ public class Node {
 	 * @return angle in degrees
 	 */
 	public double getDistance(Node b) {
-	/* Now we need to form 3D vectors from our and Node b's
-	 coodrdinates (lat and long) into x,y,z so that we can 
-	 calculate the angle between those two vectors. That angle
-	 is what we consider here as the "distance" */
-	
-		double x1 = earth_radius * Math.cos(Math.toRadians(latitude)) * Math.cos(Math.toRadians(longitude));
-		double y1 = earth_radius * Math.cos(Math.toRadians(latitude)) * Math.sin(Math.toRadians(longitude));
-		double z1 = earth_radius * Math.sin(Math.toRadians(latitude));
-		
-		double x2 = earth_radius * Math.cos(Math.toRadians(b.getLatitude())) * Math.cos(Math.toRadians(b.getLongitude()));
-		double y2 = earth_radius * Math.cos(Math.toRadians(b.getLatitude())) * Math.sin(Math.toRadians(b.getLongitude()));
-		double z2 = earth_radius * Math.sin(Math.toRadians(b.getLatitude()));
-		
-		return Math.toDegrees(Math.acos(((x1*x2) + (y1*y2) + (z1*z2))/(earth_radius * earth_radius)));
+	/* The 3D vectors are formed from the coordinates (lat and long)
+	 already when the position is set, so here we only need to calculate
+	 the angle between those two vectors. That angle is what we 
+	 consider here as the "distance" */
+	
+		return angle(getX() * b.getX() + getY() * b.getY() + getZ() * b.getZ());
+	}
+	
+	/**
+	 * The angle between two unit vectors 
+	 * @param dot product of the vectors
+	 * @return angle in degrees
+	 */
+	static double angle(double dot) {
+		// rounding may take the product a tiny bit over 1
+		if(dot > 1)
+			dot = 1;
+		else if(dot < -1)
+			dot = -1;
+		return Math.toDegrees(Math.acos(dot));
 	}
 	
 	/**
@@ -167,18 +232,32 @@ public class Node {
 	
 	public void addNeighbor(Node node) {
 		this.neighbours.put(node.getId(), node);
-		System.out.println(this.getId() + " added neighbour " + node.getId() +
-				" distance:" + this.getDistance(node));
+	}
+	
+	/**
+	 * The node can't be seen anymore
+	 * @param node to remove from the neighbours
+	 */
+	public void removeNeighbor(Node node) {
+		this.neighbours.remove(node.getId());
+	}
+	
+	/**
+	 * Forget all the neighbours e.g. before the visibility is
+	 * checked again
+	 */
+	public void clearNeighbors() {
+		this.neighbours.clear();
 	}
 	
 	public String neighboursToString() {
-		String neighbours = this.id + ": " +
+		String neighbours = getId() + ": " +
 		this.neighbours.size()+" neighbours";
 		
 		Iterator<Node>iter = this.neighbours.values().iterator();
 		while(iter.hasNext()) {
 			Node node = iter.next();
-			neighbours = neighbours.concat(":" + node.id);
+			neighbours = neighbours.concat(":" + node.getId());
 		}
 		return neighbours;
 	}
@@ -191,4 +270,41 @@ public class Node {
 	public Map<String, Node> getNeighbours() {
 		return this.neighbours;
 	}
+	
+	/**
+	 * The values of a node that is not in a network. The coverage and
+	 * the vector are calculated into a store of one node the first time
+	 * they are needed, e.g. for a ground station that is only looked at
+	 * from the network. Synchronized, because a ground station may be
+	 * looked at from many threads.
+	 */
+	private static class Own {
+		private final String id;
+		private double latitude;
+		private double longitude;
+		private final double altitude;
+		private NodeStore store = null;
+		
+		Own(String id, double latitude, double longitude, double altitude) {
+			this.id = id;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.altitude = altitude;
+		}
+		
+		synchronized NodeStore store() {
+			if(store == null) {
+				store = new NodeStore(1);
+				store.add(id, latitude, longitude, altitude);
+			}
+			return store;
+		}
+		
+		synchronized void setPosition(double latitude, double longitude) {
+			this.latitude = latitude;
+			this.longitude = longitude;
+			if(store != null)
+				store.setPosition(0, latitude, longitude);
+		}
+	}
 }
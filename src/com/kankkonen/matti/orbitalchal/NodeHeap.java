@@ -0,0 +1,154 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+/**
+ * NodeHeap is a priority queue of node indices ordered by a double
+ * key, the smallest key first. It's a binary heap in an int array.
+ *
+ * Each node can be in the heap only once. Pushing a node that is
+ * already there with a smaller key just moves it up in the heap,
+ * so the heap never grows bigger than the number of nodes and there
+ * are no stale entries to skip like with java.util.PriorityQueue.
+ */
+public class NodeHeap {
+
+	private int[] heap;
+	/* where each node is in the heap or -1 */
+	private int[] position;
+	private double[] key;
+	private int size = 0;
+
+	/**
+	 * @param capacity the number of nodes, the indices pushed
+	 * need to be smaller than this
+	 */
+	public NodeHeap(int capacity) {
+		heap = new int[capacity];
+		position = new int[capacity];
+		key = new double[capacity];
+		for(int i=0; i < capacity; i++)
+			position[i] = -1;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean contains(int node) {
+		return position[node] >= 0;
+	}
+
+	/**
+	 * Add the node or if it's already in the heap lower its key
+	 * @param node index
+	 * @param value the key of the node
+	 * @return false if the node was already in the heap with a key
+	 * at least as small
+	 */
+	public boolean push(int node, double value) {
+		int i = position[node];
+		if(i < 0) {
+			i = size++;
+			heap[i] = node;
+			position[node] = i;
+		} else if(key[node] <= value) {
+			return false;
+		}
+		key[node] = value;
+		up(i);
+		return true;
+	}
+
+	/**
+	 * @return the key of the node on the top of the heap
+	 */
+	public double peekKey() {
+		return key[heap[0]];
+	}
+
+	/**
+	 * @return the node on the top of the heap
+	 */
+	public int peek() {
+		return heap[0];
+	}
+
+	/**
+	 * Remove the node with the smallest key
+	 * @return the node index
+	 */
+	public int pop() {
+		int top = heap[0];
+		position[top] = -1;
+		size--;
+		if(size > 0) {
+			int last = heap[size];
+			heap[0] = last;
+			position[last] = 0;
+			down(0);
+		}
+		return top;
+	}
+
+	/**
+	 * @return the key the node was last pushed with
+	 */
+	public double getKey(int node) {
+		return key[node];
+	}
+
+	/**
+	 * Empty the heap
+	 */
+	public void clear() {
+		for(int i=0; i < size; i++)
+			position[heap[i]] = -1;
+		size = 0;
+	}
+
+	private void up(int i) {
+		int node = heap[i];
+		double value = key[node];
+		while(i > 0) {
+			int parent = (i - 1) >>> 1;
+			int p = heap[parent];
+			if(key[p] <= value)
+				break;
+			heap[i] = p;
+			position[p] = i;
+			i = parent;
+		}
+		heap[i] = node;
+		position[node] = i;
+	}
+
+	private void down(int i) {
+		int node = heap[i];
+		double value = key[node];
+		int half = size >>> 1;
+		while(i < half) {
+			int child = 2 * i + 1;
+			int c = heap[child];
+			int right = child + 1;
+			if(right < size && key[heap[right]] < key[c]) {
+				child = right;
+				c = heap[child];
+			}
+			if(value <= key[c])
+				break;
+			heap[i] = c;
+			position[c] = i;
+			i = child;
+		}
+		heap[i] = node;
+		position[node] = i;
+	}
+}
@@ -0,0 +1,248 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Arrays;
+
+/**
+ * NodeStore keeps the data of the network's nodes column by column
+ * in primitive arrays, so that a node is just an integer index.
+ *
+ * The position of each node is stored as a unit vector, so the
+ * "distance" between two nodes is the arcos of the dot product and
+ * the visibility check is a few multiplications instead of the
+ * trigonometry Node used to do on every call. Going through the
+ * nodes in a loop reads the arrays in order and doesn't allocate
+ * anything.
+ *
+ * The Node instances are views of the store, they keep only their
+ * index and their neighbours and read everything else from here. A
+ * node that is not in a network keeps the values it was made with,
+ * the network adds them here when the node is added.
+ */
+public class NodeStore {
+
+	private final static int INITIAL_CAPACITY = 16;
+
+	private int size = 0;
+	private String[] ids;
+	private double[] latitude;
+	private double[] longitude;
+	private double[] altitude;
+	private double[] coverage;
+	private double[] cosCoverage;
+	private double[] sinCoverage;
+	private double[] x;
+	private double[] y;
+	private double[] z;
+
+	public NodeStore() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param capacity the number of nodes there's room for before
+	 * the arrays need to grow
+	 */
+	NodeStore(int capacity) {
+		ids = new String[capacity];
+		latitude = new double[capacity];
+		longitude = new double[capacity];
+		altitude = new double[capacity];
+		coverage = new double[capacity];
+		cosCoverage = new double[capacity];
+		sinCoverage = new double[capacity];
+		x = new double[capacity];
+		y = new double[capacity];
+		z = new double[capacity];
+	}
+
+	/**
+	 * Add the data of a node to the store
+	 * @param node to add
+	 * @return the index of the node in the store
+	 */
+	public int add(Node node) {
+		return add(node.getId(), node.getLatitude(), node.getLongitude(), node.getAltitude());
+	}
+
+	/**
+	 * Add a node to the store, its coverage and position vector are
+	 * calculated here
+	 * @param id of the node
+	 * @param lat latitude of the node
+	 * @param lon longitude of the node
+	 * @param alt altitude of the node or zero if ground station
+	 * @return the index of the node in the store
+	 */
+	int add(String id, double lat, double lon, double alt) {
+		if(size == ids.length)
+			grow();
+		int i = size++;
+		ids[i] = id;
+		altitude[i] = alt;
+		/*
+		 * cos alpha = b/c, see Node
+		 */
+		coverage[i] = Math.toDegrees(Math.acos(Node.earth_radius /
+				(Node.earth_radius + alt)));
+		cosCoverage[i] = Math.cos(Math.toRadians(coverage[i]));
+		sinCoverage[i] = Math.sin(Math.toRadians(coverage[i]));
+		setPosition(i, lat, lon);
+		return i;
+	}
+
+	/**
+	 * Update the position of a node that has moved
+	 * @param i index of the node
+	 * @param lat the new latitude
+	 * @param lon the new longitude
+	 */
+	void setPosition(int i, double lat, double lon) {
+		latitude[i] = lat;
+		longitude[i] = lon;
+		double cosLatitude = Math.cos(Math.toRadians(lat));
+		x[i] = cosLatitude * Math.cos(Math.toRadians(lon));
+		y[i] = cosLatitude * Math.sin(Math.toRadians(lon));
+		z[i] = Math.sin(Math.toRadians(lat));
+	}
+
+	/**
+	 * Remove a node from the store. The last node takes its place so
+	 * that there are no gaps, its index changes to the removed one.
+	 * @param i index of the node to remove
+	 * @return the index the moved node had, or i if it was the last
+	 */
+	int remove(int i) {
+		int last = --size;
+		ids[i] = ids[last];
+		latitude[i] = latitude[last];
+		longitude[i] = longitude[last];
+		altitude[i] = altitude[last];
+		coverage[i] = coverage[last];
+		cosCoverage[i] = cosCoverage[last];
+		sinCoverage[i] = sinCoverage[last];
+		x[i] = x[last];
+		y[i] = y[last];
+		z[i] = z[last];
+		ids[last] = null;
+		return last;
+	}
+
+	private void grow() {
+		int capacity = Math.max(ids.length * 2, INITIAL_CAPACITY);
+		ids = Arrays.copyOf(ids, capacity);
+		latitude = Arrays.copyOf(latitude, capacity);
+		longitude = Arrays.copyOf(longitude, capacity);
+		altitude = Arrays.copyOf(altitude, capacity);
+		coverage = Arrays.copyOf(coverage, capacity);
+		cosCoverage = Arrays.copyOf(cosCoverage, capacity);
+		sinCoverage = Arrays.copyOf(sinCoverage, capacity);
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		z = Arrays.copyOf(z, capacity);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public String getId(int i) {
+		return ids[i];
+	}
+
+	public double getLatitude(int i) {
+		return latitude[i];
+	}
+
+	public double getLongitude(int i) {
+		return longitude[i];
+	}
+
+	public double getAltitude(int i) {
+		return altitude[i];
+	}
+
+	double getX(int i) {
+		return x[i];
+	}
+
+	double getY(int i) {
+		return y[i];
+	}
+
+	double getZ(int i) {
+		return z[i];
+	}
+
+	public double getCoverage(int i) {
+		return coverage[i];
+	}
+
+	/**
+	 * @return cosine of the coverage i.e. the smallest dot product
+	 * a point within the coverage can have with the node's position
+	 */
+	public double getCosCoverage(int i) {
+		return cosCoverage[i];
+	}
+
+	/**
+	 * @return sine of the coverage, with the cosine it gives the
+	 * cosine of the sum of two coverages without trigonometry
+	 */
+	public double getSinCoverage(int i) {
+		return sinCoverage[i];
+	}
+
+	/**
+	 * The "distance" between two nodes in degrees, the same as
+	 * Node.getDistance
+	 */
+	public double getDistance(int a, int b) {
+		return Node.angle(x[a] * x[b] + y[a] * y[b] + z[a] * z[b]);
+	}
+
+	/**
+	 * Can node a "see" node b, the same as Node.canSee
+	 */
+	public boolean canSee(int a, int b) {
+		return (coverage[a] + coverage[b]) >= getDistance(a, b);
+	}
+
+	/**
+	 * The latitudes and longitudes are handed out for building
+	 * indexes, only the first size() entries are in use
+	 */
+	double[] latitudes() {
+		return latitude;
+	}
+
+	double[] longitudes() {
+		return longitude;
+	}
+
+	/* the columns for VisibilityKernel */
+	double[] vectorX() {
+		return x;
+	}
+
+	double[] vectorY() {
+		return y;
+	}
+
+	double[] vectorZ() {
+		return z;
+	}
+
+	double[] cosCoverages() {
+		return cosCoverage;
+	}
+
+	double[] sinCoverages() {
+		return sinCoverage;
+	}
+}
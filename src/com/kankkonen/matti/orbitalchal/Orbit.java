@@ -0,0 +1,126 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+/**
+ * Orbit describes a circular orbit with the classic elements:
+ *
+ *   inclination - the tilt of the orbit plane from the equator
+ *   right ascension of the ascending node - where the orbit crosses
+ *     the equator going north, measured in the non rotating frame
+ *   argument of latitude - where the satellite is along the orbit,
+ *     measured from the ascending node, at time 0
+ *   altitude - above the earth surface
+ *
+ * On a circular orbit the satellite moves along the orbit with a
+ * constant angular speed n = sqrt(mu / a^3), where a is the radius
+ * of the orbit. The position is first calculated in the non rotating
+ * frame and then the earth is turned under it, so the latitude and
+ * longitude are the ones our Node uses.
+ */
+public class Orbit {
+
+	/* The gravitational parameter of the earth in km^3/s^2 */
+	public final static double MU = 398600.4418;
+	/* How fast the earth turns in radians per second */
+	public final static double EARTH_ROTATION = 7.2921159e-5;
+
+	private double inclination;
+	private double rightAscension;
+	private double argumentOfLatitude;
+	private double altitude;
+	/* angular speed along the orbit in radians per second */
+	private double motion;
+
+	/**
+	 * @param inclination in degrees
+	 * @param rightAscension of the ascending node in degrees
+	 * @param argumentOfLatitude at time 0 in degrees
+	 * @param altitude in km
+	 */
+	public Orbit(double inclination, double rightAscension, double argumentOfLatitude, double altitude) {
+		this.inclination = Math.toRadians(inclination);
+		this.rightAscension = Math.toRadians(rightAscension);
+		this.argumentOfLatitude = Math.toRadians(argumentOfLatitude);
+		this.altitude = altitude;
+		double radius = Node.earth_radius + altitude;
+		this.motion = Math.sqrt(MU / (radius * radius * radius));
+	}
+
+	/**
+	 * Create the orbit that goes through the given position at time 0
+	 * @param latitude in degrees, can't be more than the inclination
+	 * @param longitude in degrees
+	 * @param altitude in km
+	 * @param inclination in degrees
+	 * @param ascending true if the satellite is going north
+	 * @return the orbit
+	 */
+	public static Orbit through(double latitude, double longitude, double altitude,
+			double inclination, boolean ascending) {
+		double sinInclination = Math.sin(Math.toRadians(inclination));
+		double u = 0;
+		if(Math.abs(sinInclination) > 1e-12) {
+			double s = Math.sin(Math.toRadians(latitude)) / sinInclination;
+			if(s > 1 || s < -1)
+				throw new IllegalArgumentException("latitude " + latitude +
+						" can't be reached with inclination " + inclination);
+			u = Math.asin(s);
+			if(ascending == false)
+				u = Math.PI - u;
+		}
+		// how far from the ascending node the position is along the equator
+		double offset = Math.atan2(Math.cos(Math.toRadians(inclination)) * Math.sin(u), Math.cos(u));
+		double rightAscension = Math.toRadians(longitude) - offset;
+		return new Orbit(inclination, Math.toDegrees(rightAscension), Math.toDegrees(u), altitude);
+	}
+
+	public double getAltitude() {
+		return altitude;
+	}
+
+	public double getInclination() {
+		return Math.toDegrees(inclination);
+	}
+
+	/**
+	 * @return how long one orbit takes in seconds
+	 */
+	public double getPeriod() {
+		return 2 * Math.PI / motion;
+	}
+
+	/**
+	 * The upper limit of how fast the position moves over the
+	 * earth's surface i.e. the "distance" per second
+	 * @return degrees per second
+	 */
+	public double getMaxAngularSpeed() {
+		return Math.toDegrees(motion + EARTH_ROTATION);
+	}
+
+	/**
+	 * Calculate the latitude and longitude at the given time
+	 * @param time in seconds from time 0
+	 * @param position where to put the latitude and longitude in degrees
+	 */
+	public void locate(double time, double[] position) {
+		double u = argumentOfLatitude + motion * time;
+		double cosU = Math.cos(u);
+		double sinU = Math.sin(u);
+		double cosO = Math.cos(rightAscension);
+		double sinO = Math.sin(rightAscension);
+		double cosI = Math.cos(inclination);
+
+		double x = cosO * cosU - sinO * sinU * cosI;
+		double y = sinO * cosU + cosO * sinU * cosI;
+		double z = sinU * Math.sin(inclination);
+
+		double longitude = Math.toDegrees(Math.atan2(y, x) - EARTH_ROTATION * time);
+		position[0] = Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, z))));
+		position[1] = longitude - 360 * Math.floor((longitude + 180) / 360);
+	}
+}
@@ -33,16 +33,31 @@ import java.util.List;
  *
  * The "processed list" is owned by the PathFinder but the Path instances
  * do the adding and deleting to the list
+ *
+ * Walking every route gets out of hand quickly when the network grows,
+ * so by default the PathFinder uses PathSearch to find the best path
+ * with A*. The branching Path "engine" is still there as the
+ * ENUMERATE strategy. STREAM walks all the routes too but with a
+ * RouteEnumerator, which doesn't copy the routes or keep them around.
+ * BIDIRECTIONAL searches from both ends at once, see PathSearch.
  */
 public class PathFinder {
 
+	public enum Strategy { ENUMERATE, STREAM, DIJKSTRA, ASTAR, BIDIRECTIONAL }
+	
+	private final static Metrics.Counter PATHS = Metrics.getDefault().counter("enumerate.paths");
+	
 	private Node start;
 	private Node end;
+	private Strategy strategy;
+	private Network network = null;
 	private List<Path> paths;
 	private List<Path> hits;
 	private boolean validPathFound = false;
-	private Path bestPath = null;
+	private List<Node> bestTrack = null;
+	private double bestPathLength = 0;
 	private int pathId = 0;
+	private RoutingListener listener = RoutingListener.NONE;
 	
 	/**
 	 * 
@@ -50,17 +65,88 @@ public class PathFinder {
 	 * @param end Node of the path
 	 */
 	public PathFinder(Node start, Node end) {
+		this(start, end, Strategy.ASTAR);
+	}
+	
+	/**
+	 * 
+	 * @param start Node of the path
+	 * @param end Node of the path
+	 * @param strategy how to search the path
+	 */
+	public PathFinder(Node start, Node end, Strategy strategy) {
 		this.start = start;
 		this.end = end;
+		this.strategy = strategy;
 		this.paths = new ArrayList<Path>();
 		hits = new ArrayList<Path>();
 	}
 	
+	/**
+	 * When the network is known the search can use the graph the
+	 * network has already built, or the LazyGraph in the lazy mode,
+	 * otherwise the graph of the nodes reachable from the start is
+	 * built for each search
+	 * @param network the initialised Network the nodes belong to
+	 * @param start Node of the path
+	 * @param end Node of the path
+	 * @param strategy how to search the path
+	 */
+	public PathFinder(Network network, Node start, Node end, Strategy strategy) {
+		this(start, end, strategy);
+		this.network = network;
+	}
+	
+	public PathFinder(Network network, Node start, Node end) {
+		this(network, start, end, Strategy.ASTAR);
+	}
+	
+	/**
+	 * Get told about the steps of the search and the path found
+	 * @param listener to tell or null for nobody
+	 */
+	public void setListener(RoutingListener listener) {
+		this.listener = listener == null ? RoutingListener.NONE : listener;
+	}
+	
 	/**
 	 * The constructor told from where to where, now do it
 	 * and search the optimal path
 	 */
 	public boolean findPath() {
+		if(strategy == Strategy.ENUMERATE)
+			return enumeratePaths();
+		if(strategy == Strategy.STREAM)
+			return streamPaths();
+		
+		PathSearch.Mode mode = PathSearch.Mode.valueOf(strategy.name());
+		PathSearch search;
+		if(network != null) {
+			Adjacency graph = network.getAdjacency();
+			int first = graph.indexOf(start);
+			int last = graph.indexOf(end);
+			search = new PathSearch(graph, mode, SearchContext.forThread());
+			if(first >= 0 && last >= 0) {
+				search.addSource(first, 0, 0);
+				search.addTarget(last, 0, 0);
+				search.setGoal(last);
+			}
+		} else {
+			search = new PathSearch(start, end, mode);
+		}
+		validPathFound = search.search();
+		if(validPathFound) {
+			bestTrack = search.getPath();
+			bestPathLength = search.getPathLength();
+			listener.bestPath(start, end, bestTrack, bestPathLength);
+		}
+		return validPathFound;
+	}
+	
+	/**
+	 * Walk all the routes with Path instances and pick the best
+	 */
+	private boolean enumeratePaths() {
 		
 		// First add the starting point to the list
 		paths.add(new Path(this, null, start, end));
@@ -91,6 +177,8 @@ public class PathFinder {
 			}		
 		}
 		
+		PATHS.add(pathId + 1);
+		
 		/* 
 		 * The "engine" has stopped and all the path options have
 		 * been exhausted. Let's check if we found the shortest path
@@ -98,11 +186,11 @@ public class PathFinder {
 		Iterator<Path> iter = hits.iterator();
 		int shortest = Integer.MAX_VALUE;
 		double shortestDistance = Double.MAX_VALUE;
+		Path bestPath = null;
 		
 		while(iter.hasNext()) {
 			path = iter.next();
-			System.out.println("Path length:" + path.steps);
-			path.listPath();
+			listener.pathCandidate(path.getId(), path.getPath(), path.getPathLength());
 			if(path.getSteps() <= shortest && path.getPathLength() < shortestDistance) {
 				shortest = path.getSteps();
 				bestPath = path;
@@ -111,22 +199,60 @@ public class PathFinder {
 		}
 		
 		if(bestPath != null) {
-			System.out.println("\nThe shortest path from:" + start.getId() +
-					" to:" + end.getId() + " is ");
-			bestPath.listPath();
+			bestTrack = bestPath.getPath();
+			bestPathLength = bestPath.getPathLength();
+			listener.bestPath(start, end, bestTrack, bestPathLength);
 		}		
 		return validPathFound;
 	}
 	
+	/**
+	 * Walk all the routes with a RouteEnumerator and keep only the
+	 * best one so far. Once a route is found the longer ones don't
+	 * need to be walked anymore.
+	 */
+	private boolean streamPaths() {
+		final Adjacency graph = network != null ? network.getAdjacency() : VisibilityGraph.reachableFrom(start);
+		final RouteEnumerator enumerator = new RouteEnumerator(graph, graph.indexOf(start), graph.indexOf(end));
+		final RouteEnumerator.Step[] best = new RouteEnumerator.Step[1];
+		enumerator.enumerate(new RouteEnumerator.Visitor() {
+			public boolean visit(RouteEnumerator.Step route) {
+				if(listener != RoutingListener.NONE)
+					listener.pathCandidate(createPathId(), route.getPath(graph), route.getDistance());
+				if(best[0] == null || route.getHops() < best[0].getHops() ||
+						(route.getHops() == best[0].getHops() && route.getDistance() < best[0].getDistance())) {
+					best[0] = route;
+					enumerator.setMaxHops(route.getHops());
+				}
+				return true;
+			}
+		});
+		validPathFound = best[0] != null;
+		if(validPathFound) {
+			bestTrack = best[0].getPath(graph);
+			bestPathLength = best[0].getDistance();
+			listener.bestPath(start, end, bestTrack, bestPathLength);
+		}
+		return validPathFound;
+	}
+	
 	/**
 	 * 
 	 * @return the length of the optimal path or 0
 	 */
 	public int getBestPathLength() {
-		if(bestPath == null)
+		if(bestTrack == null)
 			return 0;
 		else
-			return bestPath.steps;
+			return bestTrack.size() - 1;
+	}
+	
+	/**
+	 * 
+	 * @return the sum of "distances" in degrees on the optimal path or 0
+	 */
+	public double getBestPathDistance() {
+		return bestPathLength;
 	}
 	
 	/**
@@ -134,21 +260,17 @@ public class PathFinder {
 	 * @return String of comma separated list of satellites in the optimal path
 	 */
 	public String getBestPathString() {
-		String pathString = "null";
-		if(bestPath != null) {
-			pathString = "";
-			Iterator<Node> nodes = bestPath.getPath().iterator();
-			while( nodes.hasNext()) {
-				 Node node = nodes.next();
-				 if(node != start && node != end){
-					 if(pathString != "")
-						 pathString = pathString.concat(",");
-					 
-					 pathString = pathString.concat(node.getId());
-				 }
+		if(bestTrack == null)
+			return "null";
+		StringBuilder builder = new StringBuilder();
+		for(Node node : bestTrack) {
+			if(node != start && node != end) {
+				if(builder.length() > 0)
+					builder.append(',');
+				builder.append(node.getId());
 			}
 		}
-		return pathString;
+		return builder.toString();
 	}
 	
 	/**
@@ -230,24 +352,20 @@ public class PathFinder {
 			// are we done with this?
 			// a valid path found
 			if(current == end) {
-				System.out.println("-- Found a valid path:" + this.getId());
+				finder.listener.pathEnded(getId(), true);
 				validPath = true;
 				finder.paths.remove(this);
 				return true;
 			}
 			// this path doesn't lead where we want
 			if(current == null) {
-				System.out.println("-- Dead end here - path:" + this.getId());
+				finder.listener.pathEnded(getId(), false);
 				validPath = false;
 				finder.paths.remove(this);
 				return false;
 			}
 			
-			String separator = " -";
-			for(int i=0; i< this.getId(); i++)
-				separator = separator.concat("-");
-			System.out.println("Path " + this.getId() + 
-					separator + " " + current.getId());
+			finder.listener.pathStep(getId(), current);
 			
 			// ok, so where to go next?
 			Iterator<Node> i = current.getNeighbours().values().iterator();
@@ -283,22 +401,5 @@ public class PathFinder {
 		private int getSteps() {
 			return steps;
 		}
-		private void listPath() {
-			Iterator<Node> i = track.iterator();
-			int hop = 0;
-			while(i.hasNext()) {
-				Node n = i.next();				
-				if(n != null) {
-					System.out.println("Hop:" + hop + " " + 
-							n.getId() + "     lat:" + n.getLatitude() +
-							" long:" + n.getLongitude() + " alt:" + n.getAltitude());
-				} else {
-					System.out.println("Hop:" + hop + " null");
-				}
-				hop++;
-			}
-			System.out.println("Path: " + getId() + " distance:" + getPathLength() + "\n");
-		}
-		
 	}
 }
@@ -7,7 +7,11 @@ package com.kankkonen.matti.orbitalchal;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -116,4 +120,145 @@ public class PathFinderTest {
 		finder.findPath();
 		assertEquals(9, finder.getBestPathLength());
 	}
+	
+	@Test
+	public void testStrategiesAgree() {
+		Network net = new Network();
+		Node node_a = new Node("Helsinki",60.192059,24.945831,0.0);
+		Node node_c = new Node("New York",40.7128, -74.0059, 0.0 );
+		net.addNode(node_a);
+		net.addNode(node_c);
+		net.addNode(new Node("SAT1", 0.123, 130.123, 700));
+		net.addNode(new Node("SAT2", 90.314, 60.123, 400));
+		net.addNode(new Node("SAT3", 70.123, 30.123, 400));
+		net.addNode(new Node("SAT4", 60.123, -175.123, 400));
+		net.addNode(new Node("SAT5", 30.123, 175.123, 400));
+		net.addNode(new Node("SAT6", -10.123, 160.323, 700));
+		net.addNode(new Node("SAT7", 10, 140.323, 700));
+		net.addNode(new Node("SAT8", -10, -177.323, 700));
+		net.addNode(new Node("SAT9", -24.3, -140.323, 700));
+		net.addNode(new Node("SAT10", -1.13, -95.323, 700));
+		net.addNode(new Node("SAT11", 20.2312, -75.323, 700));
+		net.init();
+		PathFinder enumerate = new PathFinder(node_a, node_c, PathFinder.Strategy.ENUMERATE);
+		PathFinder dijkstra = new PathFinder(net, node_a, node_c, PathFinder.Strategy.DIJKSTRA);
+		PathFinder astar = new PathFinder(net, node_a, node_c, PathFinder.Strategy.ASTAR);
+		PathFinder bidirectional = new PathFinder(net, node_a, node_c, PathFinder.Strategy.BIDIRECTIONAL);
+		assertTrue(enumerate.findPath());
+		assertTrue(dijkstra.findPath());
+		assertTrue(astar.findPath());
+		assertTrue(bidirectional.findPath());
+		PathFinder stream = new PathFinder(net, node_a, node_c, PathFinder.Strategy.STREAM);
+		assertTrue(stream.findPath());
+		assertEquals(enumerate.getBestPathString(), stream.getBestPathString());
+		assertEquals(enumerate.getBestPathDistance(), stream.getBestPathDistance(), 1e-9);
+		assertEquals(enumerate.getBestPathString(), bidirectional.getBestPathString());
+		assertEquals(enumerate.getBestPathDistance(), bidirectional.getBestPathDistance(), 1e-9);
+		assertEquals(enumerate.getBestPathLength(), dijkstra.getBestPathLength());
+		assertEquals(enumerate.getBestPathLength(), astar.getBestPathLength());
+		assertEquals(enumerate.getBestPathString(), dijkstra.getBestPathString());
+		assertEquals(enumerate.getBestPathString(), astar.getBestPathString());
+		assertEquals(enumerate.getBestPathDistance(), astar.getBestPathDistance(), 1e-9);
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.PathSearch#search()} in BIDIRECTIONAL mode.
+	 */
+	@Test
+	public void testBidirectional() {
+		Random random = new Random(15);
+		Network net = TestConstellations.random(random, 2000, 550, 550);
+		net.init();
+		VisibilityGraph graph = net.getGraph();
+		int dijkstraExpanded = 0;
+		int bidirectionalExpanded = 0;
+		for(int i=0; i < 50; i++) {
+			int a = random.nextInt(graph.size());
+			int b = random.nextInt(graph.size());
+			PathSearch dijkstra = new PathSearch(graph, a, b, PathSearch.Mode.DIJKSTRA);
+			PathSearch bidirectional = new PathSearch(graph, a, b, PathSearch.Mode.BIDIRECTIONAL);
+			assertEquals(dijkstra.search(), bidirectional.search());
+			if(dijkstra.getTrack() == null)
+				continue;
+			assertEquals(dijkstra.getHops(), bidirectional.getHops());
+			assertEquals(dijkstra.getPathLength(), bidirectional.getPathLength(), 1e-9);
+			int[] track = bidirectional.getTrack();
+			assertEquals(a, track[0]);
+			assertEquals(b, track[track.length - 1]);
+			for(int t=1; t < track.length; t++)
+				assertTrue(graph.findEdge(track[t-1], track[t]) >= 0);
+			dijkstraExpanded += dijkstra.getExpanded();
+			bidirectionalExpanded += bidirectional.getExpanded();
+		}
+		assertTrue(bidirectionalExpanded * 2 < dijkstraExpanded);
+
+		// several ends with hops and "distance" of their own, like the ground stations
+		for(int i=0; i < 50; i++) {
+			PathSearch dijkstra = new PathSearch(graph, PathSearch.Mode.DIJKSTRA);
+			PathSearch bidirectional = new PathSearch(graph, PathSearch.Mode.BIDIRECTIONAL);
+			for(int s=0; s < 3; s++) {
+				int node = random.nextInt(graph.size());
+				double distance = random.nextDouble() * 10;
+				dijkstra.addSource(node, 1, distance);
+				bidirectional.addSource(node, 1, distance);
+				node = random.nextInt(graph.size());
+				distance = random.nextDouble() * 10;
+				dijkstra.addTarget(node, 1, distance);
+				bidirectional.addTarget(node, 1, distance);
+			}
+			assertEquals(dijkstra.search(), bidirectional.search());
+			assertEquals(dijkstra.getHops(), bidirectional.getHops());
+			assertEquals(dijkstra.getPathLength(), bidirectional.getPathLength(), 1e-9);
+		}
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.PathFinder#setListener(com.kankkonen.matti.orbitalchal.RoutingListener)}.
+	 */
+	@Test
+	public void testListener() {
+		Network net = new Network();
+		Node node_a = new Node("Helsinki",60.192059,24.945831,0.0);
+		Node node_b = new Node("London",51.5085300,-0.1257400,0);
+		net.addNode(node_a);
+		net.addNode(node_b);
+		net.addNode(new Node("Sat 2", 54.3002,25.998,700));
+		net.addNode(new Node("Sat 3", 15,24, 700));
+		net.addNode(new Node("Sat 6", 35, -10, 700));
+		
+		final int[] counts = new int[4];
+		RoutingListener listener = new RoutingListener() {
+			public void initNode(Node node) {
+				counts[0]++;
+			}
+			public void neighbourAdded(Node node, Node neighbour) {
+				counts[1]++;
+			}
+			public void pathEnded(int path, boolean found) {
+				if(found)
+					counts[2]++;
+			}
+			public void bestPath(Node start, Node end, List<Node> track, double length) {
+				counts[3]++;
+			}
+		};
+		net.setListener(listener);
+		net.init();
+		assertEquals(5, counts[0]);
+		assertEquals(net.getGraph().getEdgeCount(), counts[1]);
+		
+		PathFinder finder = new PathFinder(net, node_a, node_b, PathFinder.Strategy.ENUMERATE);
+		finder.setListener(listener);
+		assertTrue(finder.findPath());
+		assertTrue(counts[2] > 0);
+		assertEquals(1, counts[3]);
+		
+		// the console listener prints what used to be printed
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		finder = new PathFinder(net, node_a, node_b);
+		finder.setListener(new ConsoleRoutingListener(new PrintStream(bytes)));
+		finder.findPath();
+		assertTrue(bytes.toString().contains("The shortest path from:Helsinki to:London"));
+		assertTrue(bytes.toString().contains("Hop:1 Sat 2"));
+	}
 }
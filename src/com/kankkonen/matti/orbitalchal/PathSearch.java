@@ -0,0 +1,473 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * PathSearch finds the best path from node A to node B by
+ * settling the nodes in the order of their cost from A, instead of
+ * walking every possible route like the Path branching does.
+ *
+ * The nodes waiting to be settled are kept in a priority queue.
+ * When a node is settled its cost can't get any better, so we
+ * can stop as soon as the node B gets settled.
+ *
+ * The "best" path is the same as PathFinder has always meant it:
+ * the path with the fewest hops and from those the one with the
+ * shortest "distance" in degrees. Both are folded into one cost by
+ * charging HOP_COST for every hop on top of the distance of the hop.
+ *
+ * When two paths cost exactly the same, DIJKSTRA and ASTAR take the
+ * one with the smaller node indices going back from B: of the ends
+ * the node with the smallest index, and each node is reached from its
+ * neighbour with the smallest index that gives it the same cost. The
+ * path doesn't depend on the order the queue hands out equal costs,
+ * and DeltaStepping picks the same one. BIDIRECTIONAL may meet on
+ * any of them.
+ *
+ * In A* mode the queue is ordered by cost so far plus an estimate
+ * of the cost left to B. The estimate is the great circle angle to B
+ * plus the minimum number of hops needed to cover that angle, which
+ * never overestimates so the result is still the optimal path.
+ *
+ * In BIDIRECTIONAL mode the search grows from A and from B at the
+ * same time and the path is found where the two meet. The graph is
+ * the same in both directions, so the search from B walks the same
+ * edges backwards. The side with the shorter queue is expanded next,
+ * so neither side runs far ahead of the other. On a long route each
+ * side only has to cover about half of the hops, which is a lot less
+ * nodes than one search covering all of them.
+ *
+ * Meeting is not the end yet, a better path may still come up. Every
+ * time an edge is walked from one side to a node the other side has
+ * already reached, the path through the edge is a candidate. The
+ * search stops when the cheapest nodes in the two queues can't be
+ * joined into anything better than the best candidate: even then
+ * there would be at least one hop between them.
+ *
+ * The search runs on a VisibilityGraph, so the nodes are indices
+ * to arrays and the distances of the hops are already calculated.
+ * It can also run on a LazyGraph, which finds the neighbours of a
+ * node only when the search gets there.
+ *
+ * A and B don't need to be nodes of the graph. The search can start
+ * from many nodes and end at many nodes, each with the hops and
+ * "distance" it takes to get there from A or from there to B. That's
+ * how the ground stations outside the graph are connected to the
+ * satellites they can see.
+ *
+ * The costs, queues and ends of the search are kept in a SearchContext.
+ * A search without one makes its own, given e.g. the context of the
+ * thread it doesn't allocate anything for the nodes.
+ */
+public class PathSearch {
+
+	/**
+	 * The cost of one hop. Has to be bigger than any "distance" sum
+	 * of a path so that one hop less always wins
+	 */
+	public final static double HOP_COST = 1e6;
+
+	private final static Metrics.Histogram EXPANDED = Metrics.getDefault().histogram("search.expanded");
+	private final static Metrics.Histogram QUEUE_PEAK = Metrics.getDefault().histogram("search.queue.peak");
+	private final static Metrics.Histogram NANOS = Metrics.getDefault().histogram("search.nanos");
+
+	public enum Mode { DIJKSTRA, ASTAR, BIDIRECTIONAL }
+
+	private Adjacency graph;
+	private Mode mode;
+	private SearchContext context;
+	private SearchContext.Ends sources;
+	private SearchContext.Ends targets;
+	/* where B is, for the A* estimate */
+	private double goalX;
+	private double goalY;
+	private double goalZ;
+	private boolean goalSet = false;
+
+	private int[] track = null;
+	private double bestCost = Double.POSITIVE_INFINITY;
+	private double pathLength = 0;
+	private int hops = 0;
+	private int expanded = 0;
+	private int queuePeak = 0;
+
+	/**
+	 * Create a search, the start and end are added with addSource
+	 * and addTarget
+	 * @param graph to search
+	 * @param mode DIJKSTRA or ASTAR
+	 */
+	public PathSearch(Adjacency graph, Mode mode) {
+		this(graph, mode, new SearchContext());
+	}
+
+	/**
+	 * Create a search that uses the context, e.g. the one of the
+	 * thread. Whatever the last search of the context left is cleared.
+	 * @param graph to search
+	 * @param mode DIJKSTRA, ASTAR or BIDIRECTIONAL
+	 * @param context to search with
+	 */
+	public PathSearch(Adjacency graph, Mode mode, SearchContext context) {
+		this.graph = graph;
+		this.mode = mode;
+		this.context = context;
+		sources = context.sources();
+		targets = context.targets();
+		sources.clear();
+		targets.clear();
+	}
+
+	/**
+	 * @param graph to search
+	 * @param start index of the path's first node in the graph
+	 * @param end index of the path's last node in the graph
+	 * @param mode DIJKSTRA or ASTAR
+	 */
+	public PathSearch(Adjacency graph, int start, int end, Mode mode) {
+		this(graph, mode);
+		if(start >= 0 && end >= 0) {
+			addSource(start, 0, 0);
+			addTarget(end, 0, 0);
+			setGoal(end);
+		}
+	}
+
+	/**
+	 * Search the nodes that can be reached from the start node
+	 * @param start Node of the path
+	 * @param end Node of the path
+	 * @param mode DIJKSTRA or ASTAR
+	 */
+	public PathSearch(Node start, Node end, Mode mode) {
+		this(VisibilityGraph.reachableFrom(start), mode);
+		int last = graph.indexOf(end);
+		if(last >= 0) {
+			addSource(0, 0, 0);
+			addTarget(last, 0, 0);
+			setGoal(last);
+		}
+	}
+
+	/**
+	 * @return the cost of a path with the given hops and "distance"
+	 */
+	public static double cost(int hops, double distance) {
+		return hops * HOP_COST + distance;
+	}
+
+	/**
+	 * Start the search from the node
+	 * @param node index in the graph
+	 * @param hops it takes from A to the node
+	 * @param distance from A to the node in degrees
+	 */
+	public void addSource(int node, int hops, double distance) {
+		sources.add(node, hops, distance);
+	}
+
+	/**
+	 * The search may end at the node
+	 * @param node index in the graph
+	 * @param hops it takes from the node to B
+	 * @param distance from the node to B in degrees
+	 */
+	public void addTarget(int node, int hops, double distance) {
+		targets.add(node, hops, distance);
+	}
+
+
+	/**
+	 * Where B is, for the A* estimate. Without the goal the 
+	 * search is done like in DIJKSTRA mode. BIDIRECTIONAL doesn't
+	 * use the goal.
+	 * @param x unit vector of the position
+	 * @param y
+	 * @param z
+	 */
+	public void setGoal(double x, double y, double z) {
+		goalX = x;
+		goalY = y;
+		goalZ = z;
+		goalSet = true;
+	}
+
+	/**
+	 * B is a node of the graph, for the A* estimate
+	 * @param node index in the graph
+	 */
+	public void setGoal(int node) {
+		setGoal(graph.getX(node), graph.getY(node), graph.getZ(node));
+	}
+
+	/**
+	 * Run the search
+	 * @return true if a path from start to end was found
+	 */
+	public boolean search() {
+		SearchEvent event = new SearchEvent();
+		event.begin();
+		long started = System.nanoTime();
+		boolean found = run();
+		NANOS.record(System.nanoTime() - started);
+		EXPANDED.record(expanded);
+		QUEUE_PEAK.record(queuePeak);
+		event.end();
+		if(event.shouldCommit()) {
+			event.mode = mode.name();
+			event.nodes = graph.size();
+			event.expanded = expanded;
+			event.queuePeak = queuePeak;
+			event.found = found;
+			event.hops = hops;
+			event.commit();
+		}
+		return found;
+	}
+
+	private boolean run() {
+		if(sources.count == 0 || targets.count == 0)
+			return false;
+		context.begin(graph.size());
+		// the cost from each node to B, infinite if B can't be reached
+		SearchContext.Labels targetCosts = context.targetCosts();
+		for(int t=0; t < targets.count; t++) {
+			int node = targets.nodes[t];
+			double targetCost = cost(targets.hops[t], targets.distances[t]);
+			if(targetCost < targetCosts.cost(node))
+				targetCosts.set(node, targetCost, -1);
+		}
+		if(mode == Mode.BIDIRECTIONAL)
+			return runBidirectional();
+
+		SearchContext.Labels labels = context.forward();
+		NodeHeap queue = labels.queue();
+
+		for(int s=0; s < sources.count; s++) {
+			int node = sources.nodes[s];
+			double sourceCost = cost(sources.hops[s], sources.distances[s]);
+			if(sourceCost < labels.cost(node)) {
+				labels.set(node, sourceCost, -1);
+				queue.push(node, sourceCost + estimate(node));
+			}
+		}
+
+		int bestTarget = -1;
+		// an end as good as the best one may still come up at the same cost
+		while(queue.isEmpty() == false && queue.peekKey() <= bestCost) {
+			int current = queue.pop();
+			double currentCost = labels.cost(current);
+			double total = currentCost + targetCosts.cost(current);
+			if(total < bestCost || (total == bestCost && current < bestTarget)) {
+				bestCost = total;
+				bestTarget = current;
+			}
+			// every hop costs something so this can't lead anywhere better
+			if(currentCost + HOP_COST >= bestCost)
+				continue;
+			expanded++;
+
+			for(int e = graph.first(current); e < graph.last(current); e++) {
+				int neighbour = graph.target(e);
+				double newCost = currentCost + HOP_COST + graph.weight(e);
+				if(newCost < labels.cost(neighbour)) {
+					labels.set(neighbour, newCost, current);
+					queue.push(neighbour, newCost + estimate(neighbour));
+				} else if(newCost == labels.cost(neighbour) && current < labels.link(neighbour)) {
+					labels.set(neighbour, newCost, current);
+				}
+			}
+			if(queue.size() > queuePeak)
+				queuePeak = queue.size();
+		}
+		if(bestTarget < 0)
+			return false;
+		createTrack(labels, bestTarget);
+		return true;
+	}
+
+	/**
+	 * Search from both ends until the two searches can't find
+	 * anything better than what they have already met at
+	 */
+	private boolean runBidirectional() {
+		SearchContext.Labels forward = context.forward();
+		SearchContext.Labels backward = context.backward();
+		SearchContext.Labels targetCosts = context.targetCosts();
+		NodeHeap forwardQueue = forward.queue();
+		NodeHeap backwardQueue = backward.queue();
+
+		for(int s=0; s < sources.count; s++) {
+			int node = sources.nodes[s];
+			double sourceCost = cost(sources.hops[s], sources.distances[s]);
+			if(sourceCost < forward.cost(node)) {
+				forward.set(node, sourceCost, -1);
+				forwardQueue.push(node, sourceCost);
+			}
+		}
+		// where the best path found so far crosses from one side to the other
+		int meetFrom = -1;
+		int meetTo = -1;
+		for(int t=0; t < targets.count; t++) {
+			int node = targets.nodes[t];
+			if(targetCosts.cost(node) < backward.cost(node)) {
+				backward.set(node, targetCosts.cost(node), -1);
+				backwardQueue.push(node, backward.cost(node));
+			}
+			// A and B both see the node, the path doesn't need to meet anywhere else
+			if(forward.cost(node) + backward.cost(node) < bestCost) {
+				bestCost = forward.cost(node) + backward.cost(node);
+				meetFrom = node;
+				meetTo = node;
+			}
+		}
+		while(forwardQueue.isEmpty() == false && backwardQueue.isEmpty() == false &&
+				forwardQueue.peekKey() + backwardQueue.peekKey() + HOP_COST < bestCost) {
+			boolean forwards = forwardQueue.size() <= backwardQueue.size();
+			NodeHeap queue = forwards ? forwardQueue : backwardQueue;
+			SearchContext.Labels labels = forwards ? forward : backward;
+			SearchContext.Labels other = forwards ? backward : forward;
+
+			int current = queue.pop();
+			double currentCost = labels.cost(current);
+			if(currentCost + other.cost(current) < bestCost) {
+				bestCost = currentCost + other.cost(current);
+				meetFrom = current;
+				meetTo = current;
+			}
+			expanded++;
+
+			for(int e = graph.first(current); e < graph.last(current); e++) {
+				int neighbour = graph.target(e);
+				double newCost = currentCost + HOP_COST + graph.weight(e);
+				if(newCost < labels.cost(neighbour)) {
+					labels.set(neighbour, newCost, current);
+					queue.push(neighbour, newCost);
+				}
+				if(newCost + other.cost(neighbour) < bestCost) {
+					bestCost = newCost + other.cost(neighbour);
+					meetFrom = forwards ? current : neighbour;
+					meetTo = forwards ? neighbour : current;
+				}
+			}
+			if(forwardQueue.size() + backwardQueue.size() > queuePeak)
+				queuePeak = forwardQueue.size() + backwardQueue.size();
+		}
+		if(meetFrom < 0)
+			return false;
+
+		// the first half comes from A to meetFrom, the rest from meetTo to B
+		int count = 0;
+		for(int node = meetFrom; node >= 0; node = forward.link(node))
+			count++;
+		int first = count;
+		if(meetTo != meetFrom) {
+			for(int node = meetTo; node >= 0; node = backward.link(node))
+				count++;
+		}
+		int[] track = new int[count];
+		for(int node = meetFrom, i = first - 1; i >= 0; node = forward.link(node), i--)
+			track[i] = node;
+		if(meetTo != meetFrom) {
+			for(int node = meetTo, i = first; i < count; node = backward.link(node), i++)
+				track[i] = node;
+		}
+		createTrack(track);
+		return true;
+	}
+
+	/**
+	 * The A* estimate of the cost from node to the end
+	 */
+	private double estimate(int node) {
+		if(mode != Mode.ASTAR || goalSet == false || context.targetCosts().cost(node) == 0)
+			return 0;
+		double angle = graph.getDistance(node, goalX, goalY, goalZ);
+		double maxHop = Math.max(graph.getMaxWeight(), graph.getMaxCoverage());
+		double hops = angle <= maxHop ? 1 : Math.ceil(angle / maxHop);
+		return hops * HOP_COST + angle;
+	}
+
+	/**
+	 * Walk back from the end and collect the path, also sum up
+	 * the "distance" the same way Path does it
+	 */
+	private void createTrack(SearchContext.Labels labels, int end) {
+		int count = 1;
+		for(int node = end; labels.link(node) >= 0; node = labels.link(node))
+			count++;
+		int[] track = new int[count];
+		for(int node = end, i = count - 1; i >= 0; node = labels.link(node), i--)
+			track[i] = node;
+		createTrack(track);
+	}
+
+	/**
+	 * The nodes of the path are known, add up the hops and the
+	 * "distance" including the ends
+	 */
+	private void createTrack(int[] track) {
+		this.track = track;
+		int end = track[track.length - 1];
+		int first = sources.best(track[0]);
+		int last = targets.best(end);
+		hops = sources.hops[first] + track.length - 1 + targets.hops[last];
+		pathLength = sources.distances[first];
+		for(int i=1; i < track.length; i++)
+			pathLength += graph.weight(graph.findEdge(track[i-1], track[i]));
+		pathLength += targets.distances[last];
+	}
+
+	/**
+	 * @return the node indices on the path or null
+	 */
+	public int[] getTrack() {
+		return track;
+	}
+
+	/**
+	 * @return the nodes on the path from start to end or null
+	 */
+	public List<Node> getPath() {
+		if(track == null)
+			return null;
+		List<Node> nodes = new ArrayList<Node>(track.length);
+		for(int i=0; i < track.length; i++)
+			nodes.add(graph.getNode(track[i]));
+		return nodes;
+	}
+
+	/**
+	 * @return the sum of "distances" between the nodes on the path
+	 */
+	public double getPathLength() {
+		return pathLength;
+	}
+
+	/**
+	 * @return the number of hops from A to B
+	 */
+	public int getHops() {
+		return hops;
+	}
+
+	/**
+	 * @return how many nodes were expanded during the search
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	/**
+	 * @return the most nodes there were in the queue at once
+	 */
+	public int getQueuePeak() {
+		return queuePeak;
+	}
+}
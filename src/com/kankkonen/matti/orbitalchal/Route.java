@@ -0,0 +1,108 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Route is the result of one route query from ground point A to
+ * ground point B. The satellites on the route are kept as indices
+ * of the snapshot they were found from, the ids are looked up only
+ * when the route is turned into a string.
+ *
+ * A Route is immutable so it can be shared between threads.
+ */
+public class Route {
+
+	private String[] ids;
+	private int[] satellites;
+	private double distance;
+	private int hops;
+	private String string = null;
+
+	/**
+	 * @param ids of the snapshot's nodes
+	 * @param satellites indices of the satellites from A to B or null
+	 * if there's no route
+	 * @param hops from A to B
+	 * @param distance the sum of "distances" in degrees
+	 */
+	Route(String[] ids, int[] satellites, int hops, double distance) {
+		this.ids = ids;
+		this.satellites = satellites;
+		this.hops = hops;
+		this.distance = distance;
+	}
+
+	/**
+	 * @return true if a route from A to B was found
+	 */
+	public boolean isFound() {
+		return satellites != null;
+	}
+
+	/**
+	 * @return the number of hops from A to B or 0 if no route
+	 */
+	public int getHops() {
+		return hops;
+	}
+
+	/**
+	 * @return the sum of "distances" in degrees on the route or 0
+	 */
+	public double getDistance() {
+		return distance;
+	}
+
+	/**
+	 * @return the number of satellites on the route
+	 */
+	public int getSatelliteCount() {
+		return satellites == null ? 0 : satellites.length;
+	}
+
+	/**
+	 * @param i position on the route, 0 is the first satellite after A
+	 * @return the node index of the satellite in the snapshot
+	 */
+	public int getSatellite(int i) {
+		return satellites[i];
+	}
+
+	/**
+	 * @return the ids of the satellites from A to B
+	 */
+	public List<String> getSatelliteIds() {
+		List<String> list = new ArrayList<String>(getSatelliteCount());
+		for(int i=0; i < getSatelliteCount(); i++)
+			list.add(ids[satellites[i]]);
+		return list;
+	}
+
+	/**
+	 * @return comma separated list of satellites on the route, the same
+	 * as PathFinder.getBestPathString
+	 */
+	@Override
+	public String toString() {
+		if(string == null) {
+			if(satellites == null) {
+				string = "null";
+			} else {
+				StringBuilder builder = new StringBuilder();
+				for(int i=0; i < satellites.length; i++) {
+					if(i > 0)
+						builder.append(',');
+					builder.append(ids[satellites[i]]);
+				}
+				string = builder.toString();
+			}
+		}
+		return string;
+	}
+}
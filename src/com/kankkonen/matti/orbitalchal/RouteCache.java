@@ -0,0 +1,174 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RouteCache remembers the routes between ground points so that the
+ * same query doesn't need a new search every time.
+ *
+ * The coordinates of the query are rounded to the given resolution,
+ * so queries a tiny bit apart share the same route. Each route is
+ * stored with the topology epoch of the network it was found from.
+ * If the network has changed since, the route is found again when
+ * it's asked for, so there's no need to clear the whole cache when
+ * the network changes.
+ *
+ * When the cache is full the route used the longest time ago is
+ * dropped. The cache can be used from many threads.
+ */
+public class RouteCache {
+
+	public final static double DEFAULT_RESOLUTION = 1e-6;
+
+	private Network network;
+	private double resolution;
+	private Map<Key, Cached> entries;
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param network to find the routes from
+	 * @param maxEntries how many routes to keep
+	 */
+	public RouteCache(Network network, int maxEntries) {
+		this(network, maxEntries, DEFAULT_RESOLUTION);
+	}
+
+	/**
+	 * @param network to find the routes from
+	 * @param maxEntries how many routes to keep
+	 * @param resolution in degrees, the coordinates closer than this
+	 * are considered the same
+	 */
+	public RouteCache(Network network, final int maxEntries, double resolution) {
+		this.network = network;
+		this.resolution = resolution;
+		// access order makes the map a LRU list
+		this.entries = new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+				if(size() > maxEntries) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Get the route from the cache or find it
+	 * @param latitudeA of the start
+	 * @param longitudeA of the start
+	 * @param latitudeB of the end
+	 * @param longitudeB of the end
+	 * @return the route
+	 */
+	public Route route(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+		Key key = new Key(quantize(latitudeA), quantize(longitudeA),
+				quantize(latitudeB), quantize(longitudeB));
+		long epoch = network.getTopologyEpoch();
+		Cached entry;
+		synchronized(entries) {
+			entry = entries.get(key);
+		}
+		if(entry != null && entry.epoch == epoch) {
+			hits.incrementAndGet();
+			return entry.route;
+		}
+
+		misses.incrementAndGet();
+		NetworkSnapshot snapshot = network.snapshot();
+		Route route = snapshot.route(latitudeA, longitudeA, latitudeB, longitudeB);
+		synchronized(entries) {
+			entries.put(key, new Cached(route, snapshot.getEpoch()));
+		}
+		return route;
+	}
+
+	private long quantize(double degrees) {
+		return Math.round(degrees / resolution);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return how many routes have been dropped to make room
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return how many routes are in the cache, some may be out of date
+	 */
+	public int size() {
+		synchronized(entries) {
+			return entries.size();
+		}
+	}
+
+	public void clear() {
+		synchronized(entries) {
+			entries.clear();
+		}
+	}
+
+	private static class Cached {
+		private Route route;
+		private long epoch;
+
+		Cached(Route route, long epoch) {
+			this.route = route;
+			this.epoch = epoch;
+		}
+	}
+
+	private static class Key {
+		private long latitudeA;
+		private long longitudeA;
+		private long latitudeB;
+		private long longitudeB;
+
+		Key(long latitudeA, long longitudeA, long latitudeB, long longitudeB) {
+			this.latitudeA = latitudeA;
+			this.longitudeA = longitudeA;
+			this.latitudeB = latitudeB;
+			this.longitudeB = longitudeB;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(other instanceof Key == false)
+				return false;
+			Key key = (Key)other;
+			return latitudeA == key.latitudeA && longitudeA == key.longitudeA &&
+					latitudeB == key.latitudeB && longitudeB == key.longitudeB;
+		}
+
+		@Override
+		public int hashCode() {
+			long hash = latitudeA;
+			hash = hash * 31 + longitudeA;
+			hash = hash * 31 + latitudeB;
+			hash = hash * 31 + longitudeB;
+			return (int)(hash ^ (hash >>> 32));
+		}
+	}
+}
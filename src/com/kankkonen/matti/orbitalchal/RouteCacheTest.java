@@ -0,0 +1,91 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class RouteCacheTest {
+
+	private Network net;
+
+	@Before
+	public void setUp() {
+		net = new Network();
+		net.addNode(new Node("Sat 2", 54.3002,25.998,700));
+		net.addNode(new Node("Sat 3", 15,24, 700));
+		net.addNode(new Node("Sat 4", 0,0, 700));
+		net.addNode(new Node("Sat 5", -10, 15, 700));
+		net.addNode(new Node("Sat 6", 35, -10, 700));
+		net.init();
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.RouteCache#route(double, double, double, double)}.
+	 */
+	@Test
+	public void testRoute() {
+		RouteCache cache = new RouteCache(net, 10);
+		Route route = cache.route(60.192059, 24.945831, 51.5085300, -0.1257400);
+		assertEquals("Sat 2", route.toString());
+		assertEquals(0, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// a tiny bit off is still the same query
+		assertSame(route, cache.route(60.1920591, 24.945831, 51.5085300, -0.1257400));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.size());
+	}
+
+	/**
+	 * The route used the longest time ago should go first
+	 */
+	@Test
+	public void testEviction() {
+		RouteCache cache = new RouteCache(net, 2);
+		Route first = cache.route(60, 25, 51, 0);
+		cache.route(50, 25, 51, 0);
+		assertSame(first, cache.route(60, 25, 51, 0));
+		cache.route(40, 25, 51, 0);
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+
+		// the first one was used most recently so it's still there
+		assertSame(first, cache.route(60, 25, 51, 0));
+		long misses = cache.getMisses();
+		cache.route(50, 25, 51, 0);
+		assertEquals(misses + 1, cache.getMisses());
+	}
+
+	/**
+	 * The routes found before the network changed should not be used
+	 */
+	@Test
+	public void testInvalidation() {
+		RouteCache cache = new RouteCache(net, 10);
+		Route before = cache.route(60.192059, 24.945831, 35.652832, 139.6917);
+		assertFalse(before.isFound());
+
+		net.addNode(new Node("Sat 7", 50, 70, 700));
+		net.addNode(new Node("Sat 8", 40, 110, 700));
+		net.init();
+		Route after = cache.route(60.192059, 24.945831, 35.652832, 139.6917);
+		assertNotSame(before, after);
+		assertTrue(after.isFound());
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.size());
+
+		assertSame(after, cache.route(60.192059, 24.945831, 35.652832, 139.6917));
+		assertEquals(1, cache.getHits());
+	}
+}
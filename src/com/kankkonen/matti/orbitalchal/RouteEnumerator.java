@@ -0,0 +1,243 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * RouteEnumerator walks all the routes from node A to node B that
+ * don't visit any node twice, for when we really want all of them or
+ * the top N and not just the best one.
+ *
+ * The routes are walked depth first and each route found is handed
+ * to a Visitor right away, nothing is collected. A route is a chain
+ * of Steps, each pointing to the Step before it, so the routes going
+ * through the same nodes share the beginning and taking a step
+ * doesn't copy anything. The nodes on the current route are marked
+ * in a BitSet. All that is kept during the walk is the current route,
+ * so the memory needed depends on how long the routes get, not on
+ * how many there are. Only the Steps the Visitor keeps stay around.
+ *
+ * The number of routes grows very fast with the size of the network,
+ * so the walk can be limited with the most hops and the most
+ * "distance" a route may have. A branch is left as soon as it can't
+ * make it to B within the limits, even in a straight line. The limits
+ * can be tightened by the Visitor during the walk, e.g. when looking
+ * for the best route.
+ */
+public class RouteEnumerator {
+
+	private final static Metrics.Counter ROUTES = Metrics.getDefault().counter("enumerate.routes");
+
+	/**
+	 * Gets the routes as they are found
+	 */
+	public interface Visitor {
+		/**
+		 * @param route the last Step of the route, ending at B
+		 * @return false to stop the walk
+		 */
+		boolean visit(Step route);
+	}
+
+	private Adjacency graph;
+	private int start;
+	private int end;
+	private int maxHops = Integer.MAX_VALUE;
+	private double maxDistance = Double.POSITIVE_INFINITY;
+	private int routes = 0;
+
+	/**
+	 * @param graph to walk
+	 * @param start index of the first node of the routes in the graph
+	 * @param end index of the last node of the routes in the graph
+	 */
+	public RouteEnumerator(Adjacency graph, int start, int end) {
+		this.graph = graph;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @param maxHops the most hops a route may have
+	 */
+	public void setMaxHops(int maxHops) {
+		this.maxHops = maxHops;
+	}
+
+	public int getMaxHops() {
+		return maxHops;
+	}
+
+	/**
+	 * @param maxDistance the most "distance" in degrees a route may have
+	 */
+	public void setMaxDistance(double maxDistance) {
+		this.maxDistance = maxDistance;
+	}
+
+	public double getMaxDistance() {
+		return maxDistance;
+	}
+
+	/**
+	 * Walk the routes
+	 * @param visitor to hand the routes to
+	 * @return how many routes were found
+	 */
+	public int enumerate(Visitor visitor) {
+		routes = 0;
+		if(start < 0 || end < 0)
+			return 0;
+		if(start == end) {
+			found(new Step(start, null, 0, 0), visitor);
+			ROUTES.add(routes);
+			return routes;
+		}
+
+		BitSet onRoute = new BitSet(graph.size());
+		Step[] steps = new Step[16];
+		/* the next edge to try from the step at each depth */
+		int[] edges = new int[16];
+		int depth = 0;
+		steps[0] = new Step(start, null, 0, 0);
+		edges[0] = graph.first(start);
+		onRoute.set(start);
+
+		while(depth >= 0) {
+			Step step = steps[depth];
+			int edge = edges[depth];
+			if(edge == graph.last(step.node) || step.hops + 1 > maxHops) {
+				onRoute.clear(step.node);
+				steps[depth--] = null;
+				continue;
+			}
+			if(step.hops + 1 == maxHops) {
+				// one hop left, it has to go straight to B
+				edges[depth] = graph.last(step.node);
+				int last = graph.findEdge(step.node, end);
+				double distance = last < 0 ? 0 : step.distance + graph.weight(last);
+				if(last >= 0 && distance <= maxDistance &&
+						found(new Step(end, step, maxHops, distance), visitor) == false)
+					break;
+				continue;
+			}
+			edges[depth] = edge + 1;
+
+			int next = graph.target(edge);
+			if(onRoute.get(next))
+				continue;
+			double distance = step.distance + graph.weight(edge);
+			if(next == end) {
+				if(distance <= maxDistance && found(new Step(end, step, step.hops + 1, distance), visitor) == false)
+					break;
+				continue;
+			}
+			// even the straight line to B is too long
+			double left = graph.getDistance(next, end);
+			if(distance + left > maxDistance || step.hops + 1 + minHops(left) > maxHops)
+				continue;
+
+			if(++depth == steps.length) {
+				steps = Arrays.copyOf(steps, depth * 2);
+				edges = Arrays.copyOf(edges, depth * 2);
+			}
+			steps[depth] = new Step(next, step, step.hops + 1, distance);
+			edges[depth] = graph.first(next);
+			onRoute.set(next);
+		}
+		ROUTES.add(routes);
+		return routes;
+	}
+
+	private boolean found(Step route, Visitor visitor) {
+		routes++;
+		return visitor.visit(route);
+	}
+
+	/**
+	 * The fewest hops it takes to cover the angle, none of the
+	 * hops can be longer than the longest edge of the graph
+	 */
+	private int minHops(double angle) {
+		double maxHop = graph.getMaxWeight();
+		if(maxHop <= 0)
+			return 1;
+		// a little slack so that rounding doesn't add a hop
+		return Math.max(1, (int)Math.ceil(angle / maxHop - 1e-9));
+	}
+
+	/**
+	 * One node on a route and the way there. The Step before it is
+	 * shared by all the routes that go the same way so far.
+	 */
+	public static class Step {
+		private int node;
+		private Step previous;
+		private int hops;
+		private double distance;
+
+		Step(int node, Step previous, int hops, double distance) {
+			this.node = node;
+			this.previous = previous;
+			this.hops = hops;
+			this.distance = distance;
+		}
+
+		/**
+		 * @return index of the node in the graph
+		 */
+		public int getNode() {
+			return node;
+		}
+
+		/**
+		 * @return the Step before this one or null at A
+		 */
+		public Step getPrevious() {
+			return previous;
+		}
+
+		/**
+		 * @return the hops from A to here
+		 */
+		public int getHops() {
+			return hops;
+		}
+
+		/**
+		 * @return the sum of "distances" from A to here in degrees
+		 */
+		public double getDistance() {
+			return distance;
+		}
+
+		/**
+		 * @return the node indices from A to here
+		 */
+		public int[] getTrack() {
+			int[] track = new int[hops + 1];
+			for(Step step = this; step != null; step = step.previous)
+				track[step.hops] = step.node;
+			return track;
+		}
+
+		/**
+		 * @param graph the route was walked in
+		 * @return the nodes from A to here
+		 */
+		public List<Node> getPath(Adjacency graph) {
+			int[] track = getTrack();
+			List<Node> nodes = new ArrayList<Node>(track.length);
+			for(int i=0; i < track.length; i++)
+				nodes.add(graph.getNode(track[i]));
+			return nodes;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class RouteEnumeratorTest {
+
+	/* all the simple routes the slow way, as strings of node indices */
+	private static void walk(VisibilityGraph graph, int node, int end, boolean[] visited,
+			String route, int hops, int maxHops, Set<String> routes) {
+		if(node == end) {
+			routes.add(route);
+			return;
+		}
+		if(hops == maxHops)
+			return;
+		visited[node] = true;
+		for(int e = graph.first(node); e < graph.last(node); e++) {
+			int next = graph.target(e);
+			if(visited[next] == false)
+				walk(graph, next, end, visited, route + "," + next, hops + 1, maxHops, routes);
+		}
+		visited[node] = false;
+	}
+
+	private static String toString(int[] track) {
+		String route = Integer.toString(track[0]);
+		for(int i=1; i < track.length; i++)
+			route += "," + track[i];
+		return route;
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.RouteEnumerator#enumerate(com.kankkonen.matti.orbitalchal.RouteEnumerator.Visitor)}.
+	 */
+	@Test
+	public void testAllRoutes() {
+		Network net = TestConstellations.patch(16, 12, 30, 300, 600);
+		net.init();
+		final VisibilityGraph graph = net.getGraph();
+		for(int end = 1; end < graph.size(); end++) {
+			Set<String> expected = new HashSet<String>();
+			walk(graph, 0, end, new boolean[graph.size()], "0", 0, Integer.MAX_VALUE, expected);
+
+			final Set<String> routes = new HashSet<String>();
+			RouteEnumerator enumerator = new RouteEnumerator(graph, 0, end);
+			int count = enumerator.enumerate(new RouteEnumerator.Visitor() {
+				public boolean visit(RouteEnumerator.Step route) {
+					int[] track = route.getTrack();
+					double distance = 0;
+					for(int i=1; i < track.length; i++)
+						distance += graph.weight(graph.findEdge(track[i-1], track[i]));
+					assertEquals(distance, route.getDistance(), 1e-9);
+					assertEquals(track.length - 1, route.getHops());
+					assertTrue(routes.add(RouteEnumeratorTest.toString(track)));
+					return true;
+				}
+			});
+			assertEquals(expected.size(), count);
+			assertEquals(expected, routes);
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.RouteEnumerator#setMaxHops(int)}.
+	 */
+	@Test
+	public void testBounds() {
+		Network net = TestConstellations.patch(17, 14, 30, 300, 600);
+		net.init();
+		VisibilityGraph graph = net.getGraph();
+		int end = graph.size() - 1;
+		for(int maxHops = 1; maxHops < 6; maxHops++) {
+			Set<String> expected = new HashSet<String>();
+			walk(graph, 0, end, new boolean[graph.size()], "0", 0, maxHops, expected);
+			RouteEnumerator enumerator = new RouteEnumerator(graph, 0, end);
+			enumerator.setMaxHops(maxHops);
+			final int limit = maxHops;
+			int count = enumerator.enumerate(new RouteEnumerator.Visitor() {
+				public boolean visit(RouteEnumerator.Step route) {
+					assertTrue(route.getHops() <= limit);
+					return true;
+				}
+			});
+			assertEquals(expected.size(), count);
+		}
+
+		RouteEnumerator enumerator = new RouteEnumerator(graph, 0, end);
+		enumerator.setMaxDistance(graph.getDistance(0, end) * 1.5);
+		final double maxDistance = enumerator.getMaxDistance();
+		enumerator.enumerate(new RouteEnumerator.Visitor() {
+			public boolean visit(RouteEnumerator.Step route) {
+				assertTrue(route.getDistance() <= maxDistance);
+				return true;
+			}
+		});
+
+		// the visitor can stop the walk after the first N
+		enumerator = new RouteEnumerator(graph, 0, end);
+		final int[] seen = new int[1];
+		int count = enumerator.enumerate(new RouteEnumerator.Visitor() {
+			public boolean visit(RouteEnumerator.Step route) {
+				return ++seen[0] < 5;
+			}
+		});
+		assertEquals(5, count);
+	}
+}
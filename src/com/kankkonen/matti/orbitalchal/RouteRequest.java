@@ -0,0 +1,41 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+/**
+ * RouteRequest is one query for the batch routing of a
+ * NetworkSnapshot: from ground point A to ground point B.
+ */
+public class RouteRequest {
+
+	private double latitudeA;
+	private double longitudeA;
+	private double latitudeB;
+	private double longitudeB;
+
+	public RouteRequest(double latitudeA, double longitudeA, double latitudeB, double longitudeB) {
+		this.latitudeA = latitudeA;
+		this.longitudeA = longitudeA;
+		this.latitudeB = latitudeB;
+		this.longitudeB = longitudeB;
+	}
+
+	public double getLatitudeA() {
+		return latitudeA;
+	}
+
+	public double getLongitudeA() {
+		return longitudeA;
+	}
+
+	public double getLatitudeB() {
+		return latitudeB;
+	}
+
+	public double getLongitudeB() {
+		return longitudeB;
+	}
+}
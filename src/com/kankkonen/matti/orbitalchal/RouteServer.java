@@ -0,0 +1,539 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * RouteServer keeps a NetworkSnapshot in memory and answers route
+ * queries over HTTP on localhost, so a query doesn't have to start a
+ * JVM and read the satellites every time.
+ *
+ *   GET  /route?a=lat,lon&b=lat,lon   the route from A to B as JSON
+ *   POST /constellation                switch to the scenario in the body
+ *   POST /constellation?snapshot=file  switch to a snapshot file
+ *   POST /constellation?scenario=file  switch to a scenario file
+ *   GET  /metrics                      the Metrics, one per line
+ *
+ * Anything that can connect to the port can use the server, so the
+ * files named in a request are only read after setFileLoading(true).
+ * A web page open in a browser on the same machine can post a form to
+ * localhost too, so /constellation doesn't take a request with an 
+ * Origin header or a form or plain text body. The scenario in the body
+ * can be at most getMaxBodySize() bytes.
+ *
+ * Every request gets an answer, a failure the handler doesn't expect
+ * is a 500.
+ *
+ * Every request runs in a thread of its own, a virtual thread when
+ * the JVM has them (Java 21 and later) and a pooled thread otherwise.
+ * The request threads don't search themselves. They put the query in
+ * a queue and wait. One batcher thread takes everything that is in
+ * the queue at once and routes the whole batch in parallel against
+ * the same snapshot, so under load the queries are handled in big
+ * batches and when it's quiet a query is handled right away.
+ *
+ * The queue has a fixed size. When it's full the server is
+ * overloaded and the query is refused right away with 503 instead
+ * of making everybody wait longer.
+ *
+ * Switching the constellation builds the new snapshot while the old
+ * one keeps answering, then swaps it in. A batch is always routed
+ * with one snapshot from start to end. Only one constellation is
+ * loaded at a time, each one can take a big body and all the cpus
+ * for a while. A POST /constellation that comes during a load gets
+ * 503 right away.
+ */
+public class RouteServer {
+
+	public final static int DEFAULT_QUEUE_SIZE = 4096;
+	public final static int DEFAULT_BATCH_SIZE = 1024;
+	public final static int DEFAULT_MAX_BODY_SIZE = 16 * 1024 * 1024;
+	/* how long a request waits for its route before giving up */
+	private final static long TIMEOUT_MILLIS = 10000;
+
+	private final static Metrics.Histogram BATCH_SIZE = Metrics.getDefault().histogram("server.batch.size");
+	private final static Metrics.Histogram REQUEST_NANOS = Metrics.getDefault().histogram("server.request.nanos");
+	private final static Metrics.Counter REJECTED = Metrics.getDefault().counter("server.rejected");
+
+	private volatile NetworkSnapshot snapshot;
+	private HttpServer server;
+	private ExecutorService requestExecutor;
+	private ForkJoinPool workers;
+	private BlockingQueue<Query> queue;
+	private int batchSize;
+	private Thread batcher;
+	private volatile boolean running = false;
+	private volatile boolean fileLoading = false;
+	private volatile int maxBodySize = DEFAULT_MAX_BODY_SIZE;
+	/* held while a constellation is loaded and swapped in */
+	final Semaphore loading = new Semaphore(1);
+
+	/**
+	 * @param snapshot to route with
+	 * @param port on localhost, 0 for any free port
+	 */
+	public RouteServer(NetworkSnapshot snapshot, int port) throws IOException {
+		this(snapshot, port, DEFAULT_QUEUE_SIZE, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param snapshot to route with
+	 * @param port on localhost, 0 for any free port
+	 * @param queueSize the most queries waiting, the rest get 503
+	 * @param batchSize the most queries routed in one batch
+	 */
+	public RouteServer(NetworkSnapshot snapshot, int port, int queueSize, int batchSize) throws IOException {
+		this.snapshot = snapshot;
+		this.batchSize = batchSize;
+		queue = new ArrayBlockingQueue<Query>(queueSize);
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), queueSize);
+		server.createContext("/route", new Handler() {
+			void serve(HttpExchange exchange) throws IOException {
+				handleRoute(exchange);
+			}
+		});
+		server.createContext("/constellation", new Handler() {
+			void serve(HttpExchange exchange) throws IOException {
+				handleConstellation(exchange);
+			}
+		});
+		server.createContext("/metrics", new Handler() {
+			void serve(HttpExchange exchange) throws IOException {
+				send(exchange, 200, "text/plain", Metrics.getDefault().toString());
+			}
+		});
+	}
+
+	/**
+	 * Start answering
+	 */
+	public void start() {
+		requestExecutor = createRequestExecutor();
+		workers = new ForkJoinPool();
+		running = true;
+		batcher = new Thread(new Runnable() {
+			public void run() {
+				batches();
+			}
+		}, "RouteServer batcher");
+		batcher.setDaemon(true);
+		batcher.start();
+		server.setExecutor(requestExecutor);
+		server.start();
+	}
+
+	/**
+	 * Stop answering, the queries still in the queue get 503
+	 */
+	public void stop() {
+		running = false;
+		server.stop(0);
+		batcher.interrupt();
+		try {
+			batcher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		requestExecutor.shutdown();
+		workers.shutdown();
+	}
+
+	/**
+	 * @return the port the server listens to
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public NetworkSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Switch to another constellation, the batches already started
+	 * finish with the old one
+	 */
+	public void setSnapshot(NetworkSnapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	/**
+	 * Let POST /constellation read the snapshot and scenario files named
+	 * in the request. Off by default, then only a scenario in the body
+	 * is taken.
+	 * @param fileLoading true to read the files
+	 */
+	public void setFileLoading(boolean fileLoading) {
+		this.fileLoading = fileLoading;
+	}
+
+	public boolean isFileLoading() {
+		return fileLoading;
+	}
+
+	/**
+	 * @param maxBodySize the biggest scenario in bytes POST /constellation
+	 * takes in the body, a bigger one gets 413
+	 */
+	public void setMaxBodySize(int maxBodySize) {
+		this.maxBodySize = maxBodySize;
+	}
+
+	public int getMaxBodySize() {
+		return maxBodySize;
+	}
+
+	/**
+	 * A thread per request, virtual if the JVM has them. Looked up
+	 * by reflection so that the code still compiles and runs on the
+	 * older JVMs.
+	 */
+	static ExecutorService createRequestExecutor() {
+		try {
+			return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * The batcher thread, route whatever is in the queue
+	 */
+	private void batches() {
+		List<Query> batch = new ArrayList<Query>(batchSize);
+		List<RouteRequest> requests = new ArrayList<RouteRequest>(batchSize);
+		while(running) {
+			try {
+				Query first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if(first == null)
+					continue;
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				for(Query query : batch)
+					requests.add(query.request);
+				BATCH_SIZE.record(batch.size());
+
+				List<Route> routes = snapshot.route(requests, workers);
+				for(int i=0; i < batch.size(); i++)
+					batch.get(i).result.complete(routes.get(i));
+			} catch (InterruptedException e) {
+				break;
+			} catch (RuntimeException e) {
+				for(Query query : batch)
+					query.result.completeExceptionally(e);
+			}
+			batch.clear();
+			requests.clear();
+		}
+		for(Query query : batch)
+			query.result.cancel(false);
+		Query query;
+		while((query = queue.poll()) != null)
+			query.result.cancel(false);
+	}
+
+	private void handleRoute(HttpExchange exchange) throws IOException {
+		long started = System.nanoTime();
+		RouteRequest request;
+		try {
+			String query = exchange.getRequestURI().getRawQuery();
+			double[] a = parsePoint(parameter(query, "a"));
+			double[] b = parsePoint(parameter(query, "b"));
+			request = new RouteRequest(a[0], a[1], b[0], b[1]);
+		} catch (IllegalArgumentException e) {
+			send(exchange, 400, "text/plain", e.getMessage() + "\n");
+			return;
+		}
+
+		Query query = new Query(request);
+		if(running == false || queue.offer(query) == false) {
+			REJECTED.increment();
+			exchange.getResponseHeaders().set("Retry-After", "1");
+			send(exchange, 503, "text/plain", "Overloaded\n");
+			return;
+		}
+		Route route;
+		try {
+			route = query.result.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			send(exchange, 503, "text/plain", "Interrupted\n");
+			return;
+		} catch (TimeoutException e) {
+			REJECTED.increment();
+			send(exchange, 503, "text/plain", "Timed out\n");
+			return;
+		} catch (ExecutionException e) {
+			send(exchange, 500, "text/plain", e.getCause() + "\n");
+			return;
+		} catch (RuntimeException e) {
+			// cancelled when the server stops
+			send(exchange, 503, "text/plain", "Stopped\n");
+			return;
+		}
+		send(exchange, 200, "application/json", toJson(route));
+		REQUEST_NANOS.record(System.nanoTime() - started);
+	}
+
+	private void handleConstellation(HttpExchange exchange) throws IOException {
+		if("POST".equals(exchange.getRequestMethod()) == false) {
+			send(exchange, 405, "text/plain", "Use POST\n");
+			return;
+		}
+		if(crossSite(exchange)) {
+			send(exchange, 403, "text/plain", "Cross-site requests are not taken\n");
+			return;
+		}
+		try {
+			String query = exchange.getRequestURI().getRawQuery();
+			String snapshotFile = parameter(query, "snapshot", null);
+			String scenarioFile = parameter(query, "scenario", null);
+			if((snapshotFile != null || scenarioFile != null) && fileLoading == false) {
+				send(exchange, 403, "text/plain", "Loading files is not enabled\n");
+				return;
+			}
+			if(loading.tryAcquire() == false) {
+				REJECTED.increment();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				send(exchange, 503, "text/plain", "Another constellation is being loaded\n");
+				return;
+			}
+			try {
+				NetworkSnapshot loaded;
+				if(snapshotFile != null)
+					loaded = NetworkSnapshot.open(new File(snapshotFile));
+				else if(scenarioFile != null)
+					loaded = constellation(ScenarioLoader.load(new File(scenarioFile)));
+				else {
+					byte[] body = readBody(exchange, maxBodySize);
+					if(body == null) {
+						send(exchange, 413, "text/plain", "The scenario is bigger than " + maxBodySize + " bytes\n");
+						return;
+					}
+					loaded = constellation(ScenarioLoader.load(ByteBuffer.wrap(body)));
+				}
+				snapshot = loaded;
+				send(exchange, 200, "text/plain", "Loaded " + loaded.size() + " satellites\n");
+			} finally {
+				loading.release();
+			}
+		} catch (IOException e) {
+			send(exchange, 400, "text/plain", e.getMessage() + "\n");
+		} catch (IllegalArgumentException e) {
+			send(exchange, 400, "text/plain", e.getMessage() + "\n");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			send(exchange, 503, "text/plain", "Interrupted\n");
+		}
+	}
+
+	/**
+	 * A browser posts a form or plain text to another site without
+	 * asking first, with the page it came from in the Origin header.
+	 * Other clients don't need to do either.
+	 * @return true if the request could be from a web page
+	 */
+	static boolean crossSite(HttpExchange exchange) {
+		if(exchange.getRequestHeaders().getFirst("Origin") != null)
+			return true;
+		String type = exchange.getRequestHeaders().getFirst("Content-Type");
+		if(type == null)
+			return false;
+		int semicolon = type.indexOf(';');
+		if(semicolon >= 0)
+			type = type.substring(0, semicolon);
+		type = type.trim().toLowerCase(Locale.ROOT);
+		return type.equals("application/x-www-form-urlencoded") || type.equals("multipart/form-data") ||
+				type.equals("text/plain");
+	}
+
+	/**
+	 * The satellites of the scenario without its ROUTE, the ground
+	 * points come with the queries
+	 */
+	static NetworkSnapshot constellation(Scenario scenario) throws InterruptedException {
+		Network network = new Network();
+		for(Node node : scenario.getNetwork().getNodes()) {
+			if(node != scenario.getStart() && node != scenario.getEnd())
+				network.addNode(node);
+		}
+		network.initParallel();
+		return network.snapshot();
+	}
+
+	/**
+	 * @return the route as a JSON object
+	 */
+	static String toJson(Route route) {
+		StringBuilder json = new StringBuilder();
+		json.append("{\"found\":").append(route.isFound());
+		json.append(",\"hops\":").append(route.getHops());
+		json.append(",\"distance\":").append(route.getDistance());
+		json.append(",\"satellites\":[");
+		List<String> ids = route.getSatelliteIds();
+		for(int i=0; i < ids.size(); i++) {
+			if(i > 0)
+				json.append(',');
+			json.append('"');
+			String id = ids.get(i);
+			for(int c=0; c < id.length(); c++) {
+				char ch = id.charAt(c);
+				if(ch == '"' || ch == '\\')
+					json.append('\\').append(ch);
+				else if(ch < 0x20)
+					json.append(String.format("\\u%04x", (int)ch));
+				else
+					json.append(ch);
+			}
+			json.append('"');
+		}
+		json.append("]}\n");
+		return json.toString();
+	}
+
+	/**
+	 * @param value "lat,lon"
+	 * @return the latitude and longitude
+	 */
+	static double[] parsePoint(String value) {
+		int comma = value.indexOf(',');
+		if(comma < 0)
+			throw new IllegalArgumentException("Expected lat,lon: " + value);
+		double[] point = new double[2];
+		try {
+			point[0] = Double.parseDouble(value.substring(0, comma));
+			point[1] = Double.parseDouble(value.substring(comma + 1));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not a number: " + value);
+		}
+		if(Math.abs(point[0]) > 90 || Math.abs(point[1]) > 180)
+			throw new IllegalArgumentException("Out of range: " + value);
+		return point;
+	}
+
+	static String parameter(String query, String name) {
+		String value = parameter(query, name, null);
+		if(value == null)
+			throw new IllegalArgumentException("Missing " + name);
+		return value;
+	}
+
+	/**
+	 * @return the value of the query parameter or the default
+	 */
+	static String parameter(String query, String name, String defaultValue) {
+		if(query == null)
+			return defaultValue;
+		for(String pair : query.split("&")) {
+			int equals = pair.indexOf('=');
+			if(equals > 0 && pair.substring(0, equals).equals(name)) {
+				try {
+					return URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+		return defaultValue;
+	}
+
+	/**
+	 * @return the body or null if it's bigger than the limit, the rest
+	 * of it is not read then
+	 */
+	private static byte[] readBody(HttpExchange exchange, int limit) throws IOException {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if(length != null) {
+			try {
+				if(Long.parseLong(length.trim()) > limit)
+					return null;
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad Content-Length: " + length);
+			}
+		}
+		InputStream input = exchange.getRequestBody();
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[65536];
+		int count;
+		while((count = input.read(buffer)) > 0) {
+			if(body.size() + count > limit)
+				return null;
+			body.write(buffer, 0, count);
+		}
+		return body.toByteArray();
+	}
+
+	private static void send(HttpExchange exchange, int status, String type, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", type + "; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream output = exchange.getResponseBody();
+		try {
+			output.write(bytes);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Makes sure every request is answered and closed. If the handler
+	 * fails with an exception it doesn't expect before it has answered,
+	 * the answer is 500.
+	 */
+	private abstract static class Handler implements HttpHandler {
+		public void handle(HttpExchange exchange) throws IOException {
+			try {
+				serve(exchange);
+			} catch (RuntimeException e) {
+				if(exchange.getResponseCode() < 0)
+					send(exchange, 500, "text/plain", "Internal error\n");
+			} finally {
+				exchange.close();
+			}
+		}
+
+		abstract void serve(HttpExchange exchange) throws IOException;
+	}
+
+	/**
+	 * A route query waiting in the queue
+	 */
+	private static class Query {
+		private RouteRequest request;
+		private CompletableFuture<Route> result = new CompletableFuture<Route>();
+
+		Query(RouteRequest request) {
+			this.request = request;
+		}
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class RouteServerTest {
+
+	/* the status and the body of the response, a body is sent as text/csv
+	 unless the headers given as name, value pairs say otherwise */
+	private static String[] request(String method, String url, String body, String... headers) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection();
+		connection.setRequestMethod(method);
+		if(body != null)
+			connection.setRequestProperty("Content-Type", "text/csv");
+		for(int i=0; i + 1 < headers.length; i += 2)
+			connection.setRequestProperty(headers[i], headers[i + 1]);
+		if(body != null) {
+			connection.setDoOutput(true);
+			OutputStream output = connection.getOutputStream();
+			output.write(body.getBytes(StandardCharsets.UTF_8));
+			output.close();
+		}
+		int status = connection.getResponseCode();
+		InputStream input = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int count;
+		while((count = input.read(buffer)) > 0)
+			bytes.write(buffer, 0, count);
+		input.close();
+		return new String[] { Integer.toString(status), bytes.toString("UTF-8") };
+	}
+
+	/* HttpURLConnection doesn't send an Origin header, this does
+	 @return the status line of the response */
+	private static String requestFromPage(int port, String path, String body) throws IOException {
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			OutputStream output = socket.getOutputStream();
+			output.write(("POST " + path + " HTTP/1.1\r\nHost: localhost\r\n" +
+					"Origin: http://example.com\r\nContent-Type: text/csv\r\n" +
+					"Content-Length: " + bytes.length + "\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			output.write(bytes);
+			output.flush();
+			BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			return input.readLine();
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.RouteServer#start()}.
+	 */
+	@Test
+	public void testRoute() throws Exception {
+		Random random = new Random(17);
+		final NetworkSnapshot snapshot = TestConstellations.initialised(random, 500, 400, 800).snapshot();
+		RouteServer server = new RouteServer(snapshot, 0);
+		server.start();
+		try {
+			final String base = "http://localhost:" + server.getPort();
+			List<Callable<Void>> clients = new ArrayList<Callable<Void>>();
+			for(int i=0; i < 200; i++) {
+				final RouteRequest request = new RouteRequest(random.nextDouble() * 180 - 90,
+						random.nextDouble() * 360 - 180, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180);
+				clients.add(new Callable<Void>() {
+					public Void call() throws IOException {
+						String[] response = request("GET", base + "/route?a=" + request.getLatitudeA() + "," +
+								request.getLongitudeA() + "&b=" + request.getLatitudeB() + "," + request.getLongitudeB(), null);
+						assertEquals("200", response[0]);
+						assertEquals(RouteServer.toJson(snapshot.route(request)), response[1]);
+						return null;
+					}
+				});
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(32);
+			try {
+				for(Future<Void> future : executor.invokeAll(clients))
+					future.get();
+			} finally {
+				executor.shutdown();
+			}
+
+			assertEquals("400", request("GET", base + "/route?a=60,25", null)[0]);
+			assertEquals("400", request("GET", base + "/route?a=60,25&b=x,1", null)[0]);
+			assertTrue(request("GET", base + "/metrics", null)[1].contains("server.batch.size count="));
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.RouteServer#setSnapshot(NetworkSnapshot)}.
+	 */
+	@Test
+	public void testSwapConstellation() throws Exception {
+		RouteServer server = new RouteServer(TestConstellations.initialised(new Random(18), 10, 400, 800).snapshot(), 0);
+		server.start();
+		try {
+			String base = "http://localhost:" + server.getPort();
+			String scenario = "#SEED: 0.1\n" +
+					"SAT0,54.3002,25.998,700\n" +
+					"SAT1,35,-10,700\n" +
+					"ROUTE,60.192059,24.945831,51.5085300,-0.1257400\n";
+			String[] response = request("POST", base + "/constellation", scenario);
+			assertEquals("200", response[0]);
+			assertEquals("Loaded 2 satellites\n", response[1]);
+			assertEquals(2, server.getSnapshot().size());
+
+			response = request("GET", base + "/route?a=60.192059,24.945831&b=51.5085300,-0.1257400", null);
+			assertEquals("200", response[0]);
+			assertEquals("{\"found\":true,\"hops\":2,\"distance\":" +
+					server.getSnapshot().route(60.192059, 24.945831, 51.5085300, -0.1257400).getDistance() +
+					",\"satellites\":[\"SAT0\"]}\n", response[1]);
+
+			assertEquals("400", request("POST", base + "/constellation", "SAT0,x,1,2\n")[0]);
+			assertEquals(2, server.getSnapshot().size());
+			assertEquals("405", request("GET", base + "/constellation", null)[0]);
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.RouteServer#setFileLoading(boolean)}.
+	 * The files named in a request are read only when that's enabled,
+	 * requests a web page could make and too big scenarios are refused.
+	 */
+	@Test
+	public void testRefusedConstellations() throws Exception {
+		RouteServer server = new RouteServer(TestConstellations.initialised(new Random(20), 10, 400, 800).snapshot(), 0);
+		File file = File.createTempFile("network", ".snapshot");
+		server.start();
+		try {
+			String base = "http://localhost:" + server.getPort();
+			TestConstellations.initialised(new Random(21), 20, 400, 800).writeSnapshot(file);
+			String url = base + "/constellation?snapshot=" + URLEncoder.encode(file.getPath(), "UTF-8");
+			assertFalse(server.isFileLoading());
+			assertEquals("403", request("POST", url, null)[0]);
+			assertEquals(10, server.getSnapshot().size());
+			server.setFileLoading(true);
+			assertEquals("200", request("POST", url, null)[0]);
+			assertEquals(20, server.getSnapshot().size());
+
+			String scenario = "SAT0,54.3002,25.998,700\nSAT1,35,-10,700\n";
+			assertEquals("403", request("POST", base + "/constellation", scenario, "Content-Type", "text/plain")[0]);
+			assertEquals("403", request("POST", base + "/constellation", scenario,
+					"Content-Type", "application/x-www-form-urlencoded; charset=UTF-8")[0]);
+			assertTrue(requestFromPage(server.getPort(), "/constellation", scenario).contains(" 403 "));
+			assertEquals(20, server.getSnapshot().size());
+
+			server.setMaxBodySize(scenario.length() - 1);
+			assertEquals("413", request("POST", base + "/constellation", scenario)[0]);
+			assertEquals(20, server.getSnapshot().size());
+			server.setMaxBodySize(scenario.length());
+			assertEquals("200", request("POST", base + "/constellation", scenario)[0]);
+			assertEquals(2, server.getSnapshot().size());
+		} finally {
+			server.stop();
+			file.delete();
+		}
+	}
+
+	/**
+	 * When the queue is full the queries are refused, not queued.
+	 * The first batch waits until a query has been refused, so there
+	 * is always a full queue.
+	 */
+	@Test
+	public void testOverload() throws Exception {
+		final CountDownLatch refusedOne = new CountDownLatch(1);
+		NetworkSnapshot held = new NetworkSnapshot(TestConstellations.initialised(new Random(19), 2000, 400, 800)) {
+			@Override
+			public List<Route> route(List<RouteRequest> requests, Executor executor) throws InterruptedException {
+				refusedOne.await(10, TimeUnit.SECONDS);
+				return super.route(requests, executor);
+			}
+		};
+		RouteServer server = new RouteServer(held, 0, 1, 1);
+		assertEquals("{\"found\":false,\"hops\":0,\"distance\":0.0,\"satellites\":[]}\n",
+				RouteServer.toJson(TestConstellations.initialised(new Random(19), 1, 400, 800).snapshot().route(0, 0, 0, 90)));
+		long rejected = Metrics.getDefault().counter("server.rejected").get();
+		server.start();
+		try {
+			final String base = "http://localhost:" + server.getPort();
+			List<Callable<String>> clients = new ArrayList<Callable<String>>();
+			for(int i=0; i < 200; i++) {
+				clients.add(new Callable<String>() {
+					public String call() throws IOException {
+						String status = request("GET", base + "/route?a=60,25&b=-35,150", null)[0];
+						if(status.equals("503"))
+							refusedOne.countDown();
+						return status;
+					}
+				});
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(64);
+			int ok = 0;
+			int refused = 0;
+			try {
+				for(Future<String> future : executor.invokeAll(clients)) {
+					if(future.get().equals("200"))
+						ok++;
+					else if(future.get().equals("503"))
+						refused++;
+				}
+			} finally {
+				executor.shutdown();
+			}
+			assertEquals(200, ok + refused);
+			assertTrue(ok > 0);
+			assertTrue(refused > 0);
+			assertEquals(rejected + refused, Metrics.getDefault().counter("server.rejected").get());
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.RouteServer#start()}.
+	 * While a constellation is being loaded another POST /constellation
+	 * is refused with 503 and the routes are still answered.
+	 */
+	@Test
+	public void testOneLoadAtATime() throws Exception {
+		RouteServer server = new RouteServer(TestConstellations.initialised(new Random(31), 10, 400, 800).snapshot(), 0);
+		long rejected = Metrics.getDefault().counter("server.rejected").get();
+		server.start();
+		try {
+			final String base = "http://localhost:" + server.getPort();
+			final String scenario = "SAT0,54.3002,25.998,700\n" +
+					"SAT1,35,-10,700\n" +
+					"ROUTE,60.192059,24.945831,51.5085300,-0.1257400\n";
+			// as if another request were loading
+			assertTrue(server.loading.tryAcquire());
+			String[] response = request("POST", base + "/constellation", scenario);
+			assertEquals("503", response[0]);
+			assertEquals(10, server.getSnapshot().size());
+			assertEquals(rejected + 1, Metrics.getDefault().counter("server.rejected").get());
+			assertEquals("200", request("GET", base + "/route?a=60,25&b=51,0", null)[0]);
+			server.loading.release();
+			assertEquals("200", request("POST", base + "/constellation", scenario)[0]);
+			assertEquals(2, server.getSnapshot().size());
+
+			// many at once, each is either loaded or refused and the
+			// permit is free again afterwards
+			List<Callable<String>> clients = new ArrayList<Callable<String>>();
+			for(int i=0; i < 16; i++) {
+				clients.add(new Callable<String>() {
+					public String call() throws IOException {
+						return request("POST", base + "/constellation", scenario)[0];
+					}
+				});
+			}
+			ExecutorService executor = Executors.newFixedThreadPool(16);
+			try {
+				for(Future<String> future : executor.invokeAll(clients))
+					assertTrue(future.get(), future.get().equals("200") || future.get().equals("503"));
+			} finally {
+				executor.shutdown();
+			}
+			assertEquals(1, server.loading.availablePermits());
+		} finally {
+			server.stop();
+		}
+	}
+}
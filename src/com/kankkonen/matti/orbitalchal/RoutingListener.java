@@ -0,0 +1,82 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.List;
+
+/**
+ * RoutingListener gets told what the Network and the PathFinder are
+ * doing, e.g. for printing it all out when debugging.
+ *
+ * All the methods do nothing by default, so a listener only needs to
+ * implement what it's interested in. When nothing is listening the
+ * NONE listener is used. Its methods are empty, so the JIT inlines
+ * them to nothing and the loops calling them don't pay anything for
+ * the events, not even for building the strings to print.
+ *
+ * ConsoleRoutingListener prints the events like the Network and
+ * PathFinder used to print them.
+ */
+public interface RoutingListener {
+
+	/**
+	 * The listener that does nothing
+	 */
+	RoutingListener NONE = new RoutingListener() {
+	};
+
+	/**
+	 * Network.init is checking what the node can see
+	 * @param node being checked
+	 */
+	default void initNode(Node node) {
+	}
+
+	/**
+	 * The node can see the neighbour, this is told for both
+	 * directions of the pair separately
+	 * @param node that got a new neighbour
+	 * @param neighbour the node it can see
+	 */
+	default void neighbourAdded(Node node, Node neighbour) {
+	}
+
+	/**
+	 * A branch of the ENUMERATE search took a step
+	 * @param path id of the branch
+	 * @param node where the branch is now
+	 */
+	default void pathStep(int path, Node node) {
+	}
+
+	/**
+	 * A branch of the ENUMERATE search came to its end
+	 * @param path id of the branch
+	 * @param found true if the end was reached, false if it
+	 * was a dead end
+	 */
+	default void pathEnded(int path, boolean found) {
+	}
+
+	/**
+	 * A path to the end, one of the candidates for the best path
+	 * @param path id of the path
+	 * @param track the nodes from start to end
+	 * @param length the sum of "distances" in degrees
+	 */
+	default void pathCandidate(int path, List<Node> track, double length) {
+	}
+
+	/**
+	 * The search found the best path
+	 * @param start Node of the path
+	 * @param end Node of the path
+	 * @param track the nodes from start to end
+	 * @param length the sum of "distances" in degrees
+	 */
+	default void bestPath(Node start, Node end, List<Node> track, double length) {
+	}
+}
@@ -0,0 +1,51 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+/**
+ * Scenario is what a scenario file holds: the network of
+ * satellites and the ground stations A and B of the route
+ * to find. A and B are nodes of the network.
+ */
+public class Scenario {
+
+	private Network network;
+	private Node start;
+	private Node end;
+
+	/**
+	 * @param network with all the nodes
+	 * @param start ground station A or null if there was no route
+	 * @param end ground station B or null if there was no route
+	 */
+	public Scenario(Network network, Node start, Node end) {
+		this.network = network;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return the network, not initialised yet
+	 */
+	public Network getNetwork() {
+		return network;
+	}
+
+	public Node getStart() {
+		return start;
+	}
+
+	public Node getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return true if the file had a ROUTE line
+	 */
+	public boolean hasRoute() {
+		return start != null && end != null;
+	}
+}
@@ -0,0 +1,36 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.io.IOException;
+
+/**
+ * ScenarioFormatException tells that a scenario file couldn't be
+ * read because something in it isn't what it should be. The line
+ * where the problem is is in the message and in getLine.
+ */
+public class ScenarioFormatException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	private int line;
+
+	/**
+	 * @param message what's wrong
+	 * @param line number of the line, the first line is 1
+	 */
+	public ScenarioFormatException(String message, int line) {
+		super("Line " + line + ": " + message);
+		this.line = line;
+	}
+
+	/**
+	 * @return number of the line with the problem, the first line is 1
+	 */
+	public int getLine() {
+		return line;
+	}
+}
@@ -0,0 +1,336 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ScenarioLoader reads a scenario file into a Network. The file
+ * looks like this:
+ *
+ *   #SEED: 0.059573409147560596
+ *   SAT0,73.10773137485427,-14.002506865498702,568.5476617114575
+ *   SAT1,-14.170309360954263,86.96531474208223,342.05393796147456
+ *   ROUTE,60.192059,24.945831,51.5085300,-0.1257400
+ *
+ * The SAT lines are satellites with latitude, longitude and altitude,
+ * the ROUTE line has the latitude and longitude of ground stations
+ * A and B. Lines starting with # are comments.
+ *
+ * The scenario files can be hundreds of megabytes, so instead of a
+ * Scanner the file is memory mapped and read byte by byte. The
+ * numbers are parsed straight from the bytes without making a String
+ * of them, only the ids of the satellites become Strings.
+ *
+ * Numbers with up to 15 or 16 digits are exactly a long and a power
+ * of ten, in which case one multiplication or division gives the same
+ * double as Double.parseDouble does. Numbers with 17 or 18 digits
+ * after the decimal point, which is what Double.toString often
+ * writes, are divided a bit more carefully. Whatever is left is
+ * handed to Double.parseDouble.
+ */
+public class ScenarioLoader {
+
+	/* The biggest integer a double holds exactly */
+	private final static long MAX_EXACT_MANTISSA = 1L << 53;
+	/* Powers of ten a double holds exactly */
+	private final static double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+	/* More digits than this might not fit in a long */
+	private final static int MAX_DIGITS = 18;
+	/* Splits a double to two halves of 26 bits for Dekker's product */
+	private final static double SPLIT = 0x1p27 + 1;
+
+	private ByteBuffer buffer;
+	private int position;
+	private int limit;
+	private int line = 1;
+	private byte[] scratch = new byte[64];
+
+	private Network network = new Network();
+	private Node start = null;
+	private Node end = null;
+
+	private ScenarioLoader(ByteBuffer buffer) {
+		this.buffer = buffer;
+		this.position = buffer.position();
+		this.limit = buffer.limit();
+	}
+
+	/**
+	 * Read a scenario file
+	 * @param file to read
+	 * @return the network and the route of the file
+	 * @throws ScenarioFormatException if the file has errors
+	 * @throws IOException if the file can't be read
+	 */
+	public static Scenario load(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = input.getChannel();
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE)
+				throw new IOException("Scenario file is too big: " + file);
+			return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Read a scenario from the bytes between the position and the
+	 * limit of the buffer, the buffer itself isn't changed
+	 * @param buffer with the contents of a scenario file
+	 * @return the network and the route of the file
+	 * @throws ScenarioFormatException if the contents have errors
+	 */
+	public static Scenario load(ByteBuffer buffer) throws ScenarioFormatException {
+		ScenarioLoader loader = new ScenarioLoader(buffer);
+		loader.parse();
+		return new Scenario(loader.network, loader.start, loader.end);
+	}
+
+	private void parse() throws ScenarioFormatException {
+		while(position < limit) {
+			byte b = buffer.get(position);
+			if(b == '\n') {
+				position++;
+				line++;
+			} else if(isSpace(b)) {
+				position++;
+			} else if(b == '#') {
+				skipLine();
+			} else {
+				record();
+			}
+		}
+	}
+
+	/**
+	 * Read one SAT or ROUTE line
+	 */
+	private void record() throws ScenarioFormatException {
+		int keyStart = position;
+		while(position < limit && isSeparator(buffer.get(position)) == false)
+			position++;
+		int keyLength = position - keyStart;
+
+		if(startsWith(keyStart, keyLength, "SAT")) {
+			String id = string(keyStart, keyLength);
+			double latitude = nextNumber();
+			double longitude = nextNumber();
+			double altitude = nextNumber();
+			network.addNode(new Node(id, latitude, longitude, altitude));
+		} else if(startsWith(keyStart, keyLength, "ROUTE")) {
+			if(start != null)
+				throw new ScenarioFormatException("More than one ROUTE", line);
+			double latitudeA = nextNumber();
+			double longitudeA = nextNumber();
+			double latitudeB = nextNumber();
+			double longitudeB = nextNumber();
+			start = new Node("A", latitudeA, longitudeA, 0);
+			end = new Node("B", latitudeB, longitudeB, 0);
+			network.addNode(start);
+			network.addNode(end);
+		} else {
+			throw new ScenarioFormatException("Unknown record \"" + string(keyStart, keyLength) + "\"", line);
+		}
+
+		skipSpaces();
+		if(position < limit && buffer.get(position) != '\n')
+			throw new ScenarioFormatException("Unexpected data after the record", line);
+	}
+
+	/**
+	 * Skip the comma between the values and parse the next value
+	 */
+	private double nextNumber() throws ScenarioFormatException {
+		skipSpaces();
+		if(position < limit && buffer.get(position) == ',') {
+			position++;
+			skipSpaces();
+		}
+		if(position >= limit || buffer.get(position) == '\n')
+			throw new ScenarioFormatException("Missing value", line);
+		return parseNumber();
+	}
+
+	/**
+	 * Parse a decimal number like -14.0025 or 1.5e-3 at the position
+	 */
+	private double parseNumber() throws ScenarioFormatException {
+		int numberStart = position;
+		boolean negative = false;
+		byte b = buffer.get(position);
+		if(b == '-' || b == '+') {
+			negative = b == '-';
+			position++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean anyDigits = false;
+		boolean exact = true;
+
+		while(position < limit && isDigit(b = buffer.get(position))) {
+			anyDigits = true;
+			if(digits < MAX_DIGITS) {
+				mantissa = mantissa * 10 + (b - '0');
+				if(mantissa != 0)
+					digits++;
+			} else {
+				// too many digits, Double.parseDouble has to do it
+				exact = false;
+				exponent++;
+			}
+			position++;
+		}
+		if(position < limit && buffer.get(position) == '.') {
+			position++;
+			while(position < limit && isDigit(b = buffer.get(position))) {
+				anyDigits = true;
+				if(digits < MAX_DIGITS) {
+					mantissa = mantissa * 10 + (b - '0');
+					if(mantissa != 0)
+						digits++;
+					exponent--;
+				} else {
+					exact = false;
+				}
+				position++;
+			}
+		}
+		if(anyDigits == false)
+			throw new ScenarioFormatException("Not a number", line);
+
+		if(position < limit && ((b = buffer.get(position)) == 'e' || b == 'E')) {
+			position++;
+			boolean negativeExponent = false;
+			if(position < limit && ((b = buffer.get(position)) == '-' || b == '+')) {
+				negativeExponent = b == '-';
+				position++;
+			}
+			int value = 0;
+			boolean exponentDigits = false;
+			while(position < limit && isDigit(b = buffer.get(position))) {
+				exponentDigits = true;
+				// anything this big is zero or infinity anyway
+				if(value < 100000)
+					value = value * 10 + (b - '0');
+				position++;
+			}
+			if(exponentDigits == false)
+				throw new ScenarioFormatException("Not a number", line);
+			exponent += negativeExponent ? -value : value;
+		}
+		if(position < limit && isSeparator(buffer.get(position)) == false)
+			throw new ScenarioFormatException("Not a number", line);
+
+		if(exact && mantissa <= MAX_EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+			double value = mantissa;
+			if(exponent < 0)
+				value /= POWERS_OF_TEN[-exponent];
+			else
+				value *= POWERS_OF_TEN[exponent];
+			return negative ? -value : value;
+		}
+		if(exact && exponent >= -22 && exponent < 0) {
+			double value = divide(mantissa, POWERS_OF_TEN[-exponent]);
+			if(Double.isNaN(value) == false)
+				return negative ? -value : value;
+		}
+		return Double.parseDouble(string(numberStart, position - numberStart));
+	}
+
+	/**
+	 * Divide a long with too many bits for a double by a power of ten.
+	 *
+	 * The long is split to a double and the small rest of it. The
+	 * first guess of the quotient is the double divided by the power,
+	 * the exact remainder of that division is calculated with Dekker's
+	 * exact product and what's left is added to the guess as a small
+	 * correction. The correction has a tiny error of its own, so if the
+	 * result is too close to halfway between two doubles to be sure
+	 * which way it should round, NaN is returned and Double.parseDouble
+	 * has to decide.
+	 * @return the correctly rounded quotient or NaN
+	 */
+	private static double divide(long mantissa, double power) {
+		double high = mantissa;
+		double low = mantissa - (long)high;
+		double quotient = high / power;
+
+		// quotient * power exactly as productHigh + productLow
+		double productHigh = quotient * power;
+		double a = SPLIT * quotient;
+		double quotientHigh = a - (a - quotient);
+		double quotientLow = quotient - quotientHigh;
+		double b = SPLIT * power;
+		double powerHigh = b - (b - power);
+		double powerLow = power - powerHigh;
+		double productLow = ((quotientHigh * powerHigh - productHigh) + quotientHigh * powerLow
+				+ quotientLow * powerHigh) + quotientLow * powerLow;
+
+		double remainder = (high - productHigh) - productLow;
+		double correction = (remainder + low) / power;
+		double value = quotient + correction;
+		double tail = correction - (value - quotient);
+
+		double half = Math.ulp(value) / 2;
+		double error = Math.abs(correction) * 0x1p-48;
+		if(Math.abs(tail) + error >= half || value == Math.scalb(1.0, Math.getExponent(value)))
+			return Double.NaN;
+		return value;
+	}
+
+	private void skipLine() {
+		while(position < limit && buffer.get(position) != '\n')
+			position++;
+	}
+
+	private void skipSpaces() {
+		while(position < limit && isSpace(buffer.get(position)))
+			position++;
+	}
+
+	private boolean startsWith(int offset, int length, String prefix) {
+		if(length < prefix.length())
+			return false;
+		for(int i=0; i < prefix.length(); i++) {
+			if(buffer.get(offset + i) != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private String string(int offset, int length) {
+		if(scratch.length < length)
+			scratch = new byte[length];
+		for(int i=0; i < length; i++)
+			scratch[i] = buffer.get(offset + i);
+		return new String(scratch, 0, length, StandardCharsets.US_ASCII);
+	}
+
+	private static boolean isDigit(byte b) {
+		return b >= '0' && b <= '9';
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ',' || b == '\n' || isSpace(b);
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class ScenarioLoaderTest {
+
+	private final static String SCENARIO =
+			"#SEED: 0.059573409147560596\n" +
+			"SAT0,73.10773137485427,-14.002506865498702,568.5476617114575\n" +
+			"SAT1,-14.170309360954263,86.96531474208223,342.05393796147456\r\n" +
+			"\n" +
+			"SAT2, 53.51054232867591, -61.483275340932124, 611.8696175821457\n" +
+			"ROUTE,60.192059,24.945831,51.5085300,-0.1257400";
+
+	private static Scenario load(String contents) throws ScenarioFormatException {
+		return ScenarioLoader.load(ByteBuffer.wrap(contents.getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.ScenarioLoader#load(java.nio.ByteBuffer)}.
+	 */
+	@Test
+	public void testLoad() throws IOException {
+		Scenario scenario = load(SCENARIO);
+		List<Node> nodes = scenario.getNetwork().getNodes();
+		assertEquals(5, nodes.size());
+		assertEquals("SAT1", nodes.get(1).getId());
+		assertEquals(-14.170309360954263, nodes.get(1).getLatitude(), 0);
+		assertEquals(86.96531474208223, nodes.get(1).getLongitude(), 0);
+		assertEquals(342.05393796147456, nodes.get(1).getAltitude(), 0);
+		assertEquals(-61.483275340932124, nodes.get(2).getLongitude(), 0);
+
+		assertTrue(scenario.hasRoute());
+		assertSame(scenario.getStart(), nodes.get(3));
+		assertEquals(60.192059, scenario.getStart().getLatitude(), 0);
+		assertEquals(-0.12574, scenario.getEnd().getLongitude(), 0);
+		assertEquals(0, scenario.getEnd().getAltitude(), 0);
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.ScenarioLoader#load(java.io.File)}.
+	 */
+	@Test
+	public void testLoadFile() throws IOException {
+		File file = File.createTempFile("scenario", ".csv");
+		try {
+			FileOutputStream output = new FileOutputStream(file);
+			output.write(SCENARIO.getBytes(StandardCharsets.US_ASCII));
+			output.close();
+
+			Scenario scenario = ScenarioLoader.load(file);
+			assertEquals(5, scenario.getNetwork().getNodes().size());
+			assertEquals("SAT2", scenario.getNetwork().getNodes().get(2).getId());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * The numbers should come out exactly as Double.parseDouble
+	 * gives them
+	 */
+	@Test
+	public void testNumbers() throws IOException {
+		Random random = new Random(3);
+		String[] samples = { "0", "-0.0", "+1.5", "1e3", "2.5E-3", "12345678901234567890.5",
+				"0.000000000000000000000001", "9007199254740993", "1.7976931348623157e308",
+				"4.9e-324", "123456789012345678901234567890e-10", "7." };
+		StringBuilder builder = new StringBuilder();
+		for(int i=0; i < samples.length; i++)
+			builder.append("SAT").append(i).append(',').append(samples[i]).append(",0,0\n");
+		for(int i=0; i < 1000; i++) {
+			double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+			builder.append("SATR").append(i).append(',').append(value).append(",0,0\n");
+		}
+
+		List<Node> nodes = load(builder.toString()).getNetwork().getNodes();
+		String[] lines = builder.toString().split("\n");
+		for(int i=0; i < lines.length; i++) {
+			double expected = Double.parseDouble(lines[i].split(",")[1]);
+			assertEquals(lines[i], Double.doubleToLongBits(expected),
+					Double.doubleToLongBits(nodes.get(i).getLatitude()));
+		}
+	}
+
+	/**
+	 * The errors should tell on which line they are
+	 */
+	@Test
+	public void testErrors() {
+		assertError("SAT0,1,2,3\nSAT1,1,2\n", 2);
+		assertError("SAT0,1,2,3\n\n#comment\nSAT1,1,x,3\n", 4);
+		assertError("SAT0,1,2,3,4\n", 1);
+		assertError("SAT0,1,2,3\nFOO,1,2\n", 2);
+		assertError("SAT0,1.2.3,2,3\n", 1);
+		assertError("SAT0,1e,2,3\n", 1);
+		assertError("ROUTE,1,2,3,4\nROUTE,1,2,3,4\n", 2);
+	}
+
+	private static void assertError(String contents, int line) {
+		try {
+			load(contents);
+			fail("No error in " + contents);
+		} catch (ScenarioFormatException e) {
+			assertEquals(line, e.getLine());
+			assertTrue(e.getMessage().startsWith("Line " + line + ":"));
+		}
+	}
+}
@@ -0,0 +1,214 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Arrays;
+
+/**
+ * SearchContext is the working memory of PathSearch: the cost of each
+ * node, the node the search came from and the queues. On a big graph
+ * allocating and filling those for every query takes longer than the
+ * search itself, which only touches the nodes around the route, and
+ * at a high query rate it's all garbage a moment later. A context is
+ * kept for each thread instead and used again by the next search.
+ *
+ * The arrays are not filled again for a new search. Each entry has the
+ * generation of the search that wrote it and an entry of an older
+ * generation is the same as no entry, so starting a search is just
+ * counting the generation up. The queues are emptied as they go, only
+ * the nodes left in them are cleared.
+ *
+ * The nodes the search starts from and ends at are kept here too, so
+ * their arrays don't need to grow again for each search either.
+ *
+ * The arrays grow to the biggest graph the context has been used for.
+ * A context is for one search at a time, forThread gives each thread
+ * its own.
+ */
+public class SearchContext {
+
+	private final static ThreadLocal<SearchContext> CONTEXTS = new ThreadLocal<SearchContext>() {
+		@Override
+		protected SearchContext initialValue() {
+			return new SearchContext();
+		}
+	};
+
+	private int capacity = 0;
+	private int generation = 0;
+	private Labels forward = new Labels();
+	private Labels backward = new Labels();
+	private Labels targetCosts = new Labels();
+	private Ends sources = new Ends();
+	private Ends targets = new Ends();
+
+	/**
+	 * @return the context of the current thread
+	 */
+	public static SearchContext forThread() {
+		return CONTEXTS.get();
+	}
+
+	/**
+	 * Start a new search, what the last one left behind is forgotten
+	 * @param size the number of nodes in the graph
+	 */
+	void begin(int size) {
+		if(size > capacity) {
+			capacity = Math.max(size, capacity + (capacity >> 1));
+			forward.resize();
+			backward.resize();
+			targetCosts.resize();
+		}
+		forward.clearQueue();
+		backward.clearQueue();
+		if(++generation == Integer.MAX_VALUE) {
+			forward.resetStamps();
+			backward.resetStamps();
+			targetCosts.resetStamps();
+			generation = 1;
+		}
+	}
+
+	/**
+	 * @return the number of nodes the arrays have room for
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the labels of the search from A
+	 */
+	Labels forward() {
+		return forward;
+	}
+
+	/**
+	 * @return the labels of the search from B
+	 */
+	Labels backward() {
+		return backward;
+	}
+
+	/**
+	 * @return the cost from each target node to B
+	 */
+	Labels targetCosts() {
+		return targetCosts;
+	}
+
+	Ends sources() {
+		return sources;
+	}
+
+	Ends targets() {
+		return targets;
+	}
+
+	/**
+	 * The cost of each node and where it was reached from,
+	 * with a queue. The arrays are made when first needed.
+	 */
+	class Labels {
+		private double[] costs = null;
+		private int[] links;
+		private int[] stamps;
+		private NodeHeap queue = null;
+
+		private void resize() {
+			costs = null;
+			queue = null;
+		}
+
+		private void resetStamps() {
+			if(stamps != null)
+				Arrays.fill(stamps, 0);
+		}
+
+		private void clearQueue() {
+			if(queue != null)
+				queue.clear();
+		}
+
+		private void allocate() {
+			costs = new double[capacity];
+			links = new int[capacity];
+			stamps = new int[capacity];
+		}
+
+		/**
+		 * @return the cost of the node or infinity if it has none
+		 */
+		double cost(int node) {
+			if(costs == null || stamps[node] != generation)
+				return Double.POSITIVE_INFINITY;
+			return costs[node];
+		}
+
+		/**
+		 * @return the node the node was reached from or -1
+		 */
+		int link(int node) {
+			if(costs == null || stamps[node] != generation)
+				return -1;
+			return links[node];
+		}
+
+		void set(int node, double cost, int link) {
+			if(costs == null)
+				allocate();
+			costs[node] = cost;
+			links[node] = link;
+			stamps[node] = generation;
+		}
+
+		NodeHeap queue() {
+			if(queue == null)
+				queue = new NodeHeap(capacity);
+			return queue;
+		}
+	}
+
+	/**
+	 * The nodes the search starts from or ends at, with the hops
+	 * and "distance" from A or to B
+	 */
+	static class Ends {
+		int[] nodes = new int[4];
+		int[] hops = new int[4];
+		double[] distances = new double[4];
+		int count = 0;
+
+		void add(int node, int hop, double distance) {
+			if(count == nodes.length) {
+				nodes = Arrays.copyOf(nodes, count * 2);
+				hops = Arrays.copyOf(hops, count * 2);
+				distances = Arrays.copyOf(distances, count * 2);
+			}
+			nodes[count] = node;
+			hops[count] = hop;
+			distances[count++] = distance;
+		}
+
+		void clear() {
+			count = 0;
+		}
+
+		/**
+		 * @return the cheapest entry of the node
+		 */
+		int best(int node) {
+			int best = -1;
+			for(int i=0; i < count; i++) {
+				if(nodes[i] == node && (best < 0 ||
+						PathSearch.cost(hops[i], distances[i]) < PathSearch.cost(hops[best], distances[best])))
+					best = i;
+			}
+			return best;
+		}
+	}
+}
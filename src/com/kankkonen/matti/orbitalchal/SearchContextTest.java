@@ -0,0 +1,89 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class SearchContextTest {
+
+	/**
+	 * A context used again and again, also for graphs of different
+	 * sizes, should give the same paths as a new one every time
+	 */
+	@Test
+	public void testReuse() {
+		Random random = new Random(24);
+		VisibilityGraph small = TestConstellations.initialised(random, 200, 400, 800).getGraph();
+		VisibilityGraph big = TestConstellations.initialised(random, 1000, 400, 800).getGraph();
+		SearchContext context = new SearchContext();
+		PathSearch.Mode[] modes = PathSearch.Mode.values();
+
+		for(int i=0; i < 300; i++) {
+			VisibilityGraph graph = i % 3 == 0 ? small : big;
+			PathSearch.Mode mode = modes[i % modes.length];
+			int a = random.nextInt(graph.size());
+			int b = random.nextInt(graph.size());
+			PathSearch fresh = new PathSearch(graph, a, b, mode);
+			PathSearch reused = new PathSearch(graph, mode, context);
+			reused.addSource(a, 0, 0);
+			reused.addTarget(b, 0, 0);
+			reused.setGoal(b);
+			assertEquals(fresh.search(), reused.search());
+			assertArrayEquals(fresh.getTrack(), reused.getTrack());
+			assertEquals(fresh.getHops(), reused.getHops());
+			assertEquals(fresh.getPathLength(), reused.getPathLength(), 0);
+		}
+		assertEquals(1000, context.getCapacity());
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.SearchContext#forThread()}.
+	 * Once the context of the thread has grown a route query should
+	 * allocate only the route and a few small objects, nothing for
+	 * each node of the graph.
+	 */
+	@Test
+	public void testSteadyStateAllocation() {
+		// only some JVMs can tell what a thread has allocated
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(bean instanceof com.sun.management.ThreadMXBean == false)
+			return;
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)bean;
+		if(threads.isThreadAllocatedMemorySupported() == false)
+			return;
+		threads.setThreadAllocatedMemoryEnabled(true);
+
+		Random random = new Random(25);
+		Network net = TestConstellations.random(random, 3000, 400, 800);
+		net.init();
+		NetworkSnapshot snapshot = net.snapshot();
+		double[] points = new double[400];
+		for(int i=0; i < points.length; i += 2) {
+			points[i] = random.nextDouble() * 160 - 80;
+			points[i + 1] = random.nextDouble() * 360 - 180;
+		}
+
+		long thread = Thread.currentThread().getId();
+		long allocated = 0;
+		for(int round=0; round < 2; round++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			for(int i=0; i < points.length; i += 4)
+				snapshot.route(points[i], points[i + 1], points[i + 2], points[i + 3]);
+			allocated = threads.getThreadAllocatedBytes(thread) - before;
+		}
+		// the arrays for the nodes alone would be tens of kilobytes
+		assertTrue("allocated " + allocated, allocated / (points.length / 4) < 2000);
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * SearchEvent is recorded to Java Flight Recorder for every path
+ * search of PathSearch. The duration of the event is the search.
+ */
+@Name("com.kankkonen.matti.orbitalchal.Search")
+@Label("Path Search")
+@Category("Orbital Challenge")
+@Description("One PathSearch run")
+class SearchEvent extends jdk.jfr.Event {
+
+	@Label("Mode")
+	String mode;
+
+	@Label("Graph Nodes")
+	int nodes;
+
+	@Label("Expanded")
+	int expanded;
+
+	@Label("Queue Peak")
+	int queuePeak;
+
+	@Label("Found")
+	boolean found;
+
+	@Label("Hops")
+	int hops;
+}
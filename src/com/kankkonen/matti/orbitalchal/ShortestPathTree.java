@@ -0,0 +1,256 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Arrays;
+
+/**
+ * ShortestPathTree is a Dijkstra search from A that doesn't throw
+ * its work away. It settles the nodes in the order of their cost
+ * from A, only as far as has been asked, and keeps the cost and the
+ * node before each settled node. The route to any settled node is
+ * read from the tree without searching again, and when a node further
+ * away is asked for the search goes on from where it stopped.
+ *
+ * That's what picking the best of many ends needs, e.g. which of the
+ * ground gateways is best for a user terminal. One tree from the
+ * terminal settles the satellites around it once, instead of a new
+ * PathSearch exploring them again for each gateway.
+ *
+ * An end can be reached through many nodes, each with the hops and
+ * "distance" from the node to the end, like the targets of
+ * PathSearch. The best entry is known once the cheapest node still in
+ * the queue plus the cheapest entry can't beat it. Giving the entries
+ * of many ends at once finds the nearest of them.
+ *
+ * The graph is the same in both directions, so a tree grown from B
+ * gives the routes from many A's to B, the tracks just need to be
+ * turned around.
+ *
+ * The cost is the same as in PathSearch, so the routes are the same
+ * as PathSearch finds in DIJKSTRA mode. A tree is not for many
+ * threads at once.
+ */
+public class ShortestPathTree {
+
+	private final static Metrics.Counter SETTLED = Metrics.getDefault().counter("tree.settled");
+
+	private Adjacency graph;
+	private double[] cost;
+	private int[] previous;
+	/* the hops and "distance" of the source entry each root came from */
+	private int[] rootHops;
+	private double[] rootDistance;
+	private boolean[] settled;
+	private NodeHeap queue;
+	private int settledCount = 0;
+	/* the entries of reach at each node, chained through nextEntry */
+	private int[] entries = null;
+	private int[] nextEntry = new int[0];
+
+	/**
+	 * @param graph to search
+	 */
+	public ShortestPathTree(Adjacency graph) {
+		this.graph = graph;
+		int size = graph.size();
+		cost = new double[size];
+		previous = new int[size];
+		settled = new boolean[size];
+		rootHops = new int[size];
+		rootDistance = new double[size];
+		queue = new NodeHeap(size);
+		Arrays.fill(cost, Double.POSITIVE_INFINITY);
+		Arrays.fill(previous, -1);
+	}
+
+	/**
+	 * Start the tree from the node, before anything is settled
+	 * @param node index in the graph
+	 * @param hops it takes from A to the node
+	 * @param distance from A to the node in degrees
+	 */
+	public void addSource(int node, int hops, double distance) {
+		if(settledCount > 0)
+			throw new IllegalStateException("The tree has been grown already");
+		double sourceCost = PathSearch.cost(hops, distance);
+		if(sourceCost < cost[node]) {
+			cost[node] = sourceCost;
+			rootHops[node] = hops;
+			rootDistance[node] = distance;
+			queue.push(node, sourceCost);
+		}
+	}
+
+	/**
+	 * @return the graph the tree is in
+	 */
+	public Adjacency getGraph() {
+		return graph;
+	}
+
+	/**
+	 * Settle the next node
+	 * @return the node or -1 if nothing more can be reached
+	 */
+	private int grow() {
+		if(queue.isEmpty())
+			return -1;
+		int current = queue.pop();
+		settled[current] = true;
+		settledCount++;
+		double currentCost = cost[current];
+		for(int e = graph.first(current); e < graph.last(current); e++) {
+			int neighbour = graph.target(e);
+			double newCost = currentCost + PathSearch.HOP_COST + graph.weight(e);
+			if(newCost < cost[neighbour]) {
+				cost[neighbour] = newCost;
+				previous[neighbour] = current;
+				queue.push(neighbour, newCost);
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Grow the tree until the node is settled
+	 * @param node index in the graph
+	 * @return true if the node can be reached
+	 */
+	public boolean settle(int node) {
+		int before = settledCount;
+		while(settled[node] == false && grow() >= 0)
+			;
+		SETTLED.add(settledCount - before);
+		return settled[node];
+	}
+
+	/**
+	 * Grow the tree until all the nodes are settled
+	 * @param nodes indices in the graph
+	 * @return how many of them can be reached
+	 */
+	public int settleAll(int[] nodes) {
+		int before = settledCount;
+		int reached = 0;
+		for(int i=0; i < nodes.length; i++) {
+			while(settled[nodes[i]] == false && grow() >= 0)
+				;
+			if(settled[nodes[i]])
+				reached++;
+		}
+		SETTLED.add(settledCount - before);
+		return reached;
+	}
+
+	/**
+	 * Grow the tree until the best of the entries is known. The
+	 * entries can belong to many ends, the best one tells which
+	 * end is the nearest.
+	 * @param nodes where the ends can be reached from
+	 * @param hops from each node to its end
+	 * @param distances from each node to its end in degrees
+	 * @param count how many entries there are
+	 * @return the index of the best entry or -1 if none can be reached
+	 */
+	public int reach(int[] nodes, int[] hops, double[] distances, int count) {
+		int before = settledCount;
+		if(entries == null) {
+			entries = new int[graph.size()];
+			Arrays.fill(entries, -1);
+		}
+		if(nextEntry.length < count)
+			nextEntry = new int[count];
+		int best = -1;
+		double bestCost = Double.POSITIVE_INFINITY;
+		double cheapestEnd = Double.POSITIVE_INFINITY;
+		for(int i=0; i < count; i++) {
+			nextEntry[i] = entries[nodes[i]];
+			entries[nodes[i]] = i;
+			double end = PathSearch.cost(hops[i], distances[i]);
+			cheapestEnd = Math.min(cheapestEnd, end);
+			if(settled[nodes[i]] && cost[nodes[i]] + end < bestCost) {
+				bestCost = cost[nodes[i]] + end;
+				best = i;
+			}
+		}
+		// anything not settled yet costs at least the top of the queue
+		while(queue.isEmpty() == false && queue.peekKey() + cheapestEnd < bestCost) {
+			int node = grow();
+			for(int i = entries[node]; i >= 0; i = nextEntry[i]) {
+				double end = PathSearch.cost(hops[i], distances[i]);
+				if(cost[node] + end < bestCost) {
+					bestCost = cost[node] + end;
+					best = i;
+				}
+			}
+		}
+		for(int i=0; i < count; i++)
+			entries[nodes[i]] = -1;
+		SETTLED.add(settledCount - before);
+		return best;
+	}
+
+	/**
+	 * @return true if the node has been settled, its route is known
+	 */
+	public boolean isSettled(int node) {
+		return settled[node];
+	}
+
+	/**
+	 * @return how many nodes have been settled
+	 */
+	public int getSettledCount() {
+		return settledCount;
+	}
+
+	/**
+	 * @return the cost from A to the settled node
+	 */
+	public double getCost(int node) {
+		return cost[node];
+	}
+
+	/**
+	 * @return the node indices from the source to the settled node
+	 * or null if it's not settled
+	 */
+	public int[] getTrack(int node) {
+		if(settled[node] == false)
+			return null;
+		int count = 1;
+		for(int n = node; previous[n] >= 0; n = previous[n])
+			count++;
+		int[] track = new int[count];
+		for(int n = node, i = count - 1; i >= 0; n = previous[n], i--)
+			track[i] = n;
+		return track;
+	}
+
+	/**
+	 * @return the hops from A to the settled node
+	 */
+	public int getHops(int node) {
+		int hops = 0;
+		int n = node;
+		for(; previous[n] >= 0; n = previous[n])
+			hops++;
+		return rootHops[n] + hops;
+	}
+
+	/**
+	 * @return the sum of "distances" from A to the settled node,
+	 * added up the same way as PathSearch does it
+	 */
+	public double getPathLength(int node) {
+		int[] track = getTrack(node);
+		double length = rootDistance[track[0]];
+		for(int i=1; i < track.length; i++)
+			length += graph.weight(graph.findEdge(track[i-1], track[i]));
+		return length;
+	}
+}
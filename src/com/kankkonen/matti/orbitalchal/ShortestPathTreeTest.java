@@ -0,0 +1,106 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class ShortestPathTreeTest {
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.ShortestPathTree#settleAll(int[])}.
+	 */
+	@Test
+	public void testSameAsDijkstra() {
+		VisibilityGraph graph = TestConstellations.initialised(21, 1000, 300, 700).getGraph();
+		Random random = new Random(21);
+		int start = random.nextInt(graph.size());
+		int[] ends = new int[200];
+		for(int i=0; i < ends.length; i++)
+			ends[i] = random.nextInt(graph.size());
+
+		ShortestPathTree tree = new ShortestPathTree(graph);
+		tree.addSource(start, 0, 0);
+		int reached = tree.settleAll(ends);
+		int settled = tree.getSettledCount();
+		int found = 0;
+		for(int i=0; i < ends.length; i++) {
+			PathSearch dijkstra = new PathSearch(graph, start, ends[i], PathSearch.Mode.DIJKSTRA);
+			assertEquals(dijkstra.search(), tree.isSettled(ends[i]));
+			if(dijkstra.getTrack() == null)
+				continue;
+			found++;
+			assertEquals(dijkstra.getHops(), tree.getHops(ends[i]));
+			assertEquals(dijkstra.getPathLength(), tree.getPathLength(ends[i]), 1e-9);
+			int[] track = tree.getTrack(ends[i]);
+			assertEquals(start, track[0]);
+			assertEquals(ends[i], track[track.length - 1]);
+			for(int t=1; t < track.length; t++)
+				assertTrue(graph.findEdge(track[t-1], track[t]) >= 0);
+		}
+		assertEquals(found, reached);
+		// reading the routes doesn't search again
+		assertEquals(settled, tree.getSettledCount());
+		for(int i=0; i < ends.length; i++) {
+			if(tree.isSettled(ends[i]))
+				assertTrue(tree.settle(ends[i]));
+		}
+		assertEquals(settled, tree.getSettledCount());
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.ShortestPathTree#reach(int[], int[], double[], int)}.
+	 */
+	@Test
+	public void testReach() {
+		VisibilityGraph graph = TestConstellations.initialised(22, 800, 300, 700).getGraph();
+		Random random = new Random(22);
+		for(int round=0; round < 20; round++) {
+			ShortestPathTree tree = new ShortestPathTree(graph);
+			PathSearch dijkstra = new PathSearch(graph, PathSearch.Mode.DIJKSTRA);
+			for(int s=0; s < 3; s++) {
+				int node = random.nextInt(graph.size());
+				double distance = random.nextDouble() * 10;
+				tree.addSource(node, 1, distance);
+				dijkstra.addSource(node, 1, distance);
+			}
+			int[] nodes = new int[10];
+			int[] hops = new int[10];
+			double[] distances = new double[10];
+			for(int t=0; t < nodes.length; t++) {
+				nodes[t] = random.nextInt(graph.size());
+				hops[t] = 1;
+				distances[t] = random.nextDouble() * 10;
+				dijkstra.addTarget(nodes[t], hops[t], distances[t]);
+			}
+			int best = tree.reach(nodes, hops, distances, nodes.length);
+			assertEquals(dijkstra.search(), best >= 0);
+			if(best < 0)
+				continue;
+			assertEquals(dijkstra.getHops(), tree.getHops(nodes[best]) + hops[best]);
+			assertEquals(dijkstra.getPathLength(), tree.getPathLength(nodes[best]) + distances[best], 1e-9);
+		}
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.ShortestPathTree#addSource(int, int, double)}.
+	 */
+	@Test(expected = IllegalStateException.class)
+	public void testAddSourceAfterGrowing() {
+		VisibilityGraph graph = TestConstellations.initialised(23, 100, 300, 700).getGraph();
+		ShortestPathTree tree = new ShortestPathTree(graph);
+		tree.addSource(0, 0, 0);
+		tree.settle(graph.size() - 1);
+		tree.addSource(1, 0, 0);
+	}
+}
@@ -0,0 +1,217 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SnapshotFile writes a NetworkSnapshot to a binary file and reads it
+ * back. The file is the snapshot's arrays one after the other:
+ *
+ *   header      magic "ORBN", version, node count, edge count,
+ *               id bytes, max edge weight, max coverage
+ *   nodes       latitudes, longitudes, coverages and the unit
+ *               vectors x, y, z as doubles
+ *   graph       edge weights as doubles, CSR offsets and targets
+ *               as ints
+ *   ids         offsets of the ids as ints and the ids in UTF-8
+ *
+ * The numbers are little endian, which is the byte order of the
+ * machines we run on, so each array is read from the mapped file
+ * with one bulk copy and nothing is calculated again. Reading the
+ * file takes about as long as copying it in memory.
+ *
+ * The version goes up whenever the layout changes, a file with
+ * another version is not read.
+ */
+class SnapshotFile {
+
+	final static int MAGIC = 0x4E42524F; // "ORBN" in little endian
+	final static int VERSION = 1;
+
+	final static int HEADER_SIZE = 40;
+	private final static ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	private FileChannel channel;
+	private FileChannel.MapMode mode;
+	/* where the next array is in the file */
+	private long position = HEADER_SIZE;
+
+	private SnapshotFile(FileChannel channel, FileChannel.MapMode mode) {
+		this.channel = channel;
+		this.mode = mode;
+	}
+
+	/**
+	 * Write the snapshot to the file
+	 */
+	static void write(NetworkSnapshot snapshot, File file) throws IOException {
+		VisibilityGraph graph = snapshot.getGraph();
+		int size = snapshot.size();
+		int edges = graph.getEdgeCount();
+		String[] ids = snapshot.ids();
+		int[] idOffsets = new int[size + 1];
+		byte[][] idBytes = new byte[size][];
+		for(int i=0; i < size; i++) {
+			idBytes[i] = ids[i].getBytes(StandardCharsets.UTF_8);
+			idOffsets[i + 1] = idOffsets[i] + idBytes[i].length;
+		}
+		byte[] allIds = new byte[idOffsets[size]];
+		for(int i=0; i < size; i++)
+			System.arraycopy(idBytes[i], 0, allIds, idOffsets[i], idBytes[i].length);
+
+		RandomAccessFile output = new RandomAccessFile(file, "rw");
+		try {
+			output.setLength(0);
+			SnapshotFile writer = new SnapshotFile(output.getChannel(), FileChannel.MapMode.READ_WRITE);
+			ByteBuffer header = writer.map(0, HEADER_SIZE);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.putInt(size);
+			header.putInt(edges);
+			header.putInt(allIds.length);
+			header.putInt(0);
+			header.putDouble(graph.getMaxWeight());
+			header.putDouble(graph.getMaxCoverage());
+
+			writer.putDoubles(snapshot.latitudes(), size);
+			writer.putDoubles(snapshot.longitudes(), size);
+			writer.putDoubles(snapshot.coverages(), size);
+			writer.putDoubles(graph.vectorX(), size);
+			writer.putDoubles(graph.vectorY(), size);
+			writer.putDoubles(graph.vectorZ(), size);
+			writer.putDoubles(graph.weights(), edges);
+			writer.putInts(graph.offsets(), size + 1);
+			writer.putInts(graph.targets(), edges);
+			writer.putInts(idOffsets, size + 1);
+			writer.map(writer.position, allIds.length).put(allIds);
+		} finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Read a snapshot from the file
+	 */
+	static NetworkSnapshot read(File file) throws IOException {
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		try {
+			long length = input.length();
+			if(length < HEADER_SIZE)
+				throw new IOException("Not a network snapshot: " + file);
+			SnapshotFile reader = new SnapshotFile(input.getChannel(), FileChannel.MapMode.READ_ONLY);
+			ByteBuffer header = reader.map(0, HEADER_SIZE);
+			if(header.getInt() != MAGIC)
+				throw new IOException("Not a network snapshot: " + file);
+			int version = header.getInt();
+			if(version != VERSION)
+				throw new IOException("Unsupported network snapshot version " + version + ": " + file);
+			int size = header.getInt();
+			int edges = header.getInt();
+			int idLength = header.getInt();
+			header.getInt();
+			double maxWeight = header.getDouble();
+			double maxCoverage = header.getDouble();
+			long expected = HEADER_SIZE + (6L * size + edges) * 8 + (size + 1L + edges + size + 1L) * 4 + idLength;
+			if(size < 0 || edges < 0 || idLength < 0 || length != expected)
+				throw new IOException("Network snapshot is truncated or corrupt: " + file);
+
+			double[] latitudes = reader.getDoubles(size);
+			double[] longitudes = reader.getDoubles(size);
+			double[] coverage = reader.getDoubles(size);
+			double[] x = reader.getDoubles(size);
+			double[] y = reader.getDoubles(size);
+			double[] z = reader.getDoubles(size);
+			double[] weights = reader.getDoubles(edges);
+			int[] offsets = reader.getInts(size + 1);
+			int[] targets = reader.getInts(edges);
+			int[] idOffsets = reader.getInts(size + 1);
+			byte[] allIds = new byte[idLength];
+			reader.map(reader.position, idLength).get(allIds);
+			// the offsets and the targets are checked so that a broken file
+			// can't send a search out of the arrays, and the rows need to be
+			// sorted for the binary search of findEdge
+			if(increasing(offsets, edges) == false || increasing(idOffsets, idLength) == false ||
+					sortedRows(offsets, targets, size) == false)
+				throw new IOException("Network snapshot is corrupt: " + file);
+
+			String[] ids = new String[size];
+			for(int i=0; i < size; i++)
+				ids[i] = new String(allIds, idOffsets[i], idOffsets[i + 1] - idOffsets[i], StandardCharsets.UTF_8);
+			VisibilityGraph graph = new VisibilityGraph(offsets, targets, weights, x, y, z, maxWeight, maxCoverage);
+			return new NetworkSnapshot(graph, ids, latitudes, longitudes, coverage);
+		} finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * @return true if the offsets go from 0 to end without going back
+	 */
+	private static boolean increasing(int[] offsets, int end) {
+		if(offsets[0] != 0 || offsets[offsets.length - 1] != end)
+			return false;
+		for(int i=1; i < offsets.length; i++) {
+			if(offsets[i] < offsets[i - 1])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the targets are nodes of the graph and each row
+	 * goes up, the offsets need to be checked already
+	 */
+	private static boolean sortedRows(int[] offsets, int[] targets, int size) {
+		for(int u=0; u < size; u++) {
+			int previous = -1;
+			for(int e=offsets[u]; e < offsets[u + 1]; e++) {
+				int target = targets[e];
+				if(target <= previous || target >= size)
+					return false;
+				previous = target;
+			}
+		}
+		return true;
+	}
+
+	private MappedByteBuffer map(long offset, long length) throws IOException {
+		MappedByteBuffer buffer = channel.map(mode, offset, length);
+		buffer.order(ORDER);
+		return buffer;
+	}
+
+	private void putDoubles(double[] values, int count) throws IOException {
+		map(position, count * 8L).asDoubleBuffer().put(values, 0, count);
+		position += count * 8L;
+	}
+
+	private void putInts(int[] values, int count) throws IOException {
+		map(position, count * 4L).asIntBuffer().put(values, 0, count);
+		position += count * 4L;
+	}
+
+	private double[] getDoubles(int count) throws IOException {
+		double[] values = new double[count];
+		map(position, count * 8L).asDoubleBuffer().get(values);
+		position += count * 8L;
+		return values;
+	}
+
+	private int[] getInts(int count) throws IOException {
+		int[] values = new int[count];
+		map(position, count * 4L).asIntBuffer().get(values);
+		position += count * 4L;
+		return values;
+	}
+}
@@ -0,0 +1,297 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SphereGrid is a spatial index over node coordinates so that we
+ * don't need to compare every node with every other node.
+ *
+ * The sphere is split into latitude bands of equal height and each
+ * band into longitude cells. The number of cells in a band follows
+ * the cosine of the latitude, so that the cells have roughly the same
+ * area and the same amount of nodes everywhere, also near the poles.
+ *
+ * A query takes a point and a radius in degrees i.e. a "cap" on the
+ * sphere, and visits every node whose cell touches the bounding box
+ * of the cap. The visited nodes are only candidates, the caller still
+ * needs to do the exact check e.g. with Node.canSee.
+ *
+ * The node indices are stored cell by cell in one array so a query
+ * doesn't allocate anything.
+ *
+ * Single nodes can be added and removed after the build, e.g. when a
+ * ground station is added to a network that has been initialised. A
+ * removed node leaves a free slot at the end of its cell, and an added
+ * node goes to a free slot of its cell or if there's none to a short
+ * list of extra nodes of the cell. Either way it's a few steps, not a
+ * new build.
+ */
+public class SphereGrid {
+
+	/**
+	 * Gets called for every candidate found by a query
+	 */
+	public interface Visitor {
+		void visit(int index);
+	}
+
+	/* Margin in degrees to keep the rounding errors of the box
+	 * calculations from dropping nodes right at the edge */
+	private final static double EPSILON = 1e-6;
+
+	private int bands;
+	private double bandHeight;
+	/* first cell of each band, the last entry is the number of cells */
+	private int[] bandStart;
+	/* first entry of each cell, the last entry is the number of entries */
+	private int[] cellStart;
+	private int[] entries;
+	/* the end of the nodes in each cell once nodes have been removed */
+	private int[] cellEnd = null;
+	/* the extra nodes of each cell, chained through overflowNext */
+	private int[] overflowHead;
+	private int[] overflowNext = new int[0];
+	private int[] overflowNode = new int[0];
+	private int overflowCount = 0;
+	private int freeOverflow = -1;
+
+	/**
+	 * Build the index
+	 * @param latitudes of the nodes in degrees, the index of the array
+	 * is what the queries report back
+	 * @param longitudes of the nodes in degrees
+	 * @param count how many nodes to index from the arrays
+	 * @param cellSize the approximate size of a cell in degrees
+	 */
+	public SphereGrid(double[] latitudes, double[] longitudes, int count, double cellSize) {
+		bands = Math.max(1, Math.min(180, (int)Math.ceil(180 / cellSize)));
+		bandHeight = 180.0 / bands;
+		bandStart = new int[bands + 1];
+		for(int b=0; b < bands; b++) {
+			double edge = Math.min(Math.abs(bandLatitude(b)), Math.abs(bandLatitude(b + 1)));
+			int cells = (int)Math.ceil(360 * Math.cos(Math.toRadians(edge)) / bandHeight);
+			bandStart[b + 1] = bandStart[b] + Math.max(1, Math.min(360, cells));
+		}
+
+		// count the nodes in each cell first and then fill them in
+		int[] cellOf = new int[count];
+		cellStart = new int[bandStart[bands] + 1];
+		for(int i=0; i < count; i++) {
+			cellOf[i] = cell(latitudes[i], longitudes[i]);
+			cellStart[cellOf[i] + 1]++;
+		}
+		for(int c=0; c < bandStart[bands]; c++)
+			cellStart[c + 1] += cellStart[c];
+		int[] fill = new int[bandStart[bands]];
+		entries = new int[count];
+		for(int i=0; i < count; i++) {
+			int c = cellOf[i];
+			entries[cellStart[c] + fill[c]++] = i;
+		}
+	}
+
+	/**
+	 * Index a list of nodes, the indices reported by the queries
+	 * are the positions of the nodes in the list
+	 * @param nodes to index
+	 * @param cellSize the approximate size of a cell in degrees
+	 */
+	public SphereGrid(List<Node> nodes, double cellSize) {
+		this(latitudes(nodes), longitudes(nodes), nodes.size(), cellSize);
+	}
+
+	private static double[] latitudes(List<Node> nodes) {
+		double[] values = new double[nodes.size()];
+		for(int i=0; i < values.length; i++)
+			values[i] = nodes.get(i).getLatitude();
+		return values;
+	}
+
+	private static double[] longitudes(List<Node> nodes) {
+		double[] values = new double[nodes.size()];
+		for(int i=0; i < values.length; i++)
+			values[i] = nodes.get(i).getLongitude();
+		return values;
+	}
+
+	private double bandLatitude(int band) {
+		return -90 + band * bandHeight;
+	}
+
+	private int band(double latitude) {
+		int b = (int)Math.floor((latitude + 90) / bandHeight);
+		return Math.max(0, Math.min(bands - 1, b));
+	}
+
+	private int cells(int band) {
+		return bandStart[band + 1] - bandStart[band];
+	}
+
+	private int column(int band, double longitude) {
+		int cells = cells(band);
+		double normalised = longitude - 360 * Math.floor((longitude + 180) / 360);
+		int c = (int)Math.floor((normalised + 180) / 360 * cells);
+		return Math.max(0, Math.min(cells - 1, c));
+	}
+
+	private int cell(double latitude, double longitude) {
+		double lat = wrapLatitude(latitude);
+		if(Math.abs(lat) > 90) {
+			lat = Math.signum(lat) * 180 - lat;
+			longitude += 180;
+		}
+		int b = band(lat);
+		return bandStart[b] + column(b, longitude);
+	}
+
+	/**
+	 * Nodes may have latitudes over the poles e.g. 100 degrees
+	 * which is the same place as 80 degrees on the other side
+	 * of the pole. 
+	 * @return latitude within -180 and 180 degrees, if it's over 90 
+	 * it needs to be mirrored over the pole
+	 */
+	private static double wrapLatitude(double latitude) {
+		return latitude - 360 * Math.floor((latitude + 180) / 360);
+	}
+
+	/**
+	 * Visit all the nodes that may be within the radius from the point
+	 * @param latitude of the point in degrees
+	 * @param longitude of the point in degrees
+	 * @param radius in degrees
+	 * @param visitor to call for each candidate
+	 */
+	public void query(double latitude, double longitude, double radius, Visitor visitor) {
+		latitude = wrapLatitude(latitude);
+		if(Math.abs(latitude) > 90) {
+			latitude = Math.signum(latitude) * 180 - latitude;
+			longitude += 180;
+		}
+		double r = radius + EPSILON;
+		int firstBand = band(latitude - r);
+		int lastBand = band(latitude + r);
+
+		// how wide the cap is in longitude, if it covers a pole
+		// then all the longitudes are in
+		double halfWidth = 180;
+		if(r < 90 && Math.abs(latitude) + r < 90) {
+			double s = Math.sin(Math.toRadians(r)) / Math.cos(Math.toRadians(latitude));
+			if(s < 1)
+				halfWidth = Math.toDegrees(Math.asin(s)) + EPSILON;
+		}
+
+		for(int b = firstBand; b <= lastBand; b++) {
+			int cells = cells(b);
+			if(halfWidth >= 180 || 2 * halfWidth * cells / 360 >= cells - 1) {
+				visitCells(bandStart[b], bandStart[b + 1], visitor);
+				continue;
+			}
+			int first = column(b, longitude - halfWidth);
+			int last = column(b, longitude + halfWidth);
+			if(first <= last) {
+				visitCells(bandStart[b] + first, bandStart[b] + last + 1, visitor);
+			} else {
+				// wraps around the date line
+				visitCells(bandStart[b] + first, bandStart[b + 1], visitor);
+				visitCells(bandStart[b], bandStart[b] + last + 1, visitor);
+			}
+		}
+	}
+
+	private void visitCells(int from, int to, Visitor visitor) {
+		if(cellEnd == null) {
+			for(int e = cellStart[from]; e < cellStart[to]; e++)
+				visitor.visit(entries[e]);
+			return;
+		}
+		for(int c = from; c < to; c++) {
+			for(int e = cellStart[c]; e < cellEnd[c]; e++)
+				visitor.visit(entries[e]);
+			for(int o = overflowHead[c]; o >= 0; o = overflowNext[o])
+				visitor.visit(overflowNode[o]);
+		}
+	}
+
+	/**
+	 * The cells are full and there are no extra nodes until
+	 * the first change
+	 */
+	private void edit() {
+		if(cellEnd != null)
+			return;
+		int cells = bandStart[bands];
+		cellEnd = new int[cells];
+		overflowHead = new int[cells];
+		for(int c=0; c < cells; c++) {
+			cellEnd[c] = cellStart[c + 1];
+			overflowHead[c] = -1;
+		}
+	}
+
+	/**
+	 * Add a node to the index
+	 * @param index the queries report back for the node
+	 * @param latitude of the node in degrees
+	 * @param longitude of the node in degrees
+	 */
+	public void add(int index, double latitude, double longitude) {
+		edit();
+		int c = cell(latitude, longitude);
+		if(cellEnd[c] < cellStart[c + 1]) {
+			entries[cellEnd[c]++] = index;
+			return;
+		}
+		int o = freeOverflow;
+		if(o >= 0) {
+			freeOverflow = overflowNext[o];
+		} else {
+			if(overflowCount == overflowNode.length) {
+				int capacity = Math.max(16, overflowCount * 2);
+				overflowNode = Arrays.copyOf(overflowNode, capacity);
+				overflowNext = Arrays.copyOf(overflowNext, capacity);
+			}
+			o = overflowCount++;
+		}
+		overflowNode[o] = index;
+		overflowNext[o] = overflowHead[c];
+		overflowHead[c] = o;
+	}
+
+	/**
+	 * Remove a node from the index. The position has to be the
+	 * same the node was indexed with.
+	 * @param index of the node
+	 * @param latitude of the node in degrees
+	 * @param longitude of the node in degrees
+	 * @return false if the node wasn't found there
+	 */
+	public boolean remove(int index, double latitude, double longitude) {
+		edit();
+		int c = cell(latitude, longitude);
+		for(int e = cellStart[c]; e < cellEnd[c]; e++) {
+			if(entries[e] == index) {
+				entries[e] = entries[--cellEnd[c]];
+				return true;
+			}
+		}
+		for(int o = overflowHead[c], before = -1; o >= 0; before = o, o = overflowNext[o]) {
+			if(overflowNode[o] == index) {
+				if(before < 0)
+					overflowHead[c] = overflowNext[o];
+				else
+					overflowNext[before] = overflowNext[o];
+				overflowNext[o] = freeOverflow;
+				freeOverflow = o;
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class SphereGridTest {
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.SphereGrid#query(double, double, double, com.kankkonen.matti.orbitalchal.SphereGrid.Visitor)}.
+	 */
+	@Test
+	public void testQueryFindsAllWithinRadius() {
+		Random random = new Random(2016);
+		List<Node> nodes = new ArrayList<Node>();
+		// latitudes over the poles are allowed too
+		for(int i=0; i < 2000; i++)
+			nodes.add(new Node("SAT" + i, random.nextDouble() * 240 - 120,
+					random.nextDouble() * 360 - 180, 300 + random.nextDouble() * 400));
+		SphereGrid grid = new SphereGrid(nodes, 5);
+		
+		for(int q=0; q < 200; q++) {
+			Node point = new Node("Q", random.nextDouble() * 180 - 90,
+					random.nextDouble() * 360 - 180, 0);
+			if(q == 0)
+				point = new Node("Q", 90, 0, 0);
+			if(q == 1)
+				point = new Node("Q", -89.99, 179.99, 0);
+			double radius = random.nextDouble() * 60;
+			
+			final Set<Integer> found = new HashSet<Integer>();
+			grid.query(point.getLatitude(), point.getLongitude(), radius,
+					new SphereGrid.Visitor() {
+				public void visit(int index) {
+					assertTrue(found.add(index));
+				}
+			});
+			for(int i=0; i < nodes.size(); i++) {
+				if(point.getDistance(nodes.get(i)) <= radius)
+					assertTrue(found.contains(i));
+			}
+		}
+	}
+
+	@Test
+	public void testEmptyGrid() {
+		SphereGrid grid = new SphereGrid(new ArrayList<Node>(), 10);
+		grid.query(0, 0, 180, new SphereGrid.Visitor() {
+			public void visit(int index) {
+				fail();
+			}
+		});
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.SphereGrid#add(int, double, double)}.
+	 */
+	@Test
+	public void testAddAndRemove() {
+		Random random = new Random(23);
+		List<Node> nodes = new ArrayList<Node>();
+		for(int i=0; i < 500; i++)
+			nodes.add(new Node("SAT" + i, random.nextDouble() * 180 - 90,
+					random.nextDouble() * 360 - 180, 300));
+		SphereGrid grid = new SphereGrid(nodes, 10);
+		Set<Integer> indexed = new HashSet<Integer>();
+		for(int i=0; i < nodes.size(); i++)
+			indexed.add(i);
+		
+		for(int i=0; i < 1000; i++) {
+			int index = random.nextInt(nodes.size() + 100);
+			if(index >= nodes.size()) {
+				index = nodes.size();
+				nodes.add(new Node("NEW" + i, random.nextDouble() * 180 - 90,
+						random.nextDouble() * 360 - 180, 300));
+			}
+			Node node = nodes.get(index);
+			if(indexed.contains(index)) {
+				assertTrue(grid.remove(index, node.getLatitude(), node.getLongitude()));
+				assertFalse(grid.remove(index, node.getLatitude(), node.getLongitude()));
+				indexed.remove(index);
+			} else {
+				grid.add(index, node.getLatitude(), node.getLongitude());
+				indexed.add(index);
+			}
+		}
+		
+		final Set<Integer> found = new HashSet<Integer>();
+		grid.query(0, 0, 180, new SphereGrid.Visitor() {
+			public void visit(int index) {
+				assertTrue(found.add(index));
+			}
+		});
+		assertEquals(indexed, found);
+		
+		Node point = new Node("Q", 45, 45, 0);
+		found.clear();
+		grid.query(45, 45, 30, new SphereGrid.Visitor() {
+			public void visit(int index) {
+				assertTrue(found.add(index));
+			}
+		});
+		for(int index : indexed) {
+			if(point.getDistance(nodes.get(index)) <= 30)
+				assertTrue(found.contains(index));
+		}
+		for(int index : found)
+			assertTrue(indexed.contains(index));
+	}
+}
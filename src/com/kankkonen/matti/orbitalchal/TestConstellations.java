@@ -0,0 +1,72 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Random;
+
+/**
+ * TestConstellations makes the random constellations the tests run on.
+ * The satellites are named SAT0, SAT1 and so on in the order they are
+ * added, so a test can find them by index too.
+ *
+ * @author Matti
+ *
+ */
+class TestConstellations {
+
+	/**
+	 * Satellites at random places all over the earth, evenly by area
+	 * so that the poles don't get more than their share
+	 * @param random where the places and altitudes come from
+	 * @param count the number of satellites
+	 * @param lowest altitude
+	 * @param highest altitude
+	 * @return the network, not initialised
+	 */
+	static Network random(Random random, int count, double lowest, double highest) {
+		Network net = new Network();
+		for(int i=0; i < count; i++)
+			net.addNode(new Node("SAT" + i, Math.toDegrees(Math.asin(2 * random.nextDouble() - 1)),
+					random.nextDouble() * 360 - 180, lowest + random.nextDouble() * (highest - lowest)));
+		return net;
+	}
+
+	static Network random(long seed, int count, double lowest, double highest) {
+		return random(new Random(seed), count, lowest, highest);
+	}
+
+	/**
+	 * The same as random, with init already called
+	 */
+	static Network initialised(Random random, int count, double lowest, double highest) {
+		Network net = random(random, count, lowest, highest);
+		net.init();
+		return net;
+	}
+
+	static Network initialised(long seed, int count, double lowest, double highest) {
+		return initialised(new Random(seed), count, lowest, highest);
+	}
+
+	/**
+	 * Satellites at random places in a patch around latitude 0 and
+	 * longitude 0, for tests that need a small but dense graph
+	 * @param seed of the random places and altitudes
+	 * @param count the number of satellites
+	 * @param size of the patch in degrees to each direction
+	 * @param lowest altitude
+	 * @param highest altitude
+	 * @return the network, not initialised
+	 */
+	static Network patch(long seed, int count, double size, double lowest, double highest) {
+		Random random = new Random(seed);
+		Network net = new Network();
+		for(int i=0; i < count; i++)
+			net.addNode(new Node("SAT" + i, random.nextDouble() * 2 * size - size,
+					random.nextDouble() * 2 * size - size, lowest + random.nextDouble() * (highest - lowest)));
+		return net;
+	}
+}
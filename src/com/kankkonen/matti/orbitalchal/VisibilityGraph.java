@@ -0,0 +1,329 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VisibilityGraph is an immutable copy of the nodes' neighbours in
+ * compressed sparse row form. The nodes are integer indices and
+ * the neighbours of all the nodes are in one array, row after row:
+ *
+ *   the edges of node u are first(u) ... last(u) - 1
+ *   target(e) is the neighbour at the other end of edge e
+ *   weight(e) is the "distance" of the edge in degrees
+ *
+ * The distances are calculated once when the graph is built, so the
+ * path search doesn't need to touch the Node instances or their
+ * neighbour maps at all. The neighbours of each node are sorted by
+ * index so a single edge can be found with a binary search.
+ *
+ * The positions and coverages of the nodes are copied too, so the
+ * graph stays the same even if the nodes move later on. A graph
+ * read from a snapshot file has only the arrays and no Node instances.
+ */
+public class VisibilityGraph implements Adjacency {
+
+	private Node[] nodes;
+	private int[] offsets;
+	private int[] targets;
+	private double[] weights;
+	private double[] x;
+	private double[] y;
+	private double[] z;
+	private double maxWeight = 0;
+	private double maxCoverage = 0;
+	/* Only for graphs not built from a Network */
+	private Map<Node, Integer> indices = null;
+
+	VisibilityGraph(Node[] nodes, int[] offsets, int[] targets, double[] weights) {
+		this.nodes = nodes;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		for(int e=0; e < weights.length; e++)
+			maxWeight = Math.max(maxWeight, weights[e]);
+		x = new double[nodes.length];
+		y = new double[nodes.length];
+		z = new double[nodes.length];
+		for(int i=0; i < nodes.length; i++) {
+			x[i] = nodes[i].getX();
+			y[i] = nodes[i].getY();
+			z[i] = nodes[i].getZ();
+			maxCoverage = Math.max(maxCoverage, nodes[i].getCoverage());
+		}
+	}
+
+	/**
+	 * A graph read from a file, there are no Node instances
+	 */
+	VisibilityGraph(int[] offsets, int[] targets, double[] weights, double[] x, double[] y,
+			double[] z, double maxWeight, double maxCoverage) {
+		this.nodes = null;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.weights = weights;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.maxWeight = maxWeight;
+		this.maxCoverage = maxCoverage;
+	}
+
+	/**
+	 * Build the graph of a network, the index of a node in the graph
+	 * is the position of the node in the network
+	 * @param nodes of the network
+	 * @param store of the network
+	 * @return the graph
+	 */
+	static VisibilityGraph create(List<Node> nodes, NodeStore store) {
+		Node[] array = nodes.toArray(new Node[nodes.size()]);
+		int[] offsets = new int[array.length + 1];
+		for(int u=0; u < array.length; u++)
+			offsets[u + 1] = offsets[u] + array[u].getNeighbours().size();
+
+		int[] targets = new int[offsets[array.length]];
+		double[] weights = new double[targets.length];
+		for(int u=0; u < array.length; u++) {
+			int e = offsets[u];
+			Iterator<Node> i = array[u].getNeighbours().values().iterator();
+			while(i.hasNext()) {
+				Node neighbour = i.next();
+				// only the nodes of this network can be in the graph
+				if(neighbour.index >= 0 && neighbour.index < array.length &&
+						array[neighbour.index] == neighbour)
+					targets[e++] = neighbour.index;
+			}
+			Arrays.sort(targets, offsets[u], e);
+			for(int f = offsets[u]; f < e; f++)
+				weights[f] = store.getDistance(u, targets[f]);
+			// mark the slots of skipped neighbours unused
+			for(int f = e; f < offsets[u + 1]; f++)
+				targets[f] = -1;
+		}
+		return compact(array, offsets, targets, weights);
+	}
+
+	/**
+	 * Build the graph of the nodes that can be reached from the given
+	 * node through the neighbour maps, when there's no Network at hand
+	 * @param start node
+	 * @return the graph
+	 */
+	public static VisibilityGraph reachableFrom(Node start) {
+		Map<Node, Integer> indices = new IdentityHashMap<Node, Integer>();
+		List<Node> found = new ArrayList<Node>();
+		indices.put(start, 0);
+		found.add(start);
+		for(int u=0; u < found.size(); u++) {
+			Iterator<Node> i = found.get(u).getNeighbours().values().iterator();
+			while(i.hasNext()) {
+				Node neighbour = i.next();
+				if(indices.containsKey(neighbour) == false) {
+					indices.put(neighbour, found.size());
+					found.add(neighbour);
+				}
+			}
+		}
+
+		Node[] array = found.toArray(new Node[found.size()]);
+		int[] offsets = new int[array.length + 1];
+		for(int u=0; u < array.length; u++)
+			offsets[u + 1] = offsets[u] + array[u].getNeighbours().size();
+		int[] targets = new int[offsets[array.length]];
+		double[] weights = new double[targets.length];
+		for(int u=0; u < array.length; u++) {
+			int e = offsets[u];
+			Iterator<Node> i = array[u].getNeighbours().values().iterator();
+			while(i.hasNext())
+				targets[e++] = indices.get(i.next());
+			Arrays.sort(targets, offsets[u], e);
+			for(int f = offsets[u]; f < e; f++)
+				weights[f] = array[u].getDistance(array[targets[f]]);
+		}
+		VisibilityGraph graph = new VisibilityGraph(array, offsets, targets, weights);
+		graph.indices = indices;
+		return graph;
+	}
+
+	/**
+	 * Drop the unused slots from the arrays, if there are any
+	 */
+	private static VisibilityGraph compact(Node[] nodes, int[] offsets, int[] targets, double[] weights) {
+		int e = 0;
+		for(int u=0; u < nodes.length; u++) {
+			int from = offsets[u];
+			offsets[u] = e;
+			for(int f = from; f < offsets[u + 1]; f++) {
+				if(targets[f] >= 0) {
+					targets[e] = targets[f];
+					weights[e++] = weights[f];
+				}
+			}
+		}
+		offsets[nodes.length] = e;
+		if(e < targets.length) {
+			targets = Arrays.copyOf(targets, e);
+			weights = Arrays.copyOf(weights, e);
+		}
+		return new VisibilityGraph(nodes, offsets, targets, weights);
+	}
+
+	/**
+	 * @return the number of nodes
+	 */
+	public int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * @return the number of edges, each visible pair is two edges
+	 */
+	public int getEdgeCount() {
+		return targets.length;
+	}
+
+	/**
+	 * @return the first edge of the node
+	 */
+	public int first(int node) {
+		return offsets[node];
+	}
+
+	/**
+	 * @return the edge after the last edge of the node
+	 */
+	public int last(int node) {
+		return offsets[node + 1];
+	}
+
+	/**
+	 * @return the node at the other end of the edge
+	 */
+	public int target(int edge) {
+		return targets[edge];
+	}
+
+	/**
+	 * @return the "distance" of the edge in degrees
+	 */
+	public double weight(int edge) {
+		return weights[edge];
+	}
+
+	/**
+	 * @return the longest edge in degrees
+	 */
+	public double getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * @return the biggest coverage of the nodes in degrees
+	 */
+	public double getMaxCoverage() {
+		return maxCoverage;
+	}
+
+	/**
+	 * The "distance" between the node and a point in degrees
+	 * @param node index
+	 * @param px the point as a unit vector
+	 * @param py
+	 * @param pz
+	 * @return angle in degrees
+	 */
+	public double getDistance(int node, double px, double py, double pz) {
+		return Node.angle(x[node] * px + y[node] * py + z[node] * pz);
+	}
+
+	/**
+	 * The "distance" between two nodes in degrees
+	 */
+	public double getDistance(int a, int b) {
+		return getDistance(a, x[b], y[b], z[b]);
+	}
+
+	/**
+	 * @return the position of the node as a unit vector
+	 */
+	public double getX(int node) {
+		return x[node];
+	}
+
+	public double getY(int node) {
+		return y[node];
+	}
+
+	public double getZ(int node) {
+		return z[node];
+	}
+
+	/**
+	 * Find the edge from a to b
+	 * @return the edge or -1 if b is not a neighbour of a
+	 */
+	public int findEdge(int a, int b) {
+		int e = Arrays.binarySearch(targets, offsets[a], offsets[a + 1], b);
+		return e >= 0 ? e : -1;
+	}
+
+	/**
+	 * @return the node or null if the graph was read from a file
+	 */
+	public Node getNode(int index) {
+		return nodes == null ? null : nodes[index];
+	}
+
+	/**
+	 * @return the index of the node in this graph or -1
+	 */
+	public int indexOf(Node node) {
+		if(nodes == null)
+			return -1;
+		if(indices != null) {
+			Integer index = indices.get(node);
+			return index == null ? -1 : index;
+		}
+		if(node.index >= 0 && node.index < nodes.length && nodes[node.index] == node)
+			return node.index;
+		return -1;
+	}
+
+	/**
+	 * The arrays are handed out for writing the graph to a file,
+	 * they must not be changed
+	 */
+	int[] offsets() {
+		return offsets;
+	}
+
+	int[] targets() {
+		return targets;
+	}
+
+	double[] weights() {
+		return weights;
+	}
+
+	double[] vectorX() {
+		return x;
+	}
+
+	double[] vectorY() {
+		return y;
+	}
+
+	double[] vectorZ() {
+		return z;
+	}
+}
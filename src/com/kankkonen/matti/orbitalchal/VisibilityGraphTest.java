@@ -0,0 +1,108 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class VisibilityGraphTest {
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.Network#getGraph()}.
+	 */
+	@Test
+	public void testGraphMatchesNeighbours() {
+		Network net = TestConstellations.initialised(3, 200, 300, 700);
+		VisibilityGraph graph = net.getGraph();
+		List<Node> nodes = net.getNodes();
+		int edges = 0;
+		
+		assertEquals(nodes.size(), graph.size());
+		for(int u=0; u < graph.size(); u++) {
+			Node node = nodes.get(u);
+			assertEquals(u, graph.indexOf(node));
+			assertEquals(node.getNeighbours().size(), graph.last(u) - graph.first(u));
+			for(int e = graph.first(u); e < graph.last(u); e++) {
+				Node neighbour = graph.getNode(graph.target(e));
+				assertEquals(neighbour, node.getNeighbours().get(neighbour.getId()));
+				assertEquals(node.getDistance(neighbour), graph.weight(e), 0);
+				assertEquals(e, graph.findEdge(u, graph.target(e)));
+				if(e > graph.first(u))
+					assertTrue(graph.target(e - 1) < graph.target(e));
+				edges++;
+			}
+		}
+		assertEquals(edges, graph.getEdgeCount());
+		assertEquals(-1, graph.indexOf(new Node("X", 0, 0, 0)));
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.VisibilityGraph#reachableFrom(com.kankkonen.matti.orbitalchal.Node)}.
+	 */
+	@Test
+	public void testReachableFrom() {
+		Node a = new Node("A", 0, 0, 700);
+		Node b = new Node("B", 0, 20, 700);
+		Node c = new Node("C", 0, 40, 700);
+		Node d = new Node("D", 0, 120, 700);
+		Network net = new Network();
+		net.addNode(a);
+		net.addNode(b);
+		net.addNode(c);
+		net.addNode(d);
+		net.init();
+		VisibilityGraph graph = VisibilityGraph.reachableFrom(b);
+		assertEquals(3, graph.size());
+		assertEquals(0, graph.indexOf(b));
+		assertEquals(-1, graph.indexOf(d));
+		assertEquals(6, graph.getEdgeCount());
+	}
+	
+	@Test
+	public void testGraphRebuiltAfterAddNode() {
+		Network net = TestConstellations.initialised(5, 10, 300, 700);
+		VisibilityGraph graph = net.getGraph();
+		net.addNode(new Node("New", 0, 0, 500));
+		assertNotSame(graph, net.getGraph());
+		assertEquals(11, net.getGraph().size());
+	}
+	
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.NodeHeap#pop()}.
+	 */
+	@Test
+	public void testNodeHeap() {
+		Random random = new Random(9);
+		NodeHeap heap = new NodeHeap(100);
+		double[] keys = new double[100];
+		for(int i=0; i < 100; i++) {
+			keys[i] = random.nextDouble();
+			heap.push(i, keys[i] + 1);
+		}
+		// lower every other key
+		for(int i=0; i < 100; i += 2) {
+			assertTrue(heap.push(i, keys[i]));
+			assertFalse(heap.push(i, keys[i] + 2));
+		}
+		double previous = Double.NEGATIVE_INFINITY;
+		while(heap.isEmpty() == false) {
+			double key = heap.peekKey();
+			int node = heap.pop();
+			assertFalse(heap.contains(node));
+			assertEquals(node % 2 == 0 ? keys[node] : keys[node] + 1, key, 0);
+			assertTrue(previous <= key);
+			previous = key;
+		}
+	}
+}
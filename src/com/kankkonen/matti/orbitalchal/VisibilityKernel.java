@@ -0,0 +1,118 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import java.util.Arrays;
+
+/**
+ * VisibilityKernel checks which of a block of candidate nodes one
+ * node can see, for the init of the Network where the spatial index
+ * hands out the candidates of a node all at once.
+ *
+ * canSee compares the coverages with the "distance", which takes an
+ * acos and a conversion to degrees for every pair. Turned around, two
+ * nodes see each other when the dot product of their unit vectors is
+ * at least the cosine of the sum of their coverages:
+ *
+ *   dot >= cos(q1 + q2) = cos q1 * cos q2 - sin q1 * sin q2
+ *
+ * The sines and cosines of the coverages are in the NodeStore, so a
+ * pair costs only multiplications and additions. The first loop
+ * works these out for the whole block into an array and the second
+ * one picks the visible nodes.
+ *
+ * The rounding of the two ways is not the same, so right at the
+ * threshold they could disagree. When the dot product is within
+ * MARGIN of the cosine the pair is checked with NodeStore.canSee
+ * instead, which makes the results exactly the same as canSee.
+ *
+ * A kernel has its own work array, so each thread needs its own.
+ */
+public class VisibilityKernel {
+
+	/* much more than the rounding errors of the dot product and the
+	 * cosine, much less than any real difference */
+	private final static double MARGIN = 1e-12;
+
+	private NodeStore store;
+	private double[] margins = new double[64];
+
+	/**
+	 * @param store the nodes to check
+	 */
+	public VisibilityKernel(NodeStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * Which of the candidates can node see, the same as calling
+	 * store.canSee(node, candidate) for each of them
+	 * @param node index in the store
+	 * @param candidates indices in the store
+	 * @param count how many candidates to check from the array
+	 * @param visible where to put the visible candidates, in the same
+	 * order as they are in the candidates, needs room for count
+	 * @return the number of visible candidates
+	 */
+	public int canSee(int node, int[] candidates, int count, int[] visible) {
+		if(margins.length < count)
+			margins = new double[Math.max(count, margins.length * 2)];
+		double[] x = store.vectorX();
+		double[] y = store.vectorY();
+		double[] z = store.vectorZ();
+		double[] cos = store.cosCoverages();
+		double[] sin = store.sinCoverages();
+		double nx = x[node];
+		double ny = y[node];
+		double nz = z[node];
+		double nc = cos[node];
+		double ns = sin[node];
+
+		for(int i=0; i < count; i++) {
+			int c = candidates[i];
+			margins[i] = nx * x[c] + ny * y[c] + nz * z[c] - (nc * cos[c] - ns * sin[c]);
+		}
+
+		int found = 0;
+		for(int i=0; i < count; i++) {
+			double margin = margins[i];
+			if(margin > MARGIN || (margin >= -MARGIN && store.canSee(node, candidates[i])))
+				visible[found++] = candidates[i];
+		}
+		return found;
+	}
+
+	/**
+	 * Candidates collected from the spatial index, to be checked
+	 * in one go
+	 */
+	static class Block implements SphereGrid.Visitor {
+		int[] candidates = new int[64];
+		int count = 0;
+		/* the indices below first and the skipped one are left out */
+		private int first = 0;
+		private int skip = -1;
+
+		/**
+		 * Empty the block for the next query
+		 * @param first the smallest index to collect
+		 * @param skip index not to collect e.g. the node itself or -1
+		 */
+		void clear(int first, int skip) {
+			this.first = first;
+			this.skip = skip;
+			count = 0;
+		}
+
+		public void visit(int index) {
+			if(index < first || index == skip)
+				return;
+			if(count == candidates.length)
+				candidates = Arrays.copyOf(candidates, count * 2);
+			candidates[count++] = index;
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/**
+ * (c) Copyright 2016 Matti Kankkonen
+ *
+ * for Reaktor Orbital Challenge
+ */
+package com.kankkonen.matti.orbitalchal;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Matti
+ *
+ */
+public class VisibilityKernelTest {
+
+	private static void assertSameAsCanSee(NodeStore store, int node) {
+		int[] candidates = new int[store.size()];
+		for(int i=0; i < candidates.length; i++)
+			candidates[i] = i;
+		int[] visible = new int[candidates.length];
+		int found = new VisibilityKernel(store).canSee(node, candidates, candidates.length, visible);
+		int v = 0;
+		for(int i=0; i < candidates.length; i++) {
+			if(store.canSee(node, i)) {
+				assertTrue(v < found);
+				assertEquals(i, visible[v++]);
+			}
+		}
+		assertEquals(v, found);
+	}
+
+	/**
+	 * Test method for {@link com.kankkonen.matti.orbitalchal.VisibilityKernel#canSee(int, int[], int, int[])}.
+	 */
+	@Test
+	public void testRandomNodes() {
+		Random random = new Random(18);
+		NodeStore store = new NodeStore();
+		for(int i=0; i < 2000; i++) {
+			double altitude = i % 10 == 0 ? 0 : 300 + random.nextDouble() * 2000;
+			store.add(new Node("N" + i, random.nextDouble() * 180 - 90,
+					random.nextDouble() * 360 - 180, altitude));
+		}
+		for(int node=0; node < 100; node++)
+			assertSameAsCanSee(store, node);
+	}
+
+	/**
+	 * The pairs right at the edge of the coverages should be the same
+	 * as with canSee, to the last bit
+	 */
+	@Test
+	public void testThreshold() {
+		Random random = new Random(19);
+		NodeStore store = new NodeStore();
+		store.add(new Node("A", 0, 0, 700));
+		double reach = store.getCoverage(0) + new Node("B", 0, 0, 550).getCoverage();
+		for(int i=0; i < 2000; i++) {
+			double longitude = reach;
+			// a few ulps either way and a bit more
+			for(int u = random.nextInt(20) - 10; u < 0; u++)
+				longitude = Math.nextDown(longitude);
+			for(int u = random.nextInt(20) - 10; u > 0; u--)
+				longitude = Math.nextUp(longitude);
+			longitude += (random.nextDouble() - 0.5) * 1e-10 * (i % 3);
+			store.add(new Node("B" + i, 0, longitude, 550));
+		}
+		// ground stations see nothing but what's right on top of them
+		store.add(new Node("G1", 10, 10, 0));
+		store.add(new Node("G2", 10, 10, 0));
+		store.add(new Node("G3", 10, Math.nextUp(10.0), 0));
+		assertSameAsCanSee(store, 0);
+		assertSameAsCanSee(store, store.size() - 3);
+
+		int visible = 0;
+		for(int i=1; i <= 2000; i++) {
+			if(store.canSee(0, i))
+				visible++;
+		}
+		// both sides of the edge are there
+		assertTrue(visible > 100 && visible < 1900);
+	}
+}